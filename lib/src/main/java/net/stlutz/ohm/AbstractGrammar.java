@@ -44,6 +44,15 @@ public abstract class AbstractGrammar implements Grammar {
         return match(input, defaultStartRule);
     }
     
+    @Override
+    public RecognitionResult recognize(String input) {
+        if (defaultStartRule == null) {
+            throw new OhmException("Grammar '%s' has no default start rule.".formatted(getName()));
+        }
+        
+        return recognize(input, defaultStartRule);
+    }
+    
     @Override
     public String getName() {
         return name;
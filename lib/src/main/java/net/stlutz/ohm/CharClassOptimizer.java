@@ -0,0 +1,171 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Alt;
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.BasePExprVisitor;
+import net.stlutz.ohm.pexprs.CharClass;
+import net.stlutz.ohm.pexprs.Extend;
+import net.stlutz.ohm.pexprs.Iter;
+import net.stlutz.ohm.pexprs.Lex;
+import net.stlutz.ohm.pexprs.Lookahead;
+import net.stlutz.ohm.pexprs.Not;
+import net.stlutz.ohm.pexprs.Opt;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.Plus;
+import net.stlutz.ohm.pexprs.Range;
+import net.stlutz.ohm.pexprs.Seq;
+import net.stlutz.ohm.pexprs.Splice;
+import net.stlutz.ohm.pexprs.Star;
+import net.stlutz.ohm.pexprs.Terminal;
+import net.stlutz.ohm.pexprs.UnicodeChar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces character classes in rule bodies with {@link CharClass} expressions. Each visit method returns
+ * the replacement for the visited expression, or {@code null} if it stays as it is. Applications must
+ * already be bound to their rules.
+ */
+class CharClassOptimizer extends BasePExprVisitor<PExpr> {
+    private CharClassOptimizer() {
+    }
+    
+    static void optimize(Map<String, ConstructedRule> rules) {
+        CharClassOptimizer optimizer = new CharClassOptimizer();
+        for (ConstructedRule rule : rules.values()) {
+            rule.body = optimizer.optimize(rule.body);
+        }
+    }
+    
+    private PExpr optimize(PExpr expr) {
+        PExpr result = visit(expr);
+        return result != null ? result.withSource(expr.getSource()) : expr;
+    }
+    
+    private void optimizeTerms(PExpr[] terms) {
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = optimize(terms[i]);
+        }
+    }
+    
+    /**
+     * Matching a plain range or terminal takes a single step already.
+     */
+    private static boolean isWorthReplacing(PExpr expr) {
+        return !(expr instanceof Range || expr instanceof Terminal || expr instanceof CharClass);
+    }
+    
+    private static CharClass toCharClass(PExpr expr) {
+        return isWorthReplacing(expr) ? CharClass.of(expr) : null;
+    }
+    
+    
+    // Composites
+    
+    @Override
+    public PExpr visitAlt(Alt expr) {
+        PExpr[] terms = expr.getTerms();
+        optimizeTerms(terms);
+        CharClass charClass = CharClass.of(expr);
+        if (charClass != null) {
+            return charClass;
+        }
+        
+        // Merge runs of adjacent character classes
+        List<PExpr> mergedTerms = new ArrayList<>();
+        int runStart = 0;
+        for (int i = 0; i <= terms.length; i++) {
+            if (i < terms.length && CharClass.of(terms[i]) != null) {
+                continue;
+            }
+            if (i - runStart > 1) {
+                PExpr[] run = new PExpr[i - runStart];
+                System.arraycopy(terms, runStart, run, 0, run.length);
+                mergedTerms.add(CharClass.of(new Alt(run)));
+            } else if (i - runStart == 1) {
+                mergedTerms.add(terms[runStart]);
+            }
+            if (i < terms.length) {
+                mergedTerms.add(terms[i]);
+            }
+            runStart = i + 1;
+        }
+        return mergedTerms.size() < terms.length ? new Alt(mergedTerms.toArray(new PExpr[0])) : null;
+    }
+    
+    @Override
+    public PExpr visitExtend(Extend expr) {
+        // The terms of an extension are kept as they are, so that they stay in sync with the fields
+        expr.superBody = optimize(expr.superBody);
+        expr.body = optimize(expr.body);
+        PExpr[] terms = expr.getTerms();
+        terms[0] = expr.body;
+        terms[1] = expr.superBody;
+        return null;
+    }
+    
+    @Override
+    public PExpr visitLex(Lex expr) {
+        expr.expr = optimize(expr.expr);
+        return null;
+    }
+    
+    @Override
+    public PExpr visitLookahead(Lookahead expr) {
+        expr.expr = optimize(expr.expr);
+        return null;
+    }
+    
+    @Override
+    public PExpr visitNot(Not expr) {
+        expr.expr = optimize(expr.expr);
+        return null;
+    }
+    
+    @Override
+    public PExpr visitOpt(Opt expr) {
+        return visitIter(expr);
+    }
+    
+    @Override
+    public PExpr visitPlus(Plus expr) {
+        return visitIter(expr);
+    }
+    
+    @Override
+    public PExpr visitSeq(Seq expr) {
+        optimizeTerms(expr.getTerms());
+        return null;
+    }
+    
+    @Override
+    public PExpr visitSplice(Splice expr) {
+        super.visitSplice(expr);
+        return null;
+    }
+    
+    @Override
+    public PExpr visitStar(Star expr) {
+        return visitIter(expr);
+    }
+    
+    private PExpr visitIter(Iter expr) {
+        expr.expr = optimize(expr.expr);
+        return null;
+    }
+    
+    
+    // Leaves
+    
+    @Override
+    public PExpr visitApply(Apply expr) {
+        return toCharClass(expr);
+    }
+    
+    @Override
+    public PExpr visitUnicodeChar(UnicodeChar expr) {
+        return toCharClass(expr);
+    }
+}
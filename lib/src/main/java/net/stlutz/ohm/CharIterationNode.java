@@ -0,0 +1,51 @@
+package net.stlutz.ohm;
+
+/**
+ * An iteration node whose children are consecutive terminals of a single char each, as produced by
+ * scanning iterations like {@code (~"\n" any)*}. The children are only materialized when requested.
+ */
+public class CharIterationNode extends IterationNode {
+    private final int firstChildOffset;
+    private volatile ParseNode[] children;
+    private volatile int[] childOffsets;
+    
+    public CharIterationNode(int matchLength, int firstChildOffset, boolean optional) {
+        super(matchLength, null, null, optional);
+        this.firstChildOffset = firstChildOffset;
+    }
+    
+    int getFirstChildOffset() {
+        return firstChildOffset;
+    }
+    
+    @Override
+    public ParseNode[] getChildren() {
+        ParseNode[] result = children;
+        if (result == null) {
+            result = new ParseNode[matchLength];
+            for (int i = 0; i < matchLength; i++) {
+                result[i] = TerminalNode.get(1);
+            }
+            children = result;
+        }
+        return result;
+    }
+    
+    @Override
+    public int[] getChildOffsets() {
+        int[] result = childOffsets;
+        if (result == null) {
+            result = new int[matchLength];
+            for (int i = 0; i < matchLength; i++) {
+                result[i] = firstChildOffset + i;
+            }
+            childOffsets = result;
+        }
+        return result;
+    }
+    
+    @Override
+    public int numChildren() {
+        return matchLength;
+    }
+}
@@ -5,6 +5,7 @@ import net.stlutz.ohm.pexprs.CaseInsensitiveTerminal;
 import net.stlutz.ohm.pexprs.Param;
 
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static net.stlutz.ohm.pexprs.PExpr.alt;
 import static net.stlutz.ohm.pexprs.PExpr.any;
@@ -72,6 +73,44 @@ public class ConstructedGrammar extends AbstractGrammar {
         return getMatcher(input).match(startRule);
     }
     
+    @Override
+    public MatchResult match(String input, String startRule, MatchOptions options) {
+        return getMatcher(input).match(startRule, options);
+    }
+    
+    @Override
+    public RecognitionResult recognize(String input, String startRule) {
+        return getMatcher(input).recognize(startRule);
+    }
+    
+    @Override
+    public RecognitionResult recognize(String input, String startRule, MatchOptions options) {
+        return getMatcher(input).recognize(startRule, options);
+    }
+    
+    @Override
+    public RecognitionResult matchEvents(String input, String startRule, ParseListener listener) {
+        return getMatcher(input).matchEvents(startRule, listener);
+    }
+    
+    @Override
+    public RecognitionResult matchEvents(String input, String startRule, ParseListener listener,
+                                         MatchOptions options) {
+        return getMatcher(input).matchEvents(startRule, listener, options);
+    }
+    
+    @Override
+    public RecognitionResult matchStream(String input, String startRule, String recordRule,
+                                         Consumer<Node> consumer) {
+        return getMatcher(input).matchStream(startRule, recordRule, consumer);
+    }
+    
+    @Override
+    public RecognitionResult matchStream(String input, String startRule, String recordRule,
+                                         Consumer<Node> consumer, MatchOptions options) {
+        return getMatcher(input).matchStream(startRule, recordRule, consumer, options);
+    }
+    
     @Override
     public <T extends Semantics> SemanticsBlueprint<T> createSemanticsBlueprint(
         Class<T> semanticsClass) {
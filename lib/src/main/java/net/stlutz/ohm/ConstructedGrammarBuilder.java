@@ -140,14 +140,7 @@ public class ConstructedGrammarBuilder {
             rules.put(rDef.name, rule);
         }
         
-        if (superGrammar != null) {
-            superGrammar.getRules().forEach((name, rule) -> {
-                rules.putIfAbsent(name, ConstructedRule.copyOf(rule));
-            });
-        }
-        
-        RulesFinalizer.finalize(rules);
-        return rules;
+        return LayeredRuleMap.inherit(rules, superGrammar);
     }
     
     private ConstructedRule buildRule(RuleDefinition def, Grammar superGrammar) {
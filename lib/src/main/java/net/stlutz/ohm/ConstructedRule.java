@@ -7,11 +7,14 @@ import java.util.List;
 public class ConstructedRule implements Rule {
     final String name;
     final Operation operation;
-    final PExpr body;
+    PExpr body;
     final List<String> formals;
     final String description;
     final String effectiveDescription;
     final SourceInterval source;
+    // Set during finalization, see LeftRecursionAnalysis
+    boolean nullable = true;
+    boolean leftRecursive = true;
     
     public ConstructedRule(String name, PExpr body, List<String> formals, String description, SourceInterval source, Operation operation) {
         this.name = name;
@@ -75,4 +78,14 @@ public class ConstructedRule implements Rule {
     public SourceInterval getSource() {
         return source;
     }
+    
+    @Override
+    public boolean isNullable() {
+        return nullable;
+    }
+    
+    @Override
+    public boolean isLeftRecursive() {
+        return leftRecursive;
+    }
 }
@@ -2,7 +2,10 @@ package net.stlutz.ohm;
 
 import net.stlutz.ohm.pexprs.Apply;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface Grammar {
     /**
@@ -97,11 +100,132 @@ public interface Grammar {
      */
     MatchResult match(String input, String startRule);
     
+    /**
+     * Try to match {@code input} against this grammar, starting at rule {@code startRule}.
+     *
+     * @param input The string to be matched.
+     * @param startRule The rule to start matching with.
+     * @param options The options to match with.
+     * @return The match result, which contains the parse tree if successful.
+     */
+    MatchResult match(String input, String startRule, MatchOptions options);
+    
+    /**
+     * Check whether {@code input} matches this grammar, starting at the default start rule. No parse tree is
+     * constructed.
+     * <p>
+     * Roughly equivalent to {@code this.recognize(input, this.getDefaultStartRule())}
+     *
+     * @param input The string to be recognized.
+     * @return The recognition result.
+     * @throws OhmException If {@link Grammar#getDefaultStartRule()} returns {@code null}.
+     */
+    RecognitionResult recognize(String input);
+    
+    /**
+     * Check whether {@code input} matches this grammar, starting at rule {@code startRule}. No parse tree is
+     * constructed.
+     *
+     * @param input The string to be recognized.
+     * @param startRule The rule to start matching with.
+     * @return The recognition result.
+     */
+    RecognitionResult recognize(String input, String startRule);
+    
+    /**
+     * Check whether {@code input} matches this grammar, starting at rule {@code startRule}. No parse tree is
+     * constructed.
+     *
+     * @param input The string to be recognized.
+     * @param startRule The rule to start matching with.
+     * @param options The options to match with.
+     * @return The recognition result.
+     */
+    RecognitionResult recognize(String input, String startRule, MatchOptions options);
+    
+    /**
+     * Match {@code input} against this grammar, starting at rule {@code startRule}, and report the parse tree
+     * to {@code listener} while matching instead of constructing it.
+     *
+     * @param input The string to be matched.
+     * @param startRule The rule to start matching with.
+     * @param listener The listener to report the parse tree to.
+     * @return The recognition result.
+     * @see ParseListener
+     */
+    RecognitionResult matchEvents(String input, String startRule, ParseListener listener);
+    
+    /**
+     * Match {@code input} against this grammar, starting at rule {@code startRule}, and report the parse tree
+     * to {@code listener} while matching instead of constructing it.
+     *
+     * @param input The string to be matched.
+     * @param startRule The rule to start matching with.
+     * @param listener The listener to report the parse tree to.
+     * @param options The options to match with.
+     * @return The recognition result.
+     * @see ParseListener
+     */
+    RecognitionResult matchEvents(String input, String startRule, ParseListener listener, MatchOptions options);
+    
+    /**
+     * Match {@code input} against this grammar, starting at rule {@code startRule}, and hand each node of rule
+     * {@code recordRule} to {@code consumer} as soon as it is final instead of constructing the whole parse
+     * tree. See {@link Matcher#matchStream(String, String, Consumer)}.
+     *
+     * @param input The string to be matched.
+     * @param startRule The rule to start matching with.
+     * @param recordRule The rule whose nodes are handed to {@code consumer}.
+     * @param consumer The consumer of the record nodes.
+     * @return The recognition result.
+     */
+    RecognitionResult matchStream(String input, String startRule, String recordRule, Consumer<Node> consumer);
+    
+    /**
+     * Match {@code input} against this grammar, starting at rule {@code startRule}, and hand each node of rule
+     * {@code recordRule} to {@code consumer} as soon as it is final instead of constructing the whole parse
+     * tree. See {@link Matcher#matchStream(String, String, Consumer)}.
+     *
+     * @param input The string to be matched.
+     * @param startRule The rule to start matching with.
+     * @param recordRule The rule whose nodes are handed to {@code consumer}.
+     * @param consumer The consumer of the record nodes.
+     * @param options The options to match with.
+     * @return The recognition result.
+     */
+    RecognitionResult matchStream(String input, String startRule, String recordRule, Consumer<Node> consumer,
+                                  MatchOptions options);
+    
     <T extends Semantics> SemanticsBlueprint<T> createSemanticsBlueprint(
         Class<T> semanticsClass);
     
     Apply parseApplication(String ruleName);
     
+    /**
+     * Writes a binary snapshot of this grammar, including its super grammars, to {@code out}.
+     *
+     * @param out The stream to write to. It is not closed.
+     * @throws IOException If writing to {@code out} fails.
+     * @throws OhmException If this grammar is built-in.
+     * @see Grammar#load(java.io.InputStream)
+     */
+    default void save(OutputStream out) throws IOException {
+        GrammarSnapshot.write(this, out);
+    }
+    
+    /**
+     * Restores a grammar from a snapshot written by {@link Grammar#save(OutputStream)}. The grammar sources
+     * are not parsed again.
+     *
+     * @param in The stream to read from. It is not closed.
+     * @return The restored grammar. Its super grammars are restored as well, but not added to any namespace.
+     * @throws IOException If reading from {@code in} fails.
+     * @throws OhmException If {@code in} does not contain a valid snapshot.
+     */
+    static Grammar load(java.io.InputStream in) throws IOException {
+        return GrammarSnapshot.read(in);
+    }
+    
     /**
      * Returns whether this grammar is a built-in grammar.
      *
@@ -0,0 +1,174 @@
+package net.stlutz.ohm;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded, thread-safe cache for grammars built from source, keyed by a hash of the source and the
+ * contents of the namespace it is built in. Repeated requests for the same source in an equivalent namespace
+ * return the same grammar instances, without matching the source again. The least recently used entries are
+ * evicted once the cache is full.
+ * <p>
+ * Grammars obtained from the cache are shared and must not be modified, e.g. through
+ * {@link Grammar#setDefaultStartRule(String)}.
+ */
+public final class GrammarCache {
+    private final int maximumSize;
+    private final Map<Key, List<Grammar>> entries;
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+    
+    /**
+     * @param maximumSize The maximum number of sources to keep grammars for.
+     * @throws IllegalArgumentException If {@code maximumSize} is not positive.
+     */
+    public GrammarCache(int maximumSize) {
+        super();
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Grammar>> eldest) {
+                if (size() > GrammarCache.this.maximumSize) {
+                    evictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Cached version of {@link Ohm#grammar(String)}.
+     */
+    public Grammar grammar(String source) {
+        return grammars(source, null).get(0);
+    }
+    
+    /**
+     * Cached version of {@link Ohm#grammars(String)}.
+     */
+    public List<? extends Grammar> grammars(String source) {
+        return grammars(source, null);
+    }
+    
+    /**
+     * Cached version of {@link Ohm#grammars(String, Namespace)}. Like there, the grammars are added to
+     * {@code namespace}, also when they are taken from the cache.
+     */
+    public List<? extends Grammar> grammars(String source, Namespace namespace) {
+        Objects.requireNonNull(source, "Grammar source must not be null");
+        Key key = new Key(source, namespace);
+        List<Grammar> result;
+        synchronized (this) {
+            result = entries.get(key);
+            if (result != null) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+        }
+        
+        if (result == null) {
+            // Build outside the lock and in a copy of the namespace, so that a concurrent build of the same
+            // source does not leave the loser's grammars in the namespace
+            Namespace buildNamespace = namespace != null ? new Namespace(namespace) : null;
+            List<Grammar> built = List.copyOf(Ohm.grammars(source, buildNamespace));
+            synchronized (this) {
+                result = entries.putIfAbsent(key, built);
+                if (result == null) {
+                    result = built;
+                }
+            }
+        }
+        
+        if (namespace != null) {
+            namespace.addAll(result);
+        }
+        return result;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+    
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "GrammarCache[size=%d/%d, hits=%d, misses=%d, evictions=%d]"
+            .formatted(entries.size(), maximumSize, hitCount, missCount, evictionCount);
+    }
+    
+    /**
+     * The source is only kept as a SHA-256 digest. Namespace grammars are compared by identity, sorted by
+     * name, as their definitions are not available.
+     */
+    private static final class Key {
+        private final byte[] sourceDigest;
+        private final List<Grammar> namespaceGrammars;
+        private final int hashCode;
+        
+        Key(String source, Namespace namespace) {
+            super();
+            this.sourceDigest = digest(source);
+            if (namespace == null) {
+                this.namespaceGrammars = List.of();
+            } else {
+                List<Grammar> grammars = new ArrayList<>(namespace.getGrammars());
+                grammars.sort(Comparator.comparing(Grammar::getName));
+                this.namespaceGrammars = grammars;
+            }
+            this.hashCode = 31 * Arrays.hashCode(sourceDigest) + namespaceGrammars.hashCode();
+        }
+        
+        private static byte[] digest(String source) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other && Arrays.equals(sourceDigest, other.sourceDigest)
+                && namespaceGrammars.equals(other.namespaceGrammars);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Alt;
+import net.stlutz.ohm.pexprs.Any;
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.CaseInsensitiveTerminal;
+import net.stlutz.ohm.pexprs.CharClass;
+import net.stlutz.ohm.pexprs.End;
+import net.stlutz.ohm.pexprs.Extend;
+import net.stlutz.ohm.pexprs.Lex;
+import net.stlutz.ohm.pexprs.Lookahead;
+import net.stlutz.ohm.pexprs.Not;
+import net.stlutz.ohm.pexprs.Opt;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.PExprVisitor;
+import net.stlutz.ohm.pexprs.Param;
+import net.stlutz.ohm.pexprs.Plus;
+import net.stlutz.ohm.pexprs.Range;
+import net.stlutz.ohm.pexprs.Seq;
+import net.stlutz.ohm.pexprs.Splice;
+import net.stlutz.ohm.pexprs.Star;
+import net.stlutz.ohm.pexprs.Terminal;
+import net.stlutz.ohm.pexprs.UnicodeChar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary serialization of finalized grammars, see {@link Grammar#save(OutputStream)} and
+ * {@link Grammar#load(java.io.InputStream)}.
+ * <p>
+ * A snapshot contains the grammar and all its non-built-in super grammars, root first. For each grammar,
+ * only the rules it declares or changes are stored, with their effective bodies (extensions and splices
+ * already resolved). Loading creates the rules directly and finalizes them like
+ * {@link ConstructedGrammarBuilder} does, without parsing any grammar source. Strings, including the
+ * grammar sources referenced by source intervals, are stored once.
+ * <p>
+ * The magic number and version are followed by the length of the rest of the snapshot, so that it can be
+ * read completely before decoding it. Counts and lengths are checked against the remaining bytes, so that
+ * corrupted snapshots fail with an {@link OhmException} rather than huge allocations.
+ */
+final class GrammarSnapshot {
+    private static final int MAGIC = 0x4F484D47; // "OHMG"
+    private static final int VERSION = 1;
+    
+    private static final byte ALT = 1;
+    private static final byte ANY = 2;
+    private static final byte APPLY = 3;
+    private static final byte CASE_INSENSITIVE_TERMINAL = 4;
+    private static final byte END = 5;
+    private static final byte EXTEND = 6;
+    private static final byte LEX = 7;
+    private static final byte LOOKAHEAD = 8;
+    private static final byte NOT = 9;
+    private static final byte OPT = 10;
+    private static final byte PARAM = 11;
+    private static final byte PLUS = 12;
+    private static final byte RANGE = 13;
+    private static final byte SEQ = 14;
+    private static final byte SPLICE = 15;
+    private static final byte STAR = 16;
+    private static final byte TERMINAL = 17;
+    private static final byte UNICODE_CHAR = 18;
+    
+    private GrammarSnapshot() {} // do not instantiate
+    
+    static void write(Grammar grammar, OutputStream out) throws IOException {
+        if (grammar.isBuiltIn()) {
+            throw new OhmException("Cannot save built-in grammar '%s'".formatted(grammar.getName()));
+        }
+        
+        Deque<Grammar> chain = new ArrayDeque<>();
+        Grammar builtIn = grammar;
+        while (!builtIn.isBuiltIn()) {
+            chain.addFirst(builtIn);
+            builtIn = builtIn.getSuperGrammar();
+        }
+        if (builtIn != ConstructedGrammar.BuiltInRules) {
+            throw new OhmException("Cannot save grammar '%s' with built-in super grammar '%s'"
+                .formatted(grammar.getName(), builtIn.getName()));
+        }
+        
+        Writer writer = new Writer();
+        writer.writeVarInt(chain.size());
+        for (Grammar g : chain) {
+            writer.writeGrammar(g);
+        }
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeByte(VERSION);
+        dataOut.writeInt(writer.bytes.size());
+        writer.bytes.writeTo(dataOut);
+        dataOut.flush();
+    }
+    
+    static Grammar read(java.io.InputStream in) throws IOException {
+        byte[] header = in.readNBytes(9);
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        if (header.length < 4 || headerBuffer.getInt() != MAGIC) {
+            throw new OhmException("Not a grammar snapshot");
+        }
+        if (header.length < 9) {
+            throw new OhmException("Malformed grammar snapshot: truncated header");
+        }
+        int version = headerBuffer.get();
+        if (version != VERSION) {
+            throw new OhmException("Unsupported grammar snapshot version %d".formatted(version));
+        }
+        int length = headerBuffer.getInt();
+        if (length < 0) {
+            throw new OhmException("Malformed grammar snapshot: negative length");
+        }
+        // Reads in chunks, so a corrupted length does not allocate more than the input actually has
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length) {
+            throw new OhmException("Malformed grammar snapshot: truncated");
+        }
+        
+        Reader reader = new Reader(payload);
+        try {
+            Grammar grammar = ConstructedGrammar.BuiltInRules;
+            int numGrammars = reader.readCount();
+            for (int i = 0; i < numGrammars; i++) {
+                grammar = reader.readGrammar(grammar);
+            }
+            if (reader.in.available() > 0) {
+                throw new OhmException("Malformed grammar snapshot: trailing bytes");
+            }
+            return grammar;
+        } catch (EOFException e) {
+            throw new OhmException("Malformed grammar snapshot: truncated", e);
+        }
+    }
+    
+    /**
+     * Returns the rules that {@code grammar} declares or changes compared to its super grammar. Inherited
+     * rules are either shared or copies that serialize to the same bytes as the super grammar's rule.
+     */
+    private static List<Rule> getOwnRules(Grammar grammar) {
+        Grammar superGrammar = grammar.getSuperGrammar();
+        List<Rule> result = new ArrayList<>();
+        for (Rule rule : grammar.getRules().values()) {
+            Rule superRule = superGrammar != null ? superGrammar.getRule(rule.getName()) : null;
+            if (superRule != rule && (superRule == null || !Arrays.equals(toBytes(rule), toBytes(superRule)))) {
+                result.add(rule);
+            }
+        }
+        // Sorted, so that equal grammars have equal snapshots
+        result.sort(Comparator.comparing(Rule::getName));
+        return result;
+    }
+    
+    private static byte[] toBytes(Rule rule) {
+        Writer writer = new Writer();
+        writer.writeRule(rule);
+        return writer.bytes.toByteArray();
+    }
+    
+    private static class Writer implements PExprVisitor<Void> {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final Map<String, Integer> strings = new HashMap<>();
+        
+        void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                bytes.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes.write(value);
+        }
+        
+        /**
+         * Strings are written as an index into the strings written so far, shifted by one to allow
+         * {@code null}. A new string is written in full after the next free index.
+         */
+        void writeString(String string) {
+            if (string == null) {
+                writeVarInt(0);
+                return;
+            }
+            Integer index = strings.get(string);
+            if (index != null) {
+                writeVarInt(index + 1);
+                return;
+            }
+            index = strings.size();
+            strings.put(string, index);
+            writeVarInt(index + 1);
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length);
+            bytes.writeBytes(utf8);
+        }
+        
+        void writeSource(SourceInterval source) {
+            writeString(source != null ? source.getSourceString() : null);
+            if (source != null) {
+                writeVarInt(source.getStartIndex());
+                writeVarInt(source.getEndIndex());
+            }
+        }
+        
+        void writeGrammar(Grammar grammar) {
+            List<Rule> rules = getOwnRules(grammar);
+            writeString(grammar.getName());
+            writeString(grammar.getDefaultStartRule());
+            writeVarInt(rules.size());
+            for (Rule rule : rules) {
+                writeRule(rule);
+            }
+        }
+        
+        void writeRule(Rule rule) {
+            writeString(rule.getName());
+            writeVarInt(rule.getOperation().ordinal());
+            writeVarInt(rule.getFormals().size());
+            for (String formal : rule.getFormals()) {
+                writeString(formal);
+            }
+            writeString(rule.getDescription());
+            writeSource(rule.getSource());
+            visit(rule.getBody());
+        }
+        
+        private void writeTag(PExpr expr, byte tag) {
+            bytes.write(tag);
+            writeSource(expr.getSource());
+        }
+        
+        private void writeTerms(PExpr[] terms) {
+            writeVarInt(terms.length);
+            for (PExpr term : terms) {
+                visit(term);
+            }
+        }
+        
+        
+        // Composites
+        
+        @Override
+        public Void visitAlt(Alt expr) {
+            writeTag(expr, ALT);
+            writeTerms(expr.getTerms());
+            return null;
+        }
+        
+        @Override
+        public Void visitApply(Apply expr) {
+            writeTag(expr, APPLY);
+            writeString(expr.getRuleName());
+            writeTerms(expr.getArgs());
+            return null;
+        }
+        
+        @Override
+        public Void visitCaseInsensitiveTerminal(CaseInsensitiveTerminal expr) {
+            writeTag(expr, CASE_INSENSITIVE_TERMINAL);
+            return visit(expr.getParam());
+        }
+        
+        /**
+         * Character classes are created while finalizing, so the original expression is stored.
+         */
+        @Override
+        public Void visitCharClass(CharClass expr) {
+            return visit(expr.getOriginal());
+        }
+        
+        @Override
+        public Void visitExtend(Extend expr) {
+            writeTag(expr, EXTEND);
+            visit(expr.superBody);
+            return visit(expr.body);
+        }
+        
+        @Override
+        public Void visitLex(Lex expr) {
+            writeTag(expr, LEX);
+            return visit(expr.expr);
+        }
+        
+        @Override
+        public Void visitLookahead(Lookahead expr) {
+            writeTag(expr, LOOKAHEAD);
+            return visit(expr.expr);
+        }
+        
+        @Override
+        public Void visitNot(Not expr) {
+            writeTag(expr, NOT);
+            return visit(expr.expr);
+        }
+        
+        @Override
+        public Void visitOpt(Opt expr) {
+            writeTag(expr, OPT);
+            return visit(expr.expr);
+        }
+        
+        @Override
+        public Void visitPlus(Plus expr) {
+            writeTag(expr, PLUS);
+            return visit(expr.expr);
+        }
+        
+        @Override
+        public Void visitSeq(Seq expr) {
+            writeTag(expr, SEQ);
+            writeTerms(expr.getTerms());
+            return null;
+        }
+        
+        @Override
+        public Void visitSplice(Splice expr) {
+            writeTag(expr, SPLICE);
+            return visit(expr.getSuperExpr());
+        }
+        
+        @Override
+        public Void visitStar(Star expr) {
+            writeTag(expr, STAR);
+            return visit(expr.expr);
+        }
+        
+        
+        // Leaves
+        
+        /**
+         * Any and End are shared instances, so their (last assigned) source is meaningless.
+         */
+        @Override
+        public Void visitAny(Any expr) {
+            bytes.write(ANY);
+            writeSource(null);
+            return null;
+        }
+        
+        @Override
+        public Void visitEnd(End expr) {
+            bytes.write(END);
+            writeSource(null);
+            return null;
+        }
+        
+        @Override
+        public Void visitParam(Param expr) {
+            writeTag(expr, PARAM);
+            writeVarInt(expr.index);
+            return null;
+        }
+        
+        @Override
+        public Void visitRange(Range expr) {
+            writeTag(expr, RANGE);
+            writeVarInt(expr.from);
+            writeVarInt(expr.to);
+            return null;
+        }
+        
+        @Override
+        public Void visitTerminal(Terminal expr) {
+            writeTag(expr, TERMINAL);
+            writeString(expr.getString());
+            return null;
+        }
+        
+        @Override
+        public Void visitUnicodeChar(UnicodeChar expr) {
+            writeTag(expr, UNICODE_CHAR);
+            writeVarInt(expr.getCategories());
+            return null;
+        }
+    }
+    
+    /**
+     * Reads the part of a snapshot after the header. All of it is in memory, so {@code in.available()} is the
+     * exact number of remaining bytes.
+     */
+    private static class Reader {
+        final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+        
+        Reader(byte[] bytes) {
+            super();
+            this.in = new DataInputStream(new ByteArrayInputStream(bytes));
+        }
+        
+        int readVarInt() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = in.readUnsignedByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new OhmException("Malformed grammar snapshot");
+        }
+        
+        /**
+         * Reads the number of elements that follow. Each of them takes at least one byte.
+         */
+        int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > in.available()) {
+                throw new OhmException("Malformed grammar snapshot: invalid count %d".formatted(count));
+            }
+            return count;
+        }
+        
+        String readString() throws IOException {
+            int index = readVarInt() - 1;
+            if (index < 0) {
+                return null;
+            } else if (index < strings.size()) {
+                return strings.get(index);
+            } else if (index > strings.size()) {
+                throw new OhmException("Malformed grammar snapshot");
+            }
+            int length = readVarInt();
+            if (length < 0 || length > in.available()) {
+                throw new OhmException("Malformed grammar snapshot: invalid string length %d".formatted(length));
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+        
+        String readNonNullString() throws IOException {
+            String string = readString();
+            if (string == null) {
+                throw new OhmException("Malformed grammar snapshot: missing string");
+            }
+            return string;
+        }
+        
+        SourceInterval readSource() throws IOException {
+            String sourceString = readString();
+            if (sourceString == null) {
+                return null;
+            }
+            int startIndex = readVarInt();
+            int endIndex = readVarInt();
+            if (startIndex < 0 || startIndex > endIndex || endIndex > sourceString.length()) {
+                throw new OhmException("Malformed grammar snapshot: invalid source interval");
+            }
+            return new SourceInterval(sourceString, startIndex, endIndex);
+        }
+        
+        Grammar readGrammar(Grammar superGrammar) throws IOException {
+            String name = readNonNullString();
+            String defaultStartRule = readString();
+            Map<String, ConstructedRule> rules = new HashMap<>();
+            int numRules = readCount();
+            for (int i = 0; i < numRules; i++) {
+                ConstructedRule rule = readRule();
+                rules.put(rule.getName(), rule);
+            }
+            return new ConstructedGrammar(name, superGrammar, LayeredRuleMap.inherit(rules, superGrammar),
+                defaultStartRule, false);
+        }
+        
+        ConstructedRule readRule() throws IOException {
+            String name = readNonNullString();
+            int ordinal = readVarInt();
+            if (ordinal < 0 || ordinal >= Rule.Operation.values().length) {
+                throw new OhmException("Malformed grammar snapshot: unknown rule operation %d".formatted(ordinal));
+            }
+            Rule.Operation operation = Rule.Operation.values()[ordinal];
+            List<String> formals = new ArrayList<>();
+            int numFormals = readCount();
+            for (int i = 0; i < numFormals; i++) {
+                formals.add(readNonNullString());
+            }
+            String description = readString();
+            SourceInterval source = readSource();
+            PExpr body = readPExpr();
+            return new ConstructedRule(name, body, formals, description, source, operation);
+        }
+        
+        PExpr[] readTerms() throws IOException {
+            PExpr[] terms = new PExpr[readCount()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = readPExpr();
+            }
+            return terms;
+        }
+        
+        PExpr readPExpr() throws IOException {
+            byte tag = in.readByte();
+            SourceInterval source = readSource();
+            PExpr result = switch (tag) {
+                case ALT -> new Alt(readTerms());
+                case ANY -> PExpr.any();
+                case APPLY -> {
+                    String ruleName = readNonNullString();
+                    yield new Apply(ruleName, readTerms());
+                }
+                case CASE_INSENSITIVE_TERMINAL -> new CaseInsensitiveTerminal(readPExpr());
+                case END -> PExpr.end();
+                case EXTEND -> {
+                    PExpr superBody = readPExpr();
+                    yield new Extend(superBody, readPExpr());
+                }
+                case LEX -> new Lex(readPExpr());
+                case LOOKAHEAD -> new Lookahead(readPExpr());
+                case NOT -> new Not(readPExpr());
+                case OPT -> new Opt(readPExpr());
+                case PARAM -> {
+                    int index = readVarInt();
+                    if (index < 0) {
+                        throw new OhmException("Malformed grammar snapshot: invalid parameter %d".formatted(index));
+                    }
+                    yield new Param(index);
+                }
+                case PLUS -> new Plus(readPExpr());
+                case RANGE -> {
+                    int from = readVarInt();
+                    yield new Range(from, readVarInt());
+                }
+                case SEQ -> new Seq(readTerms());
+                case SPLICE -> new Splice(readPExpr());
+                case STAR -> new Star(readPExpr());
+                case TERMINAL -> new Terminal(readNonNullString());
+                case UNICODE_CHAR -> new UnicodeChar(toCategories(readVarInt()));
+                default -> throw new OhmException("Malformed grammar snapshot: unknown expression %d".formatted(tag));
+            };
+            return source != null ? result.withSource(source) : result;
+        }
+        
+        private static byte[] toCategories(int bitset) {
+            byte[] categories = new byte[Integer.bitCount(bitset)];
+            int index = 0;
+            for (byte category = 0; category < 32; category++) {
+                if (((bitset >> category) & 1) != 0) {
+                    categories[index++] = category;
+                }
+            }
+            return categories;
+        }
+    }
+}
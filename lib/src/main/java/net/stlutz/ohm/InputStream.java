@@ -1,15 +1,58 @@
 package net.stlutz.ohm;
 
+import java.util.function.IntPredicate;
+
 public class InputStream {
-    private final String source;
-    private int position = 0;
-    private int rightmostExaminedPosition = 0;
+    protected final String source;
+    protected int position = 0;
+    protected int rightmostExaminedPosition = 0;
     
     public InputStream(String source) {
         super();
         this.source = source;
     }
     
+    /**
+     * Returns an input stream for {@code source} that is specialized for inputs of the given kind.
+     */
+    public static InputStream create(String source, Kind kind) {
+        return switch (kind) {
+            case LATIN1 -> new Latin1InputStream(source);
+            case SURROGATE_FREE -> new SurrogateFreeInputStream(source);
+            case GENERAL -> new InputStream(source);
+        };
+    }
+    
+    public static InputStream create(String source) {
+        return create(source, Kind.of(source));
+    }
+    
+    public enum Kind {
+        /**
+         * Only chars up to U+00FF, which includes ASCII.
+         */
+        LATIN1,
+        /**
+         * No surrogates, i.e. every char is a code point of its own.
+         */
+        SURROGATE_FREE,
+        GENERAL;
+        
+        public static Kind of(String source) {
+            Kind kind = LATIN1;
+            for (int i = 0; i < source.length(); i++) {
+                char c = source.charAt(i);
+                if (Character.isSurrogate(c)) {
+                    return GENERAL;
+                }
+                if (c > 0xFF) {
+                    kind = SURROGATE_FREE;
+                }
+            }
+            return kind;
+        }
+    }
+    
     public int getRightmostExaminedPosition() {
         return rightmostExaminedPosition;
     }
@@ -49,12 +92,57 @@ public class InputStream {
         return codePoint;
     }
     
+    /**
+     * Returns the code point at the current position, or -1 at the end of the input. Neither moves the stream
+     * nor counts as examining input.
+     */
+    public int peekCodePoint() {
+        return position < source.length() ? source.codePointAt(position) : -1;
+    }
+    
+    /**
+     * Records the next {@code length} chars from the current position as examined.
+     */
+    public void examine(int length) {
+        rightmostExaminedPosition = Math.max(rightmostExaminedPosition, position + length);
+    }
+    
     public boolean matches(String str) {
-        return match(str) == str.length();
+        if (source.startsWith(str, position)) {
+            examine(str.length());
+            return true;
+        }
+        // Only for recording the examined input
+        match(str);
+        return false;
     }
     
     public boolean matches(String str, boolean ignoreCase) {
-        return match(str, ignoreCase) == str.length();
+        return ignoreCase ? match(str, true) == str.length() : matches(str);
+    }
+    
+    /**
+     * Like {@link #matches(String, boolean)} with {@code ignoreCase == true}, where {@code foldedStr} is the
+     * result of {@link #foldCase(String) foldCase(str)}.
+     */
+    public boolean matchesIgnoringCase(String str, int[] foldedStr) {
+        return match(str, true) == str.length();
+    }
+    
+    /**
+     * Returns the case-folded code point starting at each char index of {@code str}. Two code points match
+     * case-insensitively if and only if their folded forms are equal.
+     */
+    public static int[] foldCase(String str) {
+        int[] result = new int[str.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = foldCodePoint(str.codePointAt(i));
+        }
+        return result;
+    }
+    
+    private static int foldCodePoint(int codePoint) {
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
     }
     
     /**
@@ -106,6 +194,65 @@ public class InputStream {
             || Character.toLowerCase(cpActualUpper) == Character.toLowerCase(cpExpectedUpper);
     }
     
+    
+    /**
+     * Returns the position of the next occurrence of {@code str} at or after the current position, or the
+     * end of the input if there is none. Does not move the stream. Everything up to the end of the
+     * occurrence counts as examined.
+     */
+    public int scanUntil(String str) {
+        int index = source.indexOf(str, position);
+        if (index < 0) {
+            rightmostExaminedPosition = Math.max(rightmostExaminedPosition, source.length() + 1);
+            return source.length();
+        }
+        rightmostExaminedPosition = Math.max(rightmostExaminedPosition, index + Math.max(str.length(), 1));
+        return index;
+    }
+    
+    /**
+     * Returns the position of the next char at or after the current position at which a code point satisfying
+     * {@code predicate} starts, or the end of the input if there is none. Does not move the stream.
+     */
+    public int scanUntil(IntPredicate predicate) {
+        int length = source.length();
+        int index = position;
+        while (index < length && !predicate.test(source.codePointAt(index))) {
+            index++;
+        }
+        examineCodePointAt(index);
+        return index;
+    }
+    
+    /**
+     * Returns the position after the longest run of code points satisfying {@code predicate} starting at the
+     * current position. Does not move the stream. Only the run itself counts as examined, the code point
+     * ending it is left to the caller.
+     */
+    public int scanWhile(IntPredicate predicate) {
+        int length = source.length();
+        int index = position;
+        while (index < length) {
+            int codePoint = source.codePointAt(index);
+            if (!predicate.test(codePoint)) {
+                break;
+            }
+            index += Character.charCount(codePoint);
+        }
+        rightmostExaminedPosition = Math.max(rightmostExaminedPosition, index);
+        return index;
+    }
+    
+    private void examineCodePointAt(int index) {
+        int examinedEnd =
+            index < source.length() ? index + Character.charCount(source.codePointAt(index)) : index + 1;
+        rightmostExaminedPosition = Math.max(rightmostExaminedPosition, examinedEnd);
+    }
+    
+    public int codePointCount(int startIndex, int endIndex) {
+        return source.codePointCount(startIndex, endIndex);
+    }
+    
     public String sourceSlice(int startIndex, int endIndex) {
         return source.substring(startIndex, endIndex);
     }
@@ -117,4 +264,107 @@ public class InputStream {
     public SourceInterval sourceInterval(int startIndex, int endIndex) {
         return new SourceInterval(source, startIndex, endIndex);
     }
+    
+    /**
+     * For inputs without surrogates, where every char is a code point.
+     */
+    private static class SurrogateFreeInputStream extends InputStream {
+        SurrogateFreeInputStream(String source) {
+            super(source);
+        }
+        
+        @Override
+        public int nextCodePoint() {
+            int codePoint = source.charAt(position++);
+            rightmostExaminedPosition = Math.max(rightmostExaminedPosition, position);
+            return codePoint;
+        }
+        
+        @Override
+        public int peekCodePoint() {
+            return position < source.length() ? source.charAt(position) : -1;
+        }
+        
+        @Override
+        public int match(String str, boolean ignoreCase) {
+            if (ignoreCase) {
+                return super.match(str, true);
+            }
+            
+            int maxMatchLength = Math.min(str.length(), source.length() - position);
+            if (maxMatchLength == 0) {
+                return 0;
+            }
+            
+            int matchLength = 0;
+            while (matchLength < maxMatchLength
+                && source.charAt(position + matchLength) == str.charAt(matchLength)) {
+                matchLength++;
+            }
+            
+            examine(Math.min(matchLength + 1, str.length()));
+            return matchLength;
+        }
+        
+        @Override
+        public int scanUntil(IntPredicate predicate) {
+            int length = source.length();
+            int index = position;
+            while (index < length && !predicate.test(source.charAt(index))) {
+                index++;
+            }
+            rightmostExaminedPosition = Math.max(rightmostExaminedPosition, index + 1);
+            return index;
+        }
+        
+        @Override
+        public int scanWhile(IntPredicate predicate) {
+            int length = source.length();
+            int index = position;
+            while (index < length && predicate.test(source.charAt(index))) {
+                index++;
+            }
+            rightmostExaminedPosition = Math.max(rightmostExaminedPosition, index);
+            return index;
+        }
+        
+        @Override
+        public int codePointCount(int startIndex, int endIndex) {
+            return endIndex - startIndex;
+        }
+    }
+    
+    /**
+     * For inputs consisting of chars up to U+00FF only, which can be case-folded by a table lookup.
+     */
+    private static class Latin1InputStream extends SurrogateFreeInputStream {
+        private static final int[] foldedLatin1 = new int[256];
+        
+        static {
+            for (int c = 0; c < foldedLatin1.length; c++) {
+                foldedLatin1[c] = foldCodePoint(c);
+            }
+        }
+        
+        Latin1InputStream(String source) {
+            super(source);
+        }
+        
+        @Override
+        public boolean matchesIgnoringCase(String str, int[] foldedStr) {
+            int maxMatchLength = Math.min(str.length(), source.length() - position);
+            if (maxMatchLength == 0) {
+                return str.isEmpty();
+            }
+            
+            int matchLength = 0;
+            while (matchLength < maxMatchLength
+                && foldedLatin1[source.charAt(position + matchLength)] == foldedStr[matchLength]) {
+                matchLength++;
+            }
+            
+            examine(Math.min(matchLength + 1, str.length()));
+            return matchLength == str.length();
+        }
+    }
 }
@@ -0,0 +1,215 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.BasePExprVisitor;
+import net.stlutz.ohm.pexprs.CharClass;
+import net.stlutz.ohm.pexprs.PExpr;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The rules of a grammar, layered over the rules of its super grammar. Only the rules a grammar declares,
+ * and inherited rules whose applications have to be bound differently, are owned by a layer. All other
+ * rules, including their finalized bodies, are shared with the super grammar.
+ * <p>
+ * Each layer also indexes which of its rules apply which rule names, so that a sub grammar can find the
+ * inherited rules affected by its declarations without walking all bodies.
+ */
+class LayeredRuleMap extends AbstractMap<String, ConstructedRule> {
+    private final Map<String, ConstructedRule> ownRules;
+    private final LayeredRuleMap parent;
+    private final Map<String, Set<String>> ownCallers = new HashMap<>();
+    private final int size;
+    private Set<Entry<String, ConstructedRule>> entrySet;
+    
+    private LayeredRuleMap(Map<String, ConstructedRule> ownRules, LayeredRuleMap parent) {
+        super();
+        this.ownRules = ownRules;
+        this.parent = parent;
+        
+        int inheritedSize = 0;
+        if (parent != null) {
+            inheritedSize = parent.size();
+            for (String ruleName : ownRules.keySet()) {
+                if (parent.containsKey(ruleName)) {
+                    inheritedSize--;
+                }
+            }
+        }
+        this.size = ownRules.size() + inheritedSize;
+    }
+    
+    /**
+     * Finalizes {@code declaredRules} as the rules of a grammar with super grammar {@code superGrammar}
+     * (which may be {@code null}) and returns all rules of that grammar.
+     */
+    static Map<String, ConstructedRule> inherit(Map<String, ConstructedRule> declaredRules, Grammar superGrammar) {
+        Map<String, ConstructedRule> ownRules = new HashMap<>(declaredRules);
+        LayeredRuleMap parent = null;
+        if (superGrammar instanceof AbstractGrammar abstractGrammar
+            && abstractGrammar.rules instanceof LayeredRuleMap layeredRules) {
+            parent = layeredRules;
+            // Inherited rules applying a declared rule, directly or indirectly, must be bound to this grammar
+            Deque<String> worklist = new ArrayDeque<>(declaredRules.keySet());
+            while (!worklist.isEmpty()) {
+                for (String caller : parent.getCallers(worklist.removeFirst())) {
+                    if (!ownRules.containsKey(caller)) {
+                        ownRules.put(caller, ConstructedRule.copyOf(parent.get(caller)));
+                        worklist.addLast(caller);
+                    }
+                }
+            }
+        } else if (superGrammar != null) {
+            superGrammar.getRules().forEach((name, rule) -> {
+                ownRules.putIfAbsent(name, ConstructedRule.copyOf(rule));
+            });
+        }
+        
+        LayeredRuleMap rules = new LayeredRuleMap(ownRules, parent);
+        RulesFinalizer.finalize(ownRules, rules);
+        rules.indexCallers();
+        return rules;
+    }
+    
+    private void indexCallers() {
+        CalleeCollector collector = new CalleeCollector();
+        for (ConstructedRule rule : ownRules.values()) {
+            collector.callees.clear();
+            collector.visit(rule.getBody());
+            for (String callee : collector.callees) {
+                ownCallers.computeIfAbsent(callee, key -> new HashSet<>()).add(rule.getName());
+            }
+        }
+    }
+    
+    /**
+     * Returns the names of the rules whose bodies apply {@code ruleName}.
+     */
+    Set<String> getCallers(String ruleName) {
+        Set<String> callers = ownCallers.getOrDefault(ruleName, Collections.emptySet());
+        if (parent == null) {
+            return callers;
+        }
+        Set<String> result = new HashSet<>(callers);
+        for (String caller : parent.getCallers(ruleName)) {
+            // Owned rules shadow the inherited rule and its applications
+            if (!ownRules.containsKey(caller)) {
+                result.add(caller);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the rules owned by this layer, i.e. not shared with the super grammar.
+     */
+    Map<String, ConstructedRule> getOwnRules() {
+        return Collections.unmodifiableMap(ownRules);
+    }
+    
+    @Override
+    public ConstructedRule get(Object key) {
+        ConstructedRule rule = ownRules.get(key);
+        if (rule == null && parent != null) {
+            return parent.get(key);
+        }
+        return rule;
+    }
+    
+    @Override
+    public boolean containsKey(Object key) {
+        return ownRules.containsKey(key) || (parent != null && parent.containsKey(key));
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public Set<Entry<String, ConstructedRule>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+    
+    private class EntrySet extends AbstractSet<Entry<String, ConstructedRule>> {
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Iterator<Entry<String, ConstructedRule>> iterator() {
+            Iterator<Entry<String, ConstructedRule>> own = Collections.unmodifiableMap(ownRules).entrySet()
+                .iterator();
+            Iterator<Entry<String, ConstructedRule>> inherited = parent != null
+                ? parent.entrySet().iterator()
+                : Collections.emptyIterator();
+            
+            return new Iterator<>() {
+                private Entry<String, ConstructedRule> next = advance();
+                
+                private Entry<String, ConstructedRule> advance() {
+                    if (own.hasNext()) {
+                        return own.next();
+                    }
+                    while (inherited.hasNext()) {
+                        Entry<String, ConstructedRule> entry = inherited.next();
+                        if (!ownRules.containsKey(entry.getKey())) {
+                            return entry;
+                        }
+                    }
+                    return null;
+                }
+                
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+                
+                @Override
+                public Entry<String, ConstructedRule> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Entry<String, ConstructedRule> result = next;
+                    next = advance();
+                    return result;
+                }
+            };
+        }
+    }
+    
+    private static class CalleeCollector extends BasePExprVisitor<Void> {
+        final Set<String> callees = new HashSet<>();
+        
+        @Override
+        public Void visitApply(Apply expr) {
+            callees.add(expr.getRuleName());
+            for (PExpr arg : expr.getArgs()) {
+                visit(arg);
+            }
+            return null;
+        }
+        
+        /**
+         * Character classes may have inlined rules, which count as applications.
+         */
+        @Override
+        public Void visitCharClass(CharClass expr) {
+            return visit(expr.getOriginal());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.BasePExprVisitor;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.Param;
+import net.stlutz.ohm.pexprs.Seq;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Determines which rules are nullable and which rules may be applied left-recursively, i.e. again at the
+ * same position before any input was consumed. A rule is left-recursive if it is part of a cycle in the
+ * graph of applications at the left edge of rule bodies (a strongly connected component with more than one
+ * rule or with a self-loop). Rules whose left edge depends on parameters or on rules that are only resolved
+ * while matching are conservatively considered left-recursive as well.
+ */
+class LeftRecursionAnalysis extends BasePExprVisitor<Void> {
+    private final Collection<ConstructedRule> rules;
+    private final Rule spacesRule;
+    
+    // Left-call graph, filled while visiting a rule's body
+    private final Map<Rule, Set<Rule>> leftCalls = new HashMap<>();
+    private Set<Rule> currentLeftCalls;
+    private boolean currentIsUnknown;
+    
+    // Tarjan's algorithm
+    private final Map<Rule, Integer> indices = new HashMap<>();
+    private final Map<Rule, Integer> lowLinks = new HashMap<>();
+    private final Deque<Rule> stack = new ArrayDeque<>();
+    private final Set<Rule> onStack = new LinkedHashSet<>();
+    private int nextIndex = 0;
+    
+    private LeftRecursionAnalysis(Map<String, ConstructedRule> ownRules, Map<String, ConstructedRule> allRules) {
+        this.rules = ownRules.values();
+        this.spacesRule = allRules.get("spaces");
+    }
+    
+    static void analyze(Map<String, ConstructedRule> rules) {
+        analyze(rules, rules);
+    }
+    
+    /**
+     * Analyzes {@code ownRules} only. The other rules of {@code allRules} keep their results, which is
+     * sound as long as they do not apply any of {@code ownRules}, see {@link LayeredRuleMap}.
+     */
+    static void analyze(Map<String, ConstructedRule> ownRules, Map<String, ConstructedRule> allRules) {
+        LeftRecursionAnalysis analysis = new LeftRecursionAnalysis(ownRules, allRules);
+        analysis.computeNullability();
+        analysis.computeLeftRecursion();
+    }
+    
+    private void computeNullability() {
+        // Fixpoint iteration, starting from "nothing is nullable"
+        for (ConstructedRule rule : rules) {
+            rule.nullable = false;
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (ConstructedRule rule : rules) {
+                if (!rule.nullable && rule.body.isNullable()) {
+                    rule.nullable = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+    
+    private void computeLeftRecursion() {
+        List<ConstructedRule> unknownRules = new ArrayList<>();
+        for (ConstructedRule rule : rules) {
+            currentLeftCalls = new LinkedHashSet<>();
+            currentIsUnknown = false;
+            if (Util.isSyntactic(rule.name) && spacesRule != null) {
+                // Spaces are skipped at the left edge of syntactic rules
+                currentLeftCalls.add(spacesRule);
+            }
+            visit(rule.body);
+            leftCalls.put(rule, currentLeftCalls);
+            if (currentIsUnknown) {
+                unknownRules.add(rule);
+            }
+        }
+        
+        for (ConstructedRule rule : rules) {
+            rule.leftRecursive = false;
+        }
+        for (ConstructedRule rule : rules) {
+            if (!indices.containsKey(rule)) {
+                findComponents(rule);
+            }
+        }
+        for (ConstructedRule rule : unknownRules) {
+            rule.leftRecursive = true;
+        }
+    }
+    
+    private void findComponents(Rule rule) {
+        indices.put(rule, nextIndex);
+        lowLinks.put(rule, nextIndex);
+        nextIndex++;
+        stack.push(rule);
+        onStack.add(rule);
+        
+        for (Rule callee : leftCalls.getOrDefault(rule, Set.of())) {
+            if (!indices.containsKey(callee)) {
+                findComponents(callee);
+                lowLinks.put(rule, Math.min(lowLinks.get(rule), lowLinks.get(callee)));
+            } else if (onStack.contains(callee)) {
+                lowLinks.put(rule, Math.min(lowLinks.get(rule), indices.get(callee)));
+            }
+        }
+        
+        if (lowLinks.get(rule).equals(indices.get(rule))) {
+            List<Rule> component = new ArrayList<>();
+            Rule member;
+            do {
+                member = stack.pop();
+                onStack.remove(member);
+                component.add(member);
+            } while (member != rule);
+            
+            boolean isCyclic = component.size() > 1 || leftCalls.getOrDefault(rule, Set.of()).contains(rule);
+            if (isCyclic) {
+                for (Rule componentRule : component) {
+                    if (componentRule instanceof ConstructedRule constructedRule) {
+                        constructedRule.leftRecursive = true;
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    // Collecting applications at the left edge
+    
+    @Override
+    public Void visitSeq(Seq expr) {
+        for (PExpr term : expr.getTerms()) {
+            visit(term);
+            if (!term.isNullable()) {
+                break;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public Void visitApply(Apply expr) {
+        Rule rule = expr.getRule();
+        if (rule == null) {
+            currentIsUnknown = true;
+            return null;
+        }
+        currentLeftCalls.add(rule);
+        // Arguments may be applied at the left edge of the rule's body
+        for (PExpr arg : expr.getArgs()) {
+            visit(arg);
+        }
+        return null;
+    }
+    
+    @Override
+    public Void visitParam(Param expr) {
+        currentIsUnknown = true;
+        return null;
+    }
+}
@@ -0,0 +1,97 @@
+package net.stlutz.ohm;
+
+import java.util.Arrays;
+
+/**
+ * A sorted index of the line start offsets of a string, built lazily on first use. Allows line and column
+ * lookups in logarithmic time, which matters when reporting positions for many nodes of a large input.
+ */
+public class LineIndex {
+    private final String source;
+    private volatile int[] lineStarts;
+    
+    public LineIndex(String source) {
+        super();
+        this.source = source;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    public int numLines() {
+        return getLineStarts().length;
+    }
+    
+    /**
+     * Returns the 0-based index of the line containing {@code offset}.
+     */
+    public int lineIndexOf(int offset) {
+        if (offset < 0 || offset > source.length()) {
+            throw new IndexOutOfBoundsException(offset);
+        }
+        
+        int[] starts = getLineStarts();
+        int index = Arrays.binarySearch(starts, offset);
+        // not found -> the insertion point is right after the line we're looking for
+        return index >= 0 ? index : -index - 2;
+    }
+    
+    /**
+     * Returns the offset at which the line with 0-based index {@code lineIndex} starts.
+     */
+    public int lineStart(int lineIndex) {
+        return getLineStarts()[lineIndex];
+    }
+    
+    /**
+     * Returns the contents of the line with 0-based index {@code lineIndex}, without its line terminator.
+     */
+    public String line(int lineIndex) {
+        int[] starts = getLineStarts();
+        int start = starts[lineIndex];
+        int end = lineIndex + 1 < starts.length ? starts[lineIndex + 1] - 1 : source.length();
+        // Strip a trailing carriage return if necessary
+        if (end > start && source.charAt(end - 1) == '\r') {
+            end--;
+        }
+        return source.substring(start, end);
+    }
+    
+    public LineAndColumnInfo getLineAndColumn(int offset) {
+        int lineIndex = lineIndexOf(offset);
+        int lineStart = lineStart(lineIndex);
+        
+        int columnNum = 1;
+        for (int i = lineStart; i < offset; i++) {
+            if (source.charAt(i) != '\r') {
+                columnNum++;
+            }
+        }
+        
+        String previousLine = lineIndex > 0 ? line(lineIndex - 1) : null;
+        String nextLine = lineIndex + 1 < numLines() ? line(lineIndex + 1) : null;
+        return new LineAndColumnInfo(offset, lineIndex + 1, columnNum, line(lineIndex), previousLine, nextLine);
+    }
+    
+    private int[] getLineStarts() {
+        int[] starts = lineStarts;
+        if (starts == null) {
+            starts = lineStarts = computeLineStarts(source);
+        }
+        return starts;
+    }
+    
+    private static int[] computeLineStarts(String source) {
+        int[] starts = new int[16];
+        int numLines = 1;
+        int index = -1;
+        while ((index = source.indexOf('\n', index + 1)) >= 0) {
+            if (numLines == starts.length) {
+                starts = Arrays.copyOf(starts, numLines * 2);
+            }
+            starts[numLines++] = index + 1;
+        }
+        return Arrays.copyOf(starts, numLines);
+    }
+}
@@ -0,0 +1,341 @@
+package net.stlutz.ohm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary format for the CST of a successful match, laid out so that it can be used directly from a memory
+ * mapped file. Loading only maps the file and reads the rule names; the nodes are created on demand from
+ * fixed size records while the tree is traversed, so the operating system pages in only what is visited.
+ * <p>
+ * Layout (big endian ints):
+ * <ul>
+ * <li>Header: magic, version, input length, CST offset, rightmost examined position, number of rule
+ * names, number of nodes, number of child references, root reference.</li>
+ * <li>Rule names: length and UTF-8 bytes per name, padded to a multiple of 4 bytes.</li>
+ * <li>Nodes: tag (kind, optional flag and rule index), match length, number of children and index of
+ * the first child reference (or the offset of the first child for char iterations).</li>
+ * <li>Child references: node reference and offset per child.</li>
+ * </ul>
+ * A node reference {@code >= 0} is a node index, a negative reference {@code -(n + 1)} is a terminal with
+ * match length {@code n}. Nodes shared by several parents are stored once.
+ */
+final class MappedCST {
+    private static final int MAGIC = 0x4F484D43; // "OHMC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 9 * Integer.BYTES;
+    private static final int NODE_SIZE = 4 * Integer.BYTES;
+    private static final int CHILD_SIZE = 2 * Integer.BYTES;
+    
+    private static final int NONTERMINAL = 0;
+    private static final int ITERATION = 1;
+    private static final int CHAR_ITERATION = 2;
+    private static final int KIND_MASK = 3;
+    private static final int OPTIONAL = 4;
+    private static final int RULE_SHIFT = 3;
+    
+    private final ByteBuffer buffer;
+    private final String[] ruleNames;
+    private final int inputLength;
+    private final int cstOffset;
+    private final int rightmostExaminedPosition;
+    private final int nodesStart;
+    private final int childrenStart;
+    private final int numNodes;
+    private final int numChildRefs;
+    private final ParseNode root;
+    
+    private MappedCST(ByteBuffer buffer) {
+        super();
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new OhmException("Not a CST file");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new OhmException("Unsupported CST file version %d".formatted(version));
+        }
+        inputLength = buffer.getInt(8);
+        cstOffset = buffer.getInt(12);
+        rightmostExaminedPosition = buffer.getInt(16);
+        ruleNames = new String[buffer.getInt(20)];
+        numNodes = buffer.getInt(24);
+        numChildRefs = buffer.getInt(28);
+        
+        int position = HEADER_SIZE;
+        for (int i = 0; i < ruleNames.length; i++) {
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            buffer.get(position + Integer.BYTES, bytes);
+            ruleNames[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += Integer.BYTES + align(length);
+        }
+        nodesStart = position;
+        childrenStart = nodesStart + numNodes * NODE_SIZE;
+        if ((long) childrenStart + (long) numChildRefs * CHILD_SIZE != buffer.capacity()) {
+            throw new OhmException("Truncated CST file");
+        }
+        root = node(buffer.getInt(32));
+    }
+    
+    private static int align(int length) {
+        return (length + 3) & ~3;
+    }
+    
+    /**
+     * Maps the CST file at {@code path}. The mapping stays valid after the file has been replaced or
+     * deleted, but the file must not be modified in place while the CST is in use.
+     */
+    static MappedCST map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedCST(buffer);
+        }
+    }
+    
+    static MappedCST wrap(ByteBuffer buffer) {
+        return new MappedCST(buffer.duplicate());
+    }
+    
+    int getInputLength() {
+        return inputLength;
+    }
+    
+    int getCstOffset() {
+        return cstOffset;
+    }
+    
+    int getRightmostExaminedPosition() {
+        return rightmostExaminedPosition;
+    }
+    
+    ParseNode getRoot() {
+        return root;
+    }
+    
+    private ParseNode node(int ref) {
+        if (ref < 0) {
+            return TerminalNode.get(-(ref + 1));
+        }
+        if (ref >= numNodes) {
+            throw new OhmException("Invalid node reference %d in CST file".formatted(ref));
+        }
+        return new MappedNode(nodesStart + ref * NODE_SIZE);
+    }
+    
+    /**
+     * Returns the serialized form of the CST of {@code matchResult}, which must have succeeded.
+     */
+    static ByteBuffer toBytes(MatchResult matchResult) {
+        if (matchResult.failed()) {
+            throw new OhmException("Cannot serialize the CST of a failed match");
+        }
+        Writer writer = new Writer();
+        int rootRef = writer.addNode(matchResult.getCST());
+        
+        byte[][] names = new byte[writer.ruleNames.size()][];
+        int namesSize = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = writer.ruleNames.get(i).getBytes(StandardCharsets.UTF_8);
+            namesSize += Integer.BYTES + align(names[i].length);
+        }
+        int numNodes = writer.nodes.length / 4;
+        int numChildRefs = writer.children.length / 2;
+        ByteBuffer buffer = ByteBuffer.allocate(
+            HEADER_SIZE + namesSize + numNodes * NODE_SIZE + numChildRefs * CHILD_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(matchResult.getInput().length())
+            .putInt(matchResult.getCstOffset()).putInt(matchResult.getRightmostExaminedPosition())
+            .putInt(names.length).putInt(numNodes).putInt(numChildRefs).putInt(rootRef);
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+            buffer.position(buffer.position() + align(name.length) - name.length);
+        }
+        buffer.asIntBuffer().put(writer.nodes.toArray()).put(writer.children.toArray());
+        return buffer.rewind();
+    }
+    
+    private static class Writer {
+        private final List<String> ruleNames = new ArrayList<>();
+        private final Map<String, Integer> ruleIndices = new HashMap<>();
+        private final Map<ParseNode, Integer> nodeIndices = new IdentityHashMap<>();
+        private final IntList nodes = new IntList();
+        private final IntList children = new IntList();
+        
+        int addNode(ParseNode node) {
+            if (node.isTerminal()) {
+                return -(node.getMatchLength() + 1);
+            }
+            Integer existing = nodeIndices.get(node);
+            if (existing != null) {
+                return existing;
+            }
+            
+            int index = nodes.length / 4;
+            nodeIndices.put(node, index);
+            if (node instanceof CharIterationNode charIteration) {
+                nodes.add(CHAR_ITERATION | (node.isOptional() ? OPTIONAL : 0), node.getMatchLength(),
+                    node.numChildren(), charIteration.getFirstChildOffset());
+                return index;
+            }
+            
+            int tag;
+            if (node.isIteration()) {
+                tag = ITERATION | (node.isOptional() ? OPTIONAL : 0);
+            } else {
+                Integer ruleIndex = ruleIndices.computeIfAbsent(node.ctorName(), name -> {
+                    ruleNames.add(name);
+                    return ruleNames.size() - 1;
+                });
+                tag = NONTERMINAL | (ruleIndex << RULE_SHIFT);
+            }
+            ParseNode[] nodeChildren = node.getChildren();
+            int[] childOffsets = node.getChildOffsets();
+            int firstChild = children.length / 2;
+            nodes.add(tag, node.getMatchLength(), nodeChildren.length, firstChild);
+            // Reserve the child references first, so that the children of a node are contiguous
+            children.grow(nodeChildren.length * 2);
+            for (int i = 0; i < nodeChildren.length; i++) {
+                int childRef = addNode(nodeChildren[i]);
+                children.set(2 * (firstChild + i), childRef);
+                children.set(2 * (firstChild + i) + 1, childOffsets[i]);
+            }
+            return index;
+        }
+    }
+    
+    private static class IntList {
+        private int[] values = new int[64];
+        private int length = 0;
+        
+        void add(int... newValues) {
+            grow(newValues.length);
+            System.arraycopy(newValues, 0, values, length - newValues.length, newValues.length);
+        }
+        
+        void grow(int count) {
+            if (length + count > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, length + count));
+            }
+            length += count;
+        }
+        
+        void set(int index, int value) {
+            values[index] = value;
+        }
+        
+        int[] toArray() {
+            return Arrays.copyOf(values, length);
+        }
+    }
+    
+    /**
+     * A node backed by a record of the buffer. Its children are created when first requested.
+     */
+    private class MappedNode extends ParseNode {
+        private final int record;
+        private final int tag;
+        private volatile ParseNode[] children;
+        private volatile int[] childOffsets;
+        
+        MappedNode(int record) {
+            super(buffer.getInt(record + 4));
+            this.record = record;
+            this.tag = buffer.getInt(record);
+        }
+        
+        private int kind() {
+            return tag & KIND_MASK;
+        }
+        
+        private int firstChild() {
+            return buffer.getInt(record + 12);
+        }
+        
+        @Override
+        public String ctorName() {
+            return switch (kind()) {
+                case NONTERMINAL -> ruleNames[tag >>> RULE_SHIFT];
+                default -> "_iter";
+            };
+        }
+        
+        @Override
+        public int numChildren() {
+            return buffer.getInt(record + 8);
+        }
+        
+        @Override
+        public ParseNode[] getChildren() {
+            ParseNode[] result = children;
+            if (result == null) {
+                result = new ParseNode[numChildren()];
+                if (kind() == CHAR_ITERATION) {
+                    Arrays.fill(result, TerminalNode.get(1));
+                } else {
+                    int position = childrenStart + firstChild() * CHILD_SIZE;
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = node(buffer.getInt(position + i * CHILD_SIZE));
+                    }
+                }
+                children = result;
+            }
+            return result;
+        }
+        
+        @Override
+        public int[] getChildOffsets() {
+            int[] result = childOffsets;
+            if (result == null) {
+                result = new int[numChildren()];
+                if (kind() == CHAR_ITERATION) {
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = firstChild() + i;
+                    }
+                } else {
+                    int position = childrenStart + firstChild() * CHILD_SIZE + Integer.BYTES;
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = buffer.getInt(position + i * CHILD_SIZE);
+                    }
+                }
+                childOffsets = result;
+            }
+            return result;
+        }
+        
+        @Override
+        public boolean isIteration() {
+            return kind() != NONTERMINAL;
+        }
+        
+        @Override
+        public boolean isNonterminal() {
+            return kind() == NONTERMINAL;
+        }
+        
+        @Override
+        public boolean isOptional() {
+            return (tag & OPTIONAL) != 0;
+        }
+        
+        @Override
+        public boolean isLexical() {
+            return isNonterminal() && Util.isLexical(ctorName());
+        }
+        
+        @Override
+        public boolean isSyntactic() {
+            return isNonterminal() && Util.isSyntactic(ctorName());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.stlutz.ohm;
+
+/**
+ * Thrown when matching is aborted because one of the limits set in {@link MatchOptions} was reached. The
+ * memo table of the matcher is discarded in that case.
+ */
+public class MatchAbortedException extends OhmException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public enum Reason {
+        STEP_BUDGET_EXHAUSTED, DEADLINE_EXCEEDED, CANCELLED, INTERRUPTED
+    }
+    
+    private final Reason reason;
+    private final long steps;
+    private final int rightmostExaminedPosition;
+    
+    public MatchAbortedException(Reason reason, long steps, int rightmostExaminedPosition) {
+        super("Matching aborted (%s) after %d steps at position %d".formatted(reason, steps,
+            rightmostExaminedPosition));
+        this.reason = reason;
+        this.steps = steps;
+        this.rightmostExaminedPosition = rightmostExaminedPosition;
+    }
+    
+    public Reason getReason() {
+        return reason;
+    }
+    
+    /**
+     * Returns the number of evaluation steps taken before matching was aborted.
+     */
+    public long getSteps() {
+        return steps;
+    }
+    
+    /**
+     * Returns the rightmost position in the input that had been examined before matching was aborted, as a
+     * measure of progress.
+     */
+    public int getRightmostExaminedPosition() {
+        return rightmostExaminedPosition;
+    }
+}
@@ -0,0 +1,193 @@
+package net.stlutz.ohm;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Options for matching an input, see {@link Matcher#match(String, MatchOptions)}. Instances are immutable,
+ * the {@code with...} methods return modified copies.
+ */
+public final class MatchOptions {
+    private static final MatchOptions DEFAULTS =
+        new MatchOptions(0, Long.MAX_VALUE, null, null, false, Long.MAX_VALUE, Set.of(), null);
+    
+    private final long stackSize;
+    private final long stepBudget;
+    private final Instant deadline;
+    private final BooleanSupplier cancellation;
+    private final boolean interruptible;
+    private final long memoryLimit;
+    private final Set<String> indexedRules;
+    private final NodeInterner nodeInterner;
+    
+    private MatchOptions(long stackSize, long stepBudget, Instant deadline, BooleanSupplier cancellation,
+                         boolean interruptible, long memoryLimit, Set<String> indexedRules,
+                         NodeInterner nodeInterner) {
+        super();
+        this.stackSize = stackSize;
+        this.stepBudget = stepBudget;
+        this.deadline = deadline;
+        this.cancellation = cancellation;
+        this.interruptible = interruptible;
+        this.memoryLimit = memoryLimit;
+        this.indexedRules = indexedRules;
+        this.nodeInterner = nodeInterner;
+    }
+    
+    /**
+     * Returns the default options, which evaluate on the calling thread without any limits.
+     */
+    public static MatchOptions defaults() {
+        return DEFAULTS;
+    }
+    
+    public long getStackSize() {
+        return stackSize;
+    }
+    
+    /**
+     * Returns options that evaluate on a dedicated thread with a stack of {@code stackSize} bytes, so the
+     * nesting depth of the input is limited by that instead of by the calling thread's stack. A stack size of
+     * 0 evaluates on the calling thread.
+     * <p>
+     * Each evaluation starts a new daemon thread, which ends with the evaluation, so no threads or stacks are
+     * retained between matches. The calling thread waits for it. If the calling thread is interrupted, the
+     * evaluation is aborted with a {@link MatchAbortedException}, like with {@link #withInterruptible(boolean)}.
+     *
+     * @throws IllegalArgumentException If {@code stackSize} is negative.
+     */
+    public MatchOptions withStackSize(long stackSize) {
+        if (stackSize < 0) {
+            throw new IllegalArgumentException("Stack size must not be negative");
+        }
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    public long getStepBudget() {
+        return stepBudget;
+    }
+    
+    /**
+     * Returns options that abort matching with a {@link MatchAbortedException} after {@code stepBudget}
+     * evaluation steps, i.e. evaluations of (sub-)expressions.
+     *
+     * @throws IllegalArgumentException If {@code stepBudget} is negative.
+     */
+    public MatchOptions withStepBudget(long stepBudget) {
+        if (stepBudget < 0) {
+            throw new IllegalArgumentException("Step budget must not be negative");
+        }
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    public Instant getDeadline() {
+        return deadline;
+    }
+    
+    /**
+     * Returns options that abort matching with a {@link MatchAbortedException} once {@code deadline} has
+     * passed, or never if it is {@code null}.
+     */
+    public MatchOptions withDeadline(Instant deadline) {
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    public BooleanSupplier getCancellation() {
+        return cancellation;
+    }
+    
+    /**
+     * Returns options that abort matching with a {@link MatchAbortedException} once {@code cancellation}
+     * returns {@code true}, e.g. {@code cancelled::get} for an {@code AtomicBoolean cancelled}. It is polled
+     * periodically from the matching thread.
+     */
+    public MatchOptions withCancellation(BooleanSupplier cancellation) {
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    public boolean isInterruptible() {
+        return interruptible;
+    }
+    
+    /**
+     * Returns options that abort matching with a {@link MatchAbortedException} if the matching thread is
+     * interrupted. When matching on a dedicated stack, interrupting the calling thread interrupts the
+     * matching thread.
+     */
+    public MatchOptions withInterruptible(boolean interruptible) {
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+    
+    /**
+     * Returns options that keep the memo table of the matcher below approximately {@code memoryLimit} bytes.
+     * When the limit is reached, records memoized at positions before the current one are forgotten, and if
+     * that is not enough, applications of rules that cannot be left-recursive are no longer memoized. Both
+     * trade time for memory, the match result is unaffected.
+     *
+     * @throws IllegalArgumentException If {@code memoryLimit} is negative.
+     * @see MatchResult#getStatistics()
+     */
+    public MatchOptions withMemoryLimit(long memoryLimit) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be negative");
+        }
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    public Set<String> getIndexedRules() {
+        return indexedRules;
+    }
+    
+    /**
+     * Returns options that index the nodes of the rules {@code ruleNames} while matching, so that
+     * {@link MatchResult#findAll(String)} and {@link MatchResult#findEnclosing(String, int)} can answer
+     * queries for them without traversing the CST.
+     */
+    public MatchOptions withIndexedRules(String... ruleNames) {
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            Set.copyOf(Arrays.asList(ruleNames)), nodeInterner);
+    }
+    
+    public NodeInterner getNodeInterner() {
+        return nodeInterner;
+    }
+    
+    /**
+     * Returns options that share structurally equal CST nodes through {@code nodeInterner}, or not if it is
+     * {@code null}. This reduces the memory retained by the CST of repetitive inputs, at the cost of hashing
+     * each constructed node.
+     *
+     * @see MatchStatistics#getSharedNodes()
+     */
+    public MatchOptions withNodeInterner(NodeInterner nodeInterner) {
+        return new MatchOptions(stackSize, stepBudget, deadline, cancellation, interruptible, memoryLimit,
+            indexedRules, nodeInterner);
+    }
+    
+    /**
+     * Returns whether any of the limits requires checks while evaluating.
+     */
+    boolean hasLimits() {
+        return stepBudget != Long.MAX_VALUE || deadline != null || cancellation != null || checksInterruption();
+    }
+    
+    /**
+     * Returns whether evaluating checks if the matching thread was interrupted. Dedicated stack threads are
+     * only interrupted when the calling thread is, so they always check.
+     */
+    boolean checksInterruption() {
+        return interruptible || stackSize > 0;
+    }
+}
@@ -2,23 +2,51 @@ package net.stlutz.ohm;
 
 import net.stlutz.ohm.pexprs.Apply;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MatchResult {
     private final Matcher matcher;
     private final String input;
     private final Apply startApplication;
     private final ParseNode cst;
     private final int cstOffset;
+    private final int rightmostExaminedPosition;
+    private final MatchStatistics statistics;
+    private final NodeIndex nodeIndex;
+    private LineIndex lineIndex;
     
+    /**
+     * Creates a result whose rightmost examined position is unknown (-1) and that has no statistics.
+     */
     public MatchResult(Matcher matcher, String input, Apply startApplication, ParseNode cst,
                        int cstOffset) {
+        this(matcher, input, startApplication, cst, cstOffset, -1, null);
+    }
+    
+    public MatchResult(Matcher matcher, String input, Apply startApplication, ParseNode cst,
+                       int cstOffset, int rightmostExaminedPosition, MatchStatistics statistics) {
+        this(matcher, input, startApplication, cst, cstOffset, rightmostExaminedPosition, statistics,
+            NodeIndex.EMPTY);
+    }
+    
+    MatchResult(Matcher matcher, String input, Apply startApplication, ParseNode cst, int cstOffset,
+                int rightmostExaminedPosition, MatchStatistics statistics, NodeIndex nodeIndex) {
         super();
         this.matcher = matcher;
         this.input = input;
         this.startApplication = startApplication;
         this.cst = cst;
         this.cstOffset = cstOffset;
+        this.rightmostExaminedPosition = rightmostExaminedPosition;
+        this.statistics = statistics;
+        this.nodeIndex = nodeIndex;
     }
     
+    /**
+     * Returns the matcher that produced this result, or {@code null} if it was taken from a
+     * {@link ParseCache}.
+     */
     public Matcher getMatcher() {
         return matcher;
     }
@@ -32,13 +60,62 @@ public class MatchResult {
     }
     
     public SourceInterval getSourceInterval() {
-        return new SourceInterval(input, cstOffset, input.length());
+        return new SourceInterval(input, cstOffset, input.length(), getLineIndex());
+    }
+    
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            // The matcher's input may have been edited since
+            lineIndex = matcher != null && matcher.getInput() == input
+                ? matcher.getLineIndex()
+                : new LineIndex(input);
+        }
+        return lineIndex;
     }
     
     public Node getRootNode() {
         return new NodeWrapper(cst, getSourceInterval());
     }
     
+    /**
+     * Returns the nodes of rule {@code ruleName} in input order, enclosing nodes before the nodes they
+     * contain. The rule must have been indexed, see {@link MatchOptions#withIndexedRules(String...)}.
+     */
+    public List<Node> findAll(String ruleName) {
+        NodeIndex.Entries entries = getIndexEntries(ruleName);
+        List<Node> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            result.add(indexedNode(entries, i));
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the innermost node of rule {@code ruleName} that contains the char at {@code offset}, or
+     * {@code null} if there is none. The rule must have been indexed, see
+     * {@link MatchOptions#withIndexedRules(String...)}.
+     */
+    public Node findEnclosing(String ruleName, int offset) {
+        NodeIndex.Entries entries = getIndexEntries(ruleName);
+        int index = entries.findEnclosing(offset);
+        return index < 0 ? null : indexedNode(entries, index);
+    }
+    
+    private NodeIndex.Entries getIndexEntries(String ruleName) {
+        NodeIndex.Entries entries = nodeIndex.get(ruleName);
+        if (entries == null) {
+            throw new OhmException("Rule '%s' was not indexed while matching".formatted(ruleName));
+        }
+        return entries;
+    }
+    
+    private Node indexedNode(NodeIndex.Entries entries, int index) {
+        int position = entries.getPosition(index);
+        ParseNode node = entries.getNode(index);
+        return new NodeWrapper(node,
+            new SourceInterval(input, position, position + node.getMatchLength(), getLineIndex()));
+    }
+    
     public ParseNode getCST() {
         return cst;
     }
@@ -47,6 +124,21 @@ public class MatchResult {
         return cstOffset;
     }
     
+    /**
+     * Returns the rightmost position in the input that had to be examined, see
+     * {@link RecognitionResult#getRightmostExaminedPosition()}, or -1 if it is unknown.
+     */
+    public int getRightmostExaminedPosition() {
+        return rightmostExaminedPosition;
+    }
+    
+    /**
+     * Returns the statistics of the match, or {@code null} if they are unknown.
+     */
+    public MatchStatistics getStatistics() {
+        return statistics;
+    }
+    
     public boolean succeeded() {
         return cst != null;
     }
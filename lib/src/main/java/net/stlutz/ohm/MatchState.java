@@ -6,8 +6,11 @@ import net.stlutz.ohm.pexprs.EvalContext;
 import net.stlutz.ohm.pexprs.PExpr;
 import net.stlutz.ohm.pexprs.Seq;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.Set;
 
 public class MatchState implements EvalContext {
     protected final Matcher matcher;
@@ -19,6 +22,7 @@ public class MatchState implements EvalContext {
     protected final InputStream inputStream;
     protected final PExpr startExpr;
     protected final Apply startApplication;
+    protected final Apply applySpaces;
     
     protected final Deque<ParseNode> bindings = new ArrayDeque<>();
     protected final Deque<Integer> bindingOffsets = new ArrayDeque<>();
@@ -26,24 +30,84 @@ public class MatchState implements EvalContext {
     protected final Deque<Integer> positionStack = new ArrayDeque<>();
     protected final Deque<Boolean> inLexifiedContextStack = new ArrayDeque<>();
     
+    protected boolean recognizing = false;
+    // while replaying, the memo table is already filled by recognizing the same input
+    protected boolean replaying = false;
+    // while recognizing, bindings are only counted
+    protected int numRecognizedBindings = 0;
+    // The position after the top-level start application, or -1 if it did not succeed
+    protected int startApplicationEnd = -1;
+    
+    // Limits other than the step budget are only checked every so many steps
+    private static final int LIMIT_CHECK_INTERVAL = 1024;
+    private static final Duration MAX_REMAINING = Duration.ofNanos(Long.MAX_VALUE);
+    protected final MatchOptions options;
+    protected final long deadlineNanos;
+    protected long steps = 0;
+    protected long nextLimitCheck;
+    
+    // Memory accounting, see MatchOptions#withMemoryLimit(long)
+    protected long positionInfos = 0;
+    protected long memoizedRecords = 0;
+    protected long memoizedNodes = 0;
+    protected long evictedRecords = 0;
+    protected long skippedMemoizations = 0;
+    protected long peakMemoBytes;
+    protected long sharedNodes = 0;
+    protected long sharedNodeBytes = 0;
+    // Positions before this one were already considered for eviction
+    protected int evictionCursor = 0;
+    
+    // See MatchOptions#withIndexedRules(String...), null if no rules are indexed
+    protected final NodeIndex.Builder nodeIndex;
+    
     protected static final Apply APPLY_SPACES = new Apply(ConstructedGrammar.BuiltInRules.getRule("spaces"));
     protected static final PExpr APPLY_SYNTACTIC_BODY = ConstructedGrammar.BuiltInRules.getRule("applySyntactic").getBody();
     
     public MatchState(Matcher matcher, Apply startApplication) {
+        this(matcher, startApplication, MatchOptions.defaults());
+    }
+    
+    public MatchState(Matcher matcher, Apply startApplication, MatchOptions options) {
         super();
         this.matcher = matcher;
         this.startApplication = startApplication;
         this.startExpr = getStartExpr(startApplication);
+        this.options = options;
+        peakMemoBytes = matcher.getMemoBytes();
+        
+        nextLimitCheck = options.hasLimits() ? 1 : Long.MAX_VALUE;
+        deadlineNanos = options.getDeadline() == null ? 0 : toDeadlineNanos(options.getDeadline());
         
         input = matcher.getInput();
         grammar = matcher.getGrammar();
         memoTable = matcher.getMemoTable();
+        applySpaces = matcher.getApplySpaces();
+        
+        nodeIndex = options.getIndexedRules().isEmpty() ? null : newNodeIndex(options.getIndexedRules());
         
-        inputStream = new InputStream(input);
+        inputStream = matcher.newInputStream();
         positionStack.addLast(0);
         inLexifiedContextStack.addLast(false);
     }
     
+    /**
+     * Returns the value of {@link System#nanoTime()} at {@code deadline}. Deadlines too far in the future
+     * for nanoseconds, like {@link Instant#MAX}, are saturated.
+     */
+    private static long toDeadlineNanos(Instant deadline) {
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        long remainingNanos;
+        if (remaining.isNegative()) {
+            remainingNanos = 0;
+        } else if (remaining.compareTo(MAX_REMAINING) >= 0) {
+            remainingNanos = Long.MAX_VALUE;
+        } else {
+            remainingNanos = remaining.toNanos();
+        }
+        return System.nanoTime() + remainingNanos;
+    }
+    
     @Override
     public InputStream getInputStream() {
         return inputStream;
@@ -54,6 +118,16 @@ public class MatchState implements EvalContext {
         return grammar.getRule(ruleName);
     }
     
+    private NodeIndex.Builder newNodeIndex(Set<String> ruleNames) {
+        for (String ruleName : ruleNames) {
+            if (!grammar.hasRule(ruleName)) {
+                throw new OhmException("Cannot index rule '%s': it is not a rule in grammar '%s'"
+                    .formatted(ruleName, grammar.getName()));
+            }
+        }
+        return new NodeIndex.Builder(ruleNames, matcher.getMemoBytes() > 0);
+    }
+    
     private PExpr getStartExpr(Apply startApplication) {
         return new Seq(new PExpr[]{startApplication, End.getInstance()});
     }
@@ -73,7 +147,6 @@ public class MatchState implements EvalContext {
         positionStack.addLast(inputStream.getPosition());
         applicationStack.addLast(application);
         inLexifiedContextStack.addLast(false);
-        positionInfo.enter(application);
     }
     
     @Override
@@ -81,7 +154,6 @@ public class MatchState implements EvalContext {
         int originalPosition = positionStack.removeLast();
         applicationStack.removeLast();
         inLexifiedContextStack.removeLast();
-        positionInfo.exit();
         
         if (nodeOrNull != null) {
             pushBinding(nodeOrNull, originalPosition);
@@ -103,7 +175,8 @@ public class MatchState implements EvalContext {
         return applicationStack.peekLast();
     }
     
-    boolean inSyntacticContext() {
+    @Override
+    public boolean inSyntacticContext() {
         Apply app = currentApplication();
         if (app == null) {
             // The top-level context is sytactic if the start application is
@@ -117,9 +190,43 @@ public class MatchState implements EvalContext {
     }
     
     int skipSpaces() {
-        eval(APPLY_SPACES);
-        popBinding();
-        return inputStream.getPosition();
+        int position = inputStream.getPosition();
+        int end = matcher.getCachedSpacesEnd(position);
+        int examinedEnd;
+        if (end >= 0) {
+            examinedEnd = matcher.getCachedSpacesExaminedEnd(position);
+        } else {
+            if (matcher.hasSimpleSpaces()) {
+                end = matcher.scanSpaces(position);
+                examinedEnd = matcher.getSpacesExaminedEnd(end);
+            } else {
+                int originalRightmostExaminedPosition = inputStream.getRightmostExaminedPosition();
+                inputStream.setRightmostExaminedPosition(position);
+                evalRecognizing(applySpaces);
+                end = inputStream.getPosition();
+                examinedEnd = inputStream.getRightmostExaminedPosition();
+                inputStream.setRightmostExaminedPosition(originalRightmostExaminedPosition);
+            }
+            matcher.cacheSpacesEnd(position, end, examinedEnd);
+        }
+        
+        inputStream.setPosition(end);
+        inputStream.setRightmostExaminedPosition(
+            Math.max(inputStream.getRightmostExaminedPosition(), examinedEnd));
+        return end;
+    }
+    
+    /**
+     * Evaluates {@code expr} without constructing nodes and discards its bindings.
+     */
+    private boolean evalRecognizing(PExpr expr) {
+        int originalNumBindings = numBindings();
+        boolean wasRecognizing = recognizing;
+        recognizing = true;
+        boolean succeeded = eval(expr);
+        truncateBindings(originalNumBindings);
+        recognizing = wasRecognizing;
+        return succeeded;
     }
     
     private int skipSpacesIfInSyntacticContext() {
@@ -127,13 +234,18 @@ public class MatchState implements EvalContext {
     }
     
     private int maybeSkipSpacesBefore(PExpr expr) {
-        if (expr.allowsSkippingPrecedingSpace() && !(expr.equals(APPLY_SPACES))) {
+        if (expr.allowsSkippingPrecedingSpace() && expr != applySpaces) {
             return skipSpacesIfInSyntacticContext();
         } else {
             return inputStream.getPosition();
         }
     }
     
+    @Override
+    public boolean isRecognizing() {
+        return recognizing;
+    }
+    
     @Override
     public ParseNode[] spliceLastBindings(int numBindings) {
         ParseNode[] result = new ParseNode[numBindings];
@@ -152,23 +264,36 @@ public class MatchState implements EvalContext {
         return result;
     }
     
+    @Override
+    public void discardLastBindings(int numBindings) {
+        truncateBindings(numBindings() - numBindings);
+    }
+    
     @Override
     public void pushBinding(ParseNode node, int originalPosition) {
+        if (recognizing) {
+            numRecognizedBindings++;
+            return;
+        }
         bindings.addLast(node);
         bindingOffsets.addLast(positionToOffset(originalPosition));
     }
     
     public void popBinding() {
+        if (numRecognizedBindings > 0) {
+            numRecognizedBindings--;
+            return;
+        }
         bindings.removeLast();
         bindingOffsets.removeLast();
     }
     
     public int numBindings() {
-        return bindings.size();
+        return bindings.size() + numRecognizedBindings;
     }
     
     void truncateBindings(int newLength) {
-        int bindingsToRemove = bindings.size() - newLength;
+        int bindingsToRemove = numBindings() - newLength;
         for (int i = 0; i < bindingsToRemove; i++) {
             popBinding();
         }
@@ -183,19 +308,106 @@ public class MatchState implements EvalContext {
         PositionInfo positionInfo = memoTable[position];
         if (positionInfo == null) {
             positionInfo = memoTable[position] = new PositionInfo();
+            positionInfos++;
+            addMemoBytes(PositionInfo.APPROXIMATE_SIZE);
         }
         return positionInfo;
     }
     
+    @Override
+    public void memoize(PositionInfo positionInfo, Apply application, MemoizationRecord memoRec) {
+        if (positionInfo.isEvicted() || (matcher.getMemoBytes() > options.getMemoryLimit()
+            && !makeRoomInMemo() && !application.mightBeLeftRecursive())) {
+            // Left recursion relies on its records being memoized, all others can be re-evaluated
+            skippedMemoizations++;
+            return;
+        }
+        int originalMemoBytes = positionInfo.getMemoBytes();
+        positionInfo.memoize(application.toMemoKey(), memoRec);
+        addMemoBytes(positionInfo.getMemoBytes() - originalMemoBytes);
+        memoizedRecords++;
+        if (memoRec.getValue() != null) {
+            memoizedNodes++;
+        }
+    }
+    
+    @Override
+    public void forget(PositionInfo positionInfo, Apply application) {
+        int originalMemoBytes = positionInfo.getMemoBytes();
+        positionInfo.forget(application.toMemoKey());
+        if (!positionInfo.isEvicted()) {
+            addMemoBytes(positionInfo.getMemoBytes() - originalMemoBytes);
+        }
+    }
+    
+    private void addMemoBytes(long delta) {
+        matcher.addMemoBytes(delta);
+        peakMemoBytes = Math.max(peakMemoBytes, matcher.getMemoBytes());
+    }
+    
+    /**
+     * Forgets records memoized before the current position, leftmost first, until the memo table is
+     * comfortably below the memory limit again.
+     *
+     * @return Whether the memo table is below the memory limit afterwards.
+     */
+    private boolean makeRoomInMemo() {
+        long targetBytes = options.getMemoryLimit() / 4 * 3;
+        int position = inputStream.getPosition();
+        while (evictionCursor < position && matcher.getMemoBytes() > targetBytes) {
+            evictedRecords += matcher.evictMemoAt(evictionCursor);
+            evictionCursor++;
+        }
+        return matcher.getMemoBytes() <= options.getMemoryLimit();
+    }
+    
+    public MatchStatistics getStatistics() {
+        return new MatchStatistics(steps, positionInfos, memoizedRecords, memoizedNodes, evictedRecords,
+            skippedMemoizations, matcher.getMemoBytes(), peakMemoBytes, sharedNodes, sharedNodeBytes);
+    }
+    
+    @Override
+    public int getApplicationId(Apply application) {
+        return matcher.getApplicationId(application);
+    }
+    
+    @Override
+    public ParseNode intern(ParseNode node) {
+        NodeInterner nodeInterner = options.getNodeInterner();
+        if (nodeInterner == null) {
+            return node;
+        }
+        ParseNode result = nodeInterner.intern(node);
+        if (result != node) {
+            sharedNodes++;
+            sharedNodeBytes += NodeInterner.approximateSize(node);
+        }
+        return result;
+    }
+    
+    @Override
+    public void nodeConstructed(int position, ParseNode node) {
+        if (nodeIndex != null) {
+            nodeIndex.add(position, node);
+        }
+    }
+    
     @Override
     public boolean hasNecessaryInfo(MemoizationRecord memoRec) {
-        return true;
+        // Records created while recognizing can't be used to build a CST. So while replaying, the bodies of
+        // successful applications are evaluated again, while failed ones are taken from the memo.
+        return recognizing || !memoRec.succeeded() || memoRec.getValue() != null;
     }
     
     @Override
     public boolean useMemoizedResult(int originalPosition, MemoizationRecord memoRec) {
-        if (memoRec.getValue() != null) {
+        inputStream.setRightmostExaminedPosition(Math.max(inputStream.getRightmostExaminedPosition(),
+            originalPosition + memoRec.getExaminedLength()));
+        if (memoRec.succeeded()) {
             inputStream.advance(memoRec.getMatchLength());
+            if (nodeIndex != null && memoRec.getValue() != null) {
+                nodeIndex.addReused(originalPosition, memoRec.getValue());
+            }
             pushBinding(memoRec.getValue(), originalPosition);
             return true;
         } else {
@@ -205,6 +417,9 @@ public class MatchState implements EvalContext {
     
     @Override
     public boolean eval(PExpr expr) {
+        if (++steps >= nextLimitCheck) {
+            checkLimits();
+        }
         int originalNumBindings = numBindings();
         int originalPosition = inputStream.getPosition();
         int memoPosition = maybeSkipSpacesBefore(expr);
@@ -212,7 +427,9 @@ public class MatchState implements EvalContext {
         boolean succeeded = expr.eval(this, inputStream, inputStream.getPosition());
         
         if (succeeded) {
-        
+            if (expr == startApplication && applicationStack.isEmpty()) {
+                startApplicationEnd = inputStream.getPosition();
+            }
         } else {
             inputStream.setPosition(originalPosition);
             truncateBindings(originalNumBindings);
@@ -227,14 +444,98 @@ public class MatchState implements EvalContext {
         return succeeded;
     }
     
+    private void checkLimits() {
+        if (steps > options.getStepBudget()) {
+            abort(MatchAbortedException.Reason.STEP_BUDGET_EXHAUSTED);
+        }
+        if (options.getDeadline() != null && System.nanoTime() - deadlineNanos >= 0) {
+            abort(MatchAbortedException.Reason.DEADLINE_EXCEEDED);
+        }
+        if (options.getCancellation() != null && options.getCancellation().getAsBoolean()) {
+            abort(MatchAbortedException.Reason.CANCELLED);
+        }
+        if (options.checksInterruption() && Thread.currentThread().isInterrupted()) {
+            abort(MatchAbortedException.Reason.INTERRUPTED);
+        }
+        nextLimitCheck = Math.min(steps + LIMIT_CHECK_INTERVAL, options.getStepBudget());
+    }
+    
+    private void abort(MatchAbortedException.Reason reason) {
+        throw new MatchAbortedException(reason, steps, inputStream.getRightmostExaminedPosition());
+    }
+    
+    /**
+     * Returns the number of evaluation steps taken so far.
+     */
+    public long getSteps() {
+        return steps;
+    }
+    
+    @Override
+    public boolean mightSucceed(PExpr expr) {
+        if (!replaying || recognizing) {
+            return true;
+        }
+        
+        int position = inputStream.getPosition();
+        if (inSyntacticContext()) {
+            // Skipping the spaces here might evaluate them, so only use them if they were skipped before
+            position = matcher.getCachedSpacesEnd(position);
+            if (position < 0) {
+                return true;
+            }
+        }
+        int codePoint = position < input.length() ? input.codePointAt(position) : -1;
+        return expr.mightStartWith(codePoint) && !isKnownToFail(expr, position);
+    }
+    
+    /**
+     * Returns whether the first term of {@code expr} is an application that is memoized to fail at
+     * {@code position}.
+     */
+    private boolean isKnownToFail(PExpr expr, int position) {
+        while (expr instanceof Seq seq && seq.getTerms().length > 0) {
+            expr = seq.getTerms()[0];
+        }
+        if (!(expr instanceof Apply app) || app.getArgs().length > 0 || memoTable[position] == null) {
+            return false;
+        }
+        MemoizationRecord memoRec = memoTable[position].remember(app.toMemoKey());
+        return memoRec != null && !memoRec.succeeded() && !memoRec.isLeftRecursion();
+    }
+    
     public void match() {
         eval(startExpr);
     }
     
+    /**
+     * Like {@link #match()}, but without constructing a CST.
+     */
+    public void recognize() {
+        recognizing = true;
+        eval(startExpr);
+    }
+    
+    /**
+     * Like {@link #match()}, but only constructs nodes for expressions known to succeed. Must only be used
+     * after successfully recognizing the input with the same matcher.
+     */
+    public void replay() {
+        replaying = true;
+        eval(startExpr);
+    }
+    
     public MatchResult getMatchResult() {
         ParseNode cst = bindings.peekFirst();
         int cstOffset = bindingOffsets.isEmpty() ? 0 : bindingOffsets.getFirst();
-        return new MatchResult(matcher, input, startApplication, cst, cstOffset);
+        return new MatchResult(matcher, input, startApplication, cst, cstOffset,
+            inputStream.getRightmostExaminedPosition(), getStatistics(),
+            nodeIndex == null ? NodeIndex.EMPTY : nodeIndex.build(cst, cstOffset));
+    }
+    
+    public RecognitionResult getRecognitionResult() {
+        return new RecognitionResult(matcher, input, startApplication, numBindings() > 0, startApplicationEnd,
+            inputStream.getRightmostExaminedPosition(), getStatistics());
     }
     
 }
@@ -0,0 +1,116 @@
+package net.stlutz.ohm;
+
+/**
+ * Counters collected while matching, e.g. for capacity planning. Sizes in bytes are rough estimates of what
+ * the memo table retains, not exact measurements.
+ */
+public class MatchStatistics {
+    private final long steps;
+    private final long positionInfos;
+    private final long memoizedRecords;
+    private final long memoizedNodes;
+    private final long evictedRecords;
+    private final long skippedMemoizations;
+    private final long memoBytes;
+    private final long peakMemoBytes;
+    private final long sharedNodes;
+    private final long sharedNodeBytes;
+    
+    public MatchStatistics(long steps, long positionInfos, long memoizedRecords, long memoizedNodes,
+                           long evictedRecords, long skippedMemoizations, long memoBytes, long peakMemoBytes) {
+        this(steps, positionInfos, memoizedRecords, memoizedNodes, evictedRecords, skippedMemoizations, memoBytes,
+            peakMemoBytes, 0, 0);
+    }
+    
+    public MatchStatistics(long steps, long positionInfos, long memoizedRecords, long memoizedNodes,
+                           long evictedRecords, long skippedMemoizations, long memoBytes, long peakMemoBytes,
+                           long sharedNodes, long sharedNodeBytes) {
+        super();
+        this.steps = steps;
+        this.positionInfos = positionInfos;
+        this.memoizedRecords = memoizedRecords;
+        this.memoizedNodes = memoizedNodes;
+        this.evictedRecords = evictedRecords;
+        this.skippedMemoizations = skippedMemoizations;
+        this.memoBytes = memoBytes;
+        this.peakMemoBytes = peakMemoBytes;
+        this.sharedNodes = sharedNodes;
+        this.sharedNodeBytes = sharedNodeBytes;
+    }
+    
+    /**
+     * Returns the number of evaluation steps, see {@link MatchOptions#withStepBudget(long)}.
+     */
+    public long getSteps() {
+        return steps;
+    }
+    
+    /**
+     * Returns the number of position infos added to the memo table.
+     */
+    public long getPositionInfos() {
+        return positionInfos;
+    }
+    
+    public long getMemoizedRecords() {
+        return memoizedRecords;
+    }
+    
+    /**
+     * Returns the number of CST nodes retained by memoized records.
+     */
+    public long getMemoizedNodes() {
+        return memoizedNodes;
+    }
+    
+    /**
+     * Returns the number of records forgotten to stay below the memory limit.
+     */
+    public long getEvictedRecords() {
+        return evictedRecords;
+    }
+    
+    /**
+     * Returns the number of applications that were not memoized to stay below the memory limit.
+     */
+    public long getSkippedMemoizations() {
+        return skippedMemoizations;
+    }
+    
+    /**
+     * Returns the approximate number of bytes retained by the matcher's memo table after matching.
+     */
+    public long getMemoBytes() {
+        return memoBytes;
+    }
+    
+    /**
+     * Returns the approximate maximum number of bytes retained by the matcher's memo table while matching.
+     */
+    public long getPeakMemoBytes() {
+        return peakMemoBytes;
+    }
+    
+    /**
+     * Returns the number of constructed nodes that were replaced by an equal node, see
+     * {@link MatchOptions#withNodeInterner(NodeInterner)}.
+     */
+    public long getSharedNodes() {
+        return sharedNodes;
+    }
+    
+    /**
+     * Returns the approximate number of bytes saved by sharing nodes, see {@link #getSharedNodes()}.
+     */
+    public long getSharedNodeBytes() {
+        return sharedNodeBytes;
+    }
+    
+    @Override
+    public String toString() {
+        return ("MatchStatistics[steps=%d, positionInfos=%d, memoizedRecords=%d, memoizedNodes=%d, "
+            + "evictedRecords=%d, skippedMemoizations=%d, memoBytes=%d, peakMemoBytes=%d, sharedNodes=%d, "
+            + "sharedNodeBytes=%d]").formatted(steps, positionInfos, memoizedRecords, memoizedNodes,
+            evictedRecords, skippedMemoizations, memoBytes, peakMemoBytes, sharedNodes, sharedNodeBytes);
+    }
+}
@@ -1,9 +1,35 @@
 package net.stlutz.ohm;
 
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.CharClass;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
 public class Matcher {
-    private final String input;
+    private static final AtomicInteger dedicatedStackThreadCount = new AtomicInteger();
+    
+    private String input;
     private final Grammar grammar;
-    private final PositionInfo[] memoTable;
+    private InputStream.Kind inputKind;
+    private PositionInfo[] memoTable;
+    private final Map<String, Integer> applicationIds = new HashMap<>();
+    // Approximate bytes retained by the position infos in the memo table, see PositionInfo#getMemoBytes()
+    private long memoBytes = 0;
+    private LineIndex lineIndex;
+    
+    // Caches for skipping spaces, indexed by position. Both hold the respective position + 1, so that 0
+    // means unknown.
+    private int[] spacesEnd;
+    private int[] spacesExaminedEnd;
+    /**
+     * This grammar's {@code space} rule if it is a character class, {@code null} otherwise.
+     */
+    private final CharClass spaceClass;
+    private final Apply applySpaces;
     
     // private int positionToRecordFailures;
     // private Map<String, ?> recordedFailures;
@@ -15,28 +41,402 @@ public class Matcher {
         
         this.grammar = grammar;
         this.input = input;
+        inputKind = InputStream.Kind.of(input);
         memoTable = new PositionInfo[input.length() + 1];
+        spaceClass = grammar != null && grammar.hasRule("space")
+            ? CharClass.of(grammar.getRule("space").getBody())
+            : null;
+        applySpaces = grammar != null && grammar.hasRule("spaces")
+            ? new Apply(grammar.getRule("spaces"))
+            : MatchState.APPLY_SPACES;
     }
     
     public String getInput() {
         return input;
     }
     
+    /**
+     * Replaces the whole input. Nothing memoized for the previous input is kept.
+     */
+    public Matcher setInput(String input) {
+        if (input == null) {
+            throw new OhmException("Cannot match against null string");
+        }
+        if (!input.equals(this.input)) {
+            replaceInputRange(0, this.input.length(), input);
+        }
+        return this;
+    }
+    
+    /**
+     * Replaces the chars from {@code startIndex} (inclusive) to {@code endIndex} (exclusive) of the input with
+     * {@code str}. Memoized results that did not examine the replaced range are kept (and moved if they are
+     * behind it), so that matching again only needs to re-evaluate what is affected by the edit.
+     */
+    public Matcher replaceInputRange(int startIndex, int endIndex, String str) {
+        if (startIndex < 0 || endIndex > input.length() || startIndex > endIndex) {
+            throw new OhmException("Invalid input range %d..%d".formatted(startIndex, endIndex));
+        }
+        if (str == null) {
+            throw new OhmException("Cannot match against null string");
+        }
+        
+        String previousInput = input;
+        input = previousInput.substring(0, startIndex) + str + previousInput.substring(endIndex);
+        InputStream.Kind insertedKind = InputStream.Kind.of(str);
+        if (insertedKind.compareTo(inputKind) > 0) {
+            inputKind = insertedKind;
+        }
+        lineIndex = null;
+        
+        int shift = str.length() - (endIndex - startIndex);
+        PositionInfo[] previousMemoTable = memoTable;
+        memoTable = new PositionInfo[input.length() + 1];
+        System.arraycopy(previousMemoTable, 0, memoTable, 0, startIndex);
+        System.arraycopy(previousMemoTable, endIndex, memoTable, endIndex + shift,
+            previousMemoTable.length - endIndex);
+        for (int position = 0; position < startIndex; position++) {
+            PositionInfo positionInfo = memoTable[position];
+            if (positionInfo != null) {
+                positionInfo.clearObsoleteEntries(position, startIndex);
+            }
+        }
+        memoBytes = 0;
+        for (PositionInfo positionInfo : memoTable) {
+            if (positionInfo != null) {
+                memoBytes += PositionInfo.APPROXIMATE_SIZE + positionInfo.getMemoBytes();
+            }
+        }
+        
+        if (spacesEnd != null) {
+            int[] previousSpacesEnd = spacesEnd;
+            int[] previousSpacesExaminedEnd = spacesExaminedEnd;
+            spacesEnd = new int[input.length() + 1];
+            spacesExaminedEnd = new int[input.length() + 1];
+            for (int position = 0; position < startIndex; position++) {
+                // Same criterion as for memo records, see PositionInfo#clearObsoleteEntries
+                if (previousSpacesExaminedEnd[position] - 1 < startIndex) {
+                    spacesEnd[position] = previousSpacesEnd[position];
+                    spacesExaminedEnd[position] = previousSpacesExaminedEnd[position];
+                }
+            }
+            for (int position = endIndex; position < previousSpacesEnd.length; position++) {
+                if (previousSpacesEnd[position] != 0) {
+                    spacesEnd[position + shift] = previousSpacesEnd[position] + shift;
+                    spacesExaminedEnd[position + shift] = previousSpacesExaminedEnd[position] + shift;
+                }
+            }
+        }
+        return this;
+    }
+    
     public Grammar getGrammar() {
         return grammar;
     }
     
+    /**
+     * Returns a new input stream over the input, specialized for the kind of characters it contains.
+     */
+    public InputStream newInputStream() {
+        return InputStream.create(input, inputKind);
+    }
+    
+    /**
+     * Returns the line index of the input. It is shared by all match results of this matcher and their
+     * source intervals.
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = new LineIndex(input);
+        }
+        return lineIndex;
+    }
+    
+    /**
+     * Returns whether spaces can be skipped without evaluating the {@code space} rule.
+     */
+    boolean hasSimpleSpaces() {
+        return spaceClass != null;
+    }
+    
+    /**
+     * Skips a (possibly empty) run of characters matched by this grammar's {@code space} rule, which must be
+     * a simple character class.
+     *
+     * @return The position after the run.
+     */
+    int scanSpaces(int position) {
+        int length = input.length();
+        while (position < length) {
+            int codePoint = input.codePointAt(position);
+            if (!spaceClass.matches(codePoint)) {
+                break;
+            }
+            position += Character.charCount(codePoint);
+        }
+        return position;
+    }
+    
+    /**
+     * Returns the position up to which skipping spaces that end at {@code end} examines the input.
+     */
+    int getSpacesExaminedEnd(int end) {
+        int codePoint = end < input.length() ? input.codePointAt(end) : -1;
+        return end + spaceClass.getMismatchExaminedLength(codePoint);
+    }
+    
+    /**
+     * Returns the application of this grammar's {@code spaces} rule.
+     */
+    Apply getApplySpaces() {
+        return applySpaces;
+    }
+    
+    /**
+     * Returns the position after the spaces starting at {@code position}, or -1 if unknown.
+     */
+    int getCachedSpacesEnd(int position) {
+        return spacesEnd == null ? -1 : spacesEnd[position] - 1;
+    }
+    
+    int getCachedSpacesExaminedEnd(int position) {
+        return spacesExaminedEnd[position] - 1;
+    }
+    
+    void cacheSpacesEnd(int position, int end, int examinedEnd) {
+        if (spacesEnd == null) {
+            spacesEnd = new int[input.length() + 1];
+            spacesExaminedEnd = new int[input.length() + 1];
+        }
+        spacesEnd[position] = end + 1;
+        spacesExaminedEnd[position] = examinedEnd + 1;
+    }
+    
+    /**
+     * Returns a small integer identifying {@code application} (including its arguments) in the memo table
+     * of this matcher. Used to track the applications involved in left recursion.
+     */
+    public int getApplicationId(Apply application) {
+        Integer id = applicationIds.get(application.toMemoKey());
+        if (id == null) {
+            id = applicationIds.size();
+            applicationIds.put(application.toMemoKey(), id);
+        }
+        return id;
+    }
+    
+    /**
+     * Returns the approximate number of bytes retained by the memo table.
+     */
+    public long getMemoBytes() {
+        return memoBytes;
+    }
+    
+    void addMemoBytes(long delta) {
+        memoBytes += delta;
+    }
+    
+    /**
+     * Forgets the position info at {@code position} with its records, unless it is in use.
+     *
+     * @return The number of forgotten records.
+     */
+    int evictMemoAt(int position) {
+        PositionInfo positionInfo = memoTable[position];
+        if (positionInfo == null || positionInfo.isInUse()) {
+            return 0;
+        }
+        memoTable[position] = null;
+        positionInfo.markEvicted();
+        memoBytes -= PositionInfo.APPROXIMATE_SIZE + positionInfo.getMemoBytes();
+        return positionInfo.getMemoSize();
+    }
+    
     public PositionInfo[] getMemoTable() {
         return memoTable;
     }
     
     public MatchResult match(String startApplication) {
+        return match(startApplication, MatchOptions.defaults());
+    }
+    
+    /**
+     * Like {@link #match(String)}, but with the given options.
+     *
+     * @throws MatchAbortedException If one of the limits set in {@code options} was reached.
+     */
+    public MatchResult match(String startApplication, MatchOptions options) {
+        if (startApplication == null) {
+            throw new OhmException("Start application cannot be null");
+        }
+        
+        MatchState matchState = new MatchState(this, grammar.parseApplication(startApplication), options);
+        evaluate(matchState::match, options);
+        return matchState.getMatchResult();
+    }
+    
+    /**
+     * Like {@link #match(String)}, but only determines whether the input matches. No CST is constructed,
+     * which makes this considerably cheaper for validation-only use cases.
+     */
+    public RecognitionResult recognize(String startApplication) {
+        return recognize(startApplication, MatchOptions.defaults());
+    }
+    
+    public RecognitionResult recognize(String startApplication, MatchOptions options) {
+        if (startApplication == null) {
+            throw new OhmException("Start application cannot be null");
+        }
+        
+        MatchState matchState = new MatchState(this, grammar.parseApplication(startApplication), options);
+        evaluate(matchState::recognize, options);
+        return matchState.getRecognitionResult();
+    }
+    
+    /**
+     * Like {@link #recognize(String)}, but reports the CST of the successful derivation to {@code listener}
+     * while matching, without keeping it. See {@link ParseListener} for when events are delivered.
+     */
+    public RecognitionResult matchEvents(String startApplication, ParseListener listener) {
+        return matchEvents(startApplication, listener, MatchOptions.defaults());
+    }
+    
+    public RecognitionResult matchEvents(String startApplication, ParseListener listener, MatchOptions options) {
+        if (startApplication == null) {
+            throw new OhmException("Start application cannot be null");
+        }
+        if (listener == null) {
+            throw new OhmException("Listener cannot be null");
+        }
+        
+        MatchState matchState = new StreamingMatchState(this, grammar.parseApplication(startApplication),
+            options, listener);
+        evaluate(matchState::match, options);
+        return matchState.getRecognitionResult();
+    }
+    
+    /**
+     * Like {@link #recognize(String)}, but hands each node of rule {@code recordRule} to {@code consumer} as soon
+     * as it is final, e.g. when the step of an iteration {@code File = Record*} that matched it succeeded.
+     * Afterwards, the node is dropped from the match state and its memoized results are evicted, so that
+     * memory is bounded by the size of a record rather than the input. Nodes of {@code recordRule} within a
+     * record are not handed over separately.
+     * <p>
+     * If the match fails, the records handed over so far were matched by a prefix of the input.
+     *
+     * @see ParseListener
+     */
+    public RecognitionResult matchStream(String startApplication, String recordRule, Consumer<Node> consumer) {
+        return matchStream(startApplication, recordRule, consumer, MatchOptions.defaults());
+    }
+    
+    public RecognitionResult matchStream(String startApplication, String recordRule, Consumer<Node> consumer,
+                                         MatchOptions options) {
         if (startApplication == null) {
             throw new OhmException("Start application cannot be null");
         }
+        if (consumer == null) {
+            throw new OhmException("Consumer cannot be null");
+        }
+        if (recordRule == null || !grammar.hasRule(recordRule)) {
+            throw new OhmException("Invalid record rule: '%s' is not a rule in grammar '%s'"
+                .formatted(recordRule, grammar.getName()));
+        }
+        
+        MatchState matchState = new RecordStreamingMatchState(this, grammar.parseApplication(startApplication),
+            options, recordRule, consumer);
+        evaluate(matchState::match, options);
+        return matchState.getRecognitionResult();
+    }
+    
+    /**
+     * Like {@link #match(String)}, but matches in two passes. The first pass only recognizes the input and
+     * memoizes match lengths. The second pass evaluates the successful applications again to construct the
+     * CST, but takes failed applications from the memo and skips terms whose first char cannot match, so
+     * fewer nodes are constructed for alternatives that are backtracked.
+     * <p>
+     * Preferable for grammars that backtrack a lot.
+     */
+    public MatchResult matchTwoPhase(String startApplication) {
+        return matchTwoPhase(startApplication, MatchOptions.defaults());
+    }
+    
+    public MatchResult matchTwoPhase(String startApplication, MatchOptions options) {
+        if (startApplication == null) {
+            throw new OhmException("Start application cannot be null");
+        }
+        
+        Apply app = grammar.parseApplication(startApplication);
+        MatchState recognizer = new MatchState(this, app, options);
+        evaluate(recognizer::recognize, options);
+        if (recognizer.getRecognitionResult().failed()) {
+            return recognizer.getMatchResult();
+        }
         
-        MatchState matchState = new MatchState(this, grammar.parseApplication(startApplication));
-        matchState.match();
+        MatchState matchState = new MatchState(this, app, options);
+        evaluate(matchState::replay, options);
         return matchState.getMatchResult();
     }
+    
+    private void evaluate(Runnable evaluation, MatchOptions options) {
+        try {
+            if (options.getStackSize() > 0) {
+                evaluateOnDedicatedStack(evaluation, options.getStackSize());
+            } else {
+                evaluation.run();
+            }
+        } catch (MatchAbortedException e) {
+            // The aborted evaluation may have left applications active in the memo table
+            discardMemo();
+            throw e;
+        } catch (StackOverflowError e) {
+            discardMemo();
+            throw new OhmException(
+                "Input is nested too deeply to be matched, consider matching with a larger stack size", e);
+        }
+    }
+    
+    private static void evaluateOnDedicatedStack(Runnable evaluation, long stackSize) {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                evaluation.run();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "ohm-matcher-" + dedicatedStackThreadCount.incrementAndGet(), stackSize);
+        thread.setDaemon(true);
+        thread.start();
+        
+        // The evaluation uses this matcher's state, so it must have stopped before returning in any case
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                // Aborts the evaluation at its next limit check, see MatchOptions#checksInterruption()
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        
+        if (failure[0] instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        } else if (failure[0] instanceof Error error) {
+            throw error;
+        } else if (failure[0] != null) {
+            throw new OhmException(failure[0]);
+        }
+    }
+    
+    private void discardMemo() {
+        Arrays.fill(memoTable, null);
+        memoBytes = 0;
+        spacesEnd = null;
+        spacesExaminedEnd = null;
+    }
 }
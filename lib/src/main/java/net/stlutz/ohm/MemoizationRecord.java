@@ -2,19 +2,21 @@ package net.stlutz.ohm;
 
 import net.stlutz.ohm.pexprs.Apply;
 
-import java.util.function.Predicate;
+import java.util.BitSet;
 
 public class MemoizationRecord {
-    private int matchLength = 0;
+    private int matchLength = -1;
     private int examinedLength = 0;
     private ParseNode value = null;
     private int rightmostFailureOffset = -1;
+    private int approximateSize = 0;
     
     private boolean isLeftRecursion = false;
     private Apply headApplication;
+    private int headApplicationId = -1;
+    private int firstInvolvedIndex;
+    private BitSet involvedApplications;
     private MemoizationRecord nextLeftRecursion;
-    private Runnable updateInvolvedApplicationMemoKeys;
-    private Predicate<String> isInvolved;
     
     public MemoizationRecord() {
         super();
@@ -28,6 +30,14 @@ public class MemoizationRecord {
         this.matchLength = matchLength;
     }
     
+    /**
+     * Returns whether the memoized application succeeded. Records created while recognizing have no value,
+     * even if they succeeded.
+     */
+    public boolean succeeded() {
+        return matchLength >= 0;
+    }
+    
     public int getExaminedLength() {
         return examinedLength;
     }
@@ -52,20 +62,45 @@ public class MemoizationRecord {
         this.rightmostFailureOffset = rightmostFailureOffset;
     }
     
-    public boolean isInvolved(String memoKey) {
-        return isInvolved.test(memoKey);
+    /**
+     * Returns whether the application with the given ID is involved in this left recursion.
+     *
+     * @see Matcher#getApplicationId(Apply)
+     */
+    public boolean isInvolved(int applicationId) {
+        return involvedApplications.get(applicationId);
+    }
+    
+    public BitSet getInvolvedApplications() {
+        return involvedApplications;
+    }
+    
+    public void setInvolvedApplications(BitSet involvedApplications) {
+        this.involvedApplications = involvedApplications;
     }
     
-    public void setIsInvolved(Predicate<String> isInvolved) {
-        this.isInvolved = isInvolved;
+    /**
+     * Returns the index on the application stack of the head's position at which the applications
+     * involved in this left recursion start.
+     */
+    public int getFirstInvolvedIndex() {
+        return firstInvolvedIndex;
     }
     
-    public void updateInvolvedApplicationMemoKeys() {
-        updateInvolvedApplicationMemoKeys.run();
+    public void setFirstInvolvedIndex(int firstInvolvedIndex) {
+        this.firstInvolvedIndex = firstInvolvedIndex;
     }
     
-    public void setUpdateInvolvedApplicationMemoKeys(Runnable updateInvolvedApplicationMemoKeys) {
-        this.updateInvolvedApplicationMemoKeys = updateInvolvedApplicationMemoKeys;
+    /**
+     * Returns the approximate number of bytes this record (including its value) was accounted with when it
+     * was last memoized.
+     */
+    public int getApproximateSize() {
+        return approximateSize;
+    }
+    
+    public void setApproximateSize(int approximateSize) {
+        this.approximateSize = approximateSize;
     }
     
     public boolean isLeftRecursion() {
@@ -84,6 +119,14 @@ public class MemoizationRecord {
         this.headApplication = headApplication;
     }
     
+    public int getHeadApplicationId() {
+        return headApplicationId;
+    }
+    
+    public void setHeadApplicationId(int headApplicationId) {
+        this.headApplicationId = headApplicationId;
+    }
+    
     public MemoizationRecord getNextLeftRecursion() {
         return nextLeftRecursion;
     }
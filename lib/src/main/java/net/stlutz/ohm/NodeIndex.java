@@ -0,0 +1,274 @@
+package net.stlutz.ohm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The nodes of selected rules in a CST, sorted by position, see {@link MatchOptions#withIndexedRules(String...)}.
+ * It is built while matching from the nodes constructed by applications, including the ones inlined into
+ * character classes, so queries do not need to traverse the CST.
+ */
+final class NodeIndex {
+    static final NodeIndex EMPTY = new NodeIndex(Map.of());
+    
+    private final Map<String, Entries> entriesByRule;
+    
+    private NodeIndex(Map<String, Entries> entriesByRule) {
+        super();
+        this.entriesByRule = entriesByRule;
+    }
+    
+    /**
+     * Returns the entries of rule {@code ruleName}, or {@code null} if it was not indexed.
+     */
+    Entries get(String ruleName) {
+        return entriesByRule.get(ruleName);
+    }
+    
+    /**
+     * The nodes of one rule, ordered by start position and, for equal start positions, outer before inner.
+     */
+    static final class Entries {
+        private static final Entries NONE = new Entries(new int[0], new ParseNode[0]);
+        
+        private final int[] positions;
+        private final ParseNode[] nodes;
+        // Index of the innermost enclosing entry, or -1
+        private final int[] parents;
+        
+        private Entries(int[] positions, ParseNode[] nodes) {
+            super();
+            this.positions = positions;
+            this.nodes = nodes;
+            this.parents = new int[nodes.length];
+            
+            int[] stack = new int[nodes.length];
+            int top = -1;
+            for (int i = 0; i < nodes.length; i++) {
+                // Entries never overlap partially, so an entry starting inside the top one is contained in it
+                while (top >= 0 && end(i) > end(stack[top])) {
+                    top--;
+                }
+                parents[i] = top >= 0 ? stack[top] : -1;
+                stack[++top] = i;
+            }
+        }
+        
+        int size() {
+            return nodes.length;
+        }
+        
+        int getPosition(int index) {
+            return positions[index];
+        }
+        
+        ParseNode getNode(int index) {
+            return nodes[index];
+        }
+        
+        private int end(int index) {
+            return positions[index] + nodes[index].getMatchLength();
+        }
+        
+        /**
+         * Returns the index of the innermost entry that contains the char at {@code position}, or -1.
+         */
+        int findEnclosing(int position) {
+            // The last entry starting at or before position, all entries containing position enclose it
+            int low = 0;
+            int high = positions.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (positions[middle] <= position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            int index = low - 1;
+            while (index >= 0 && position >= end(index)) {
+                index = parents[index];
+            }
+            return index;
+        }
+    }
+    
+    /**
+     * Collects the nodes of the indexed rules while matching. Some of them may not be part of the final CST
+     * because the matcher backtracked over them, they are dropped when building the index.
+     */
+    static final class Builder {
+        private final Set<String> ruleNames;
+        private final Map<String, Candidates> candidates = new HashMap<>();
+        // Only needed if nodes memoized by earlier matches can be reused, see #addReused
+        private final Set<Occurrence> constructedNodes;
+        
+        /**
+         * @param hasMemoizedNodes Whether the memo table contains nodes of earlier matches, whose descendants
+         *                         are not constructed again.
+         */
+        Builder(Set<String> ruleNames, boolean hasMemoizedNodes) {
+            super();
+            this.ruleNames = ruleNames;
+            this.constructedNodes = hasMemoizedNodes ? new HashSet<>() : null;
+        }
+        
+        void add(int position, ParseNode node) {
+            if (constructedNodes != null) {
+                constructedNodes.add(new Occurrence(position, node));
+            }
+            if (ruleNames.contains(node.ctorName())) {
+                candidates.computeIfAbsent(node.ctorName(), name -> new Candidates()).add(position, node);
+            }
+        }
+        
+        /**
+         * Adds the memoized {@code node} used at {@code position} and its descendants if it was constructed by
+         * an earlier match.
+         */
+        void addReused(int position, ParseNode node) {
+            if (constructedNodes == null || constructedNodes.contains(new Occurrence(position, node))) {
+                return;
+            }
+            add(position, node);
+            addDescendants(node.getChildren(), node.getChildOffsets(), position);
+        }
+        
+        private void addDescendants(ParseNode[] children, int[] offsets, int basePosition) {
+            for (int i = 0; i < children.length; i++) {
+                ParseNode child = children[i];
+                if (child.isNonterminal()) {
+                    addReused(basePosition + offsets[i], child);
+                } else if (child.isIteration() && !(child instanceof CharIterationNode)) {
+                    // Children of iteration nodes are relative to the same base as the iteration node
+                    addDescendants(child.getChildren(), child.getChildOffsets(), basePosition);
+                }
+            }
+        }
+        
+        /**
+         * Builds the index of the CST {@code root} at {@code rootPosition}, or an index without any nodes if
+         * {@code root} is {@code null}.
+         */
+        NodeIndex build(ParseNode root, int rootPosition) {
+            Map<String, Entries> entriesByRule = new HashMap<>();
+            for (String ruleName : ruleNames) {
+                Candidates ruleCandidates = candidates.get(ruleName);
+                entriesByRule.put(ruleName, root == null || ruleCandidates == null
+                    ? Entries.NONE
+                    : ruleCandidates.toEntries(root, rootPosition));
+            }
+            return new NodeIndex(entriesByRule);
+        }
+    }
+    
+    private static class Candidates {
+        private int[] positions = new int[16];
+        private ParseNode[] nodes = new ParseNode[16];
+        private int size = 0;
+        
+        void add(int position, ParseNode node) {
+            if (size == nodes.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            positions[size] = position;
+            nodes[size] = node;
+            size++;
+        }
+        
+        Entries toEntries(ParseNode root, int rootPosition) {
+            Integer[] order = new Integer[size];
+            int numEntries = 0;
+            // Shared nodes (see NodeInterner) can be constructed several times at the same position
+            Set<Occurrence> seen = new HashSet<>();
+            for (int i = 0; i < size; i++) {
+                if (seen.add(new Occurrence(positions[i], nodes[i]))
+                    && contains(root, rootPosition, nodes[i], positions[i])) {
+                    order[numEntries++] = i;
+                }
+            }
+            Arrays.sort(order, 0, numEntries, (a, b) -> positions[a] != positions[b]
+                ? Integer.compare(positions[a], positions[b])
+                : Integer.compare(nodes[b].getMatchLength(), nodes[a].getMatchLength()));
+            
+            int[] entryPositions = new int[numEntries];
+            ParseNode[] entryNodes = new ParseNode[numEntries];
+            for (int i = 0; i < numEntries; i++) {
+                entryPositions[i] = positions[order[i]];
+                entryNodes[i] = nodes[order[i]];
+            }
+            return new Entries(entryPositions, entryNodes);
+        }
+    }
+    
+    /**
+     * A node at a position. Nodes are compared by identity, since equal nodes may be shared.
+     */
+    private static final class Occurrence {
+        private final int position;
+        private final ParseNode node;
+        
+        Occurrence(int position, ParseNode node) {
+            super();
+            this.position = position;
+            this.node = node;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Occurrence other && position == other.position && node == other.node;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * position + System.identityHashCode(node);
+        }
+    }
+    
+    /**
+     * Returns whether {@code target} at {@code targetPosition} is {@code node} at {@code position} or one of
+     * its descendants. Only descends into children that cover the target.
+     */
+    private static boolean contains(ParseNode node, int position, ParseNode target, int targetPosition) {
+        if (node == target) {
+            return position == targetPosition;
+        }
+        return childrenContain(node.getChildren(), node.getChildOffsets(), position, target, targetPosition);
+    }
+    
+    private static boolean childrenContain(ParseNode[] children, int[] offsets, int basePosition,
+                                           ParseNode target, int targetPosition) {
+        int targetEnd = targetPosition + target.getMatchLength();
+        // Children are in input order, so the ones covering the target precede the first child starting after it
+        int index = Arrays.binarySearch(offsets, targetPosition - basePosition);
+        if (index < 0) {
+            index = -index - 2;
+        } else {
+            while (index + 1 < offsets.length && offsets[index + 1] == offsets[index]) {
+                index++;
+            }
+        }
+        for (; index >= 0; index--) {
+            ParseNode child = children[index];
+            int childPosition = basePosition + offsets[index];
+            if (childPosition + child.getMatchLength() < targetEnd) {
+                return false;
+            }
+            if (child.isNonterminal()) {
+                if (contains(child, childPosition, target, targetPosition)) {
+                    return true;
+                }
+            } else if (child.isIteration() && !(child instanceof CharIterationNode)) {
+                if (childrenContain(child.getChildren(), child.getChildOffsets(), basePosition, target,
+                    targetPosition)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,142 @@
+package net.stlutz.ohm;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shares structurally equal CST nodes, see {@link MatchOptions#withNodeInterner(NodeInterner)}. Nodes do not
+ * know their position and child offsets are relative, so the same identifier or literal occurring many times
+ * in an input can be represented by a single node.
+ * <p>
+ * Nodes are compared shallowly, by rule name, match length, child offsets and the identity of their
+ * children, which are interned before their parents. The table has a fixed number of slots, each holding
+ * the last node interned into it, so it never grows and may be shared by concurrent matches.
+ */
+public final class NodeInterner {
+    private final AtomicReferenceArray<ParseNode> slots;
+    private final int mask;
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder sharedNodes = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     * @throws IllegalArgumentException If {@code capacity} is not positive or too large.
+     */
+    public NodeInterner(int capacity) {
+        super();
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        slots = new AtomicReferenceArray<>(Math.max(size, 1));
+        mask = slots.length() - 1;
+    }
+    
+    public int getCapacity() {
+        return slots.length();
+    }
+    
+    /**
+     * Returns a node equal to {@code node} that was interned before, or {@code node} itself.
+     */
+    public ParseNode intern(ParseNode node) {
+        lookups.increment();
+        int index = hash(node) & mask;
+        ParseNode existing = slots.get(index);
+        if (existing != null && shallowEquals(existing, node)) {
+            sharedNodes.increment();
+            savedBytes.add(approximateSize(node));
+            return existing;
+        }
+        slots.set(index, node);
+        return node;
+    }
+    
+    /**
+     * Returns the number of nodes passed to {@link #intern(ParseNode)}.
+     */
+    public long getLookups() {
+        return lookups.sum();
+    }
+    
+    /**
+     * Returns the number of nodes that were replaced by an equal node interned before.
+     */
+    public long getSharedNodes() {
+        return sharedNodes.sum();
+    }
+    
+    /**
+     * Returns the approximate number of bytes of the nodes that were replaced by an equal node.
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+    
+    /**
+     * Forgets all interned nodes. The counters are kept.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "NodeInterner[capacity=%d, lookups=%d, sharedNodes=%d, savedBytes=%d]".formatted(getCapacity(),
+            getLookups(), getSharedNodes(), getSavedBytes());
+    }
+    
+    /**
+     * Returns the approximate number of bytes retained by {@code node} itself, without its children.
+     */
+    static long approximateSize(ParseNode node) {
+        if (node instanceof CharIterationNode) {
+            return 32;
+        }
+        // Object header and fields, plus the arrays of children and child offsets
+        return 32 + 2 * (16 + 4L * node.numChildren());
+    }
+    
+    private static int hash(ParseNode node) {
+        int result = node.ctorName().hashCode();
+        result = 31 * result + node.getMatchLength();
+        result = 31 * result + (node.isOptional() ? 1 : 0);
+        if (node instanceof CharIterationNode charIteration) {
+            return spread(31 * result + charIteration.getFirstChildOffset());
+        }
+        for (ParseNode child : node.getChildren()) {
+            result = 31 * result + System.identityHashCode(child);
+        }
+        result = 31 * result + Arrays.hashCode(node.getChildOffsets());
+        return spread(result);
+    }
+    
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+    
+    private static boolean shallowEquals(ParseNode a, ParseNode b) {
+        if (a.getClass() != b.getClass() || a.getMatchLength() != b.getMatchLength()
+            || a.isOptional() != b.isOptional() || !a.ctorName().equals(b.ctorName())) {
+            return false;
+        }
+        if (a instanceof CharIterationNode charIteration) {
+            return charIteration.getFirstChildOffset() == ((CharIterationNode) b).getFirstChildOffset();
+        }
+        ParseNode[] aChildren = a.getChildren();
+        ParseNode[] bChildren = b.getChildren();
+        if (aChildren.length != bChildren.length) {
+            return false;
+        }
+        for (int i = 0; i < aChildren.length; i++) {
+            if (aChildren[i] != bChildren[i]) {
+                return false;
+            }
+        }
+        return Arrays.equals(a.getChildOffsets(), b.getChildOffsets());
+    }
+}
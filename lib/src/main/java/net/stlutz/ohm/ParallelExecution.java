@@ -0,0 +1,80 @@
+package net.stlutz.ohm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * Shared state of a parallel execution of a semantics, see {@link SemanticsBlueprint#onParallel}.
+ */
+final class ParallelExecution<T extends Semantics> {
+    private final SemanticsBlueprint<T> blueprint;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final Node rootNode;
+    
+    ParallelExecution(SemanticsBlueprint<T> blueprint, ForkJoinPool pool, int threshold, Node rootNode) {
+        super();
+        this.blueprint = blueprint;
+        this.pool = pool;
+        this.threshold = threshold;
+        this.rootNode = rootNode;
+    }
+    
+    int getThreshold() {
+        return threshold;
+    }
+    
+    T newSemantics() {
+        T semantics = blueprint.instantiate();
+        semantics.rootNode = rootNode;
+        semantics.parallelExecution = this;
+        return semantics;
+    }
+    
+    <R> R reduce(Node[] children, R identity, BinaryOperator<R> reducer) {
+        ReduceTask<R> task = new ReduceTask<>(children, 0, children.length, identity, reducer);
+        // Tasks forked from within the pool are joined there, the initial task has to be submitted
+        return ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task);
+    }
+    
+    private class ReduceTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+        
+        private final Node[] children;
+        private final int start;
+        private final int end;
+        private final R identity;
+        private final BinaryOperator<R> reducer;
+        
+        ReduceTask(Node[] children, int start, int end, R identity, BinaryOperator<R> reducer) {
+            super();
+            this.children = children;
+            this.start = start;
+            this.end = end;
+            this.identity = identity;
+            this.reducer = reducer;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        protected R compute() {
+            if (end - start <= threshold) {
+                T semantics = newSemantics();
+                R result = identity;
+                for (int i = start; i < end; i++) {
+                    result = reducer.apply(result, (R) semantics.apply(children[i]));
+                }
+                return result;
+            }
+            
+            int middle = (start + end) >>> 1;
+            ReduceTask<R> left = new ReduceTask<>(children, start, middle, identity, reducer);
+            ReduceTask<R> right = new ReduceTask<>(children, middle, end, identity, reducer);
+            left.fork();
+            R rightResult = right.compute();
+            return reducer.apply(left.join(), rightResult);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package net.stlutz.ohm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An on-disk cache for the CSTs of successful matches, keyed by a fingerprint of the grammar, the start rule
+ * and a hash of the input. Unchanged inputs are not matched again: their CST is memory mapped from the
+ * cache file (see {@link MappedCST}) and its nodes are only loaded while they are visited.
+ * <p>
+ * Failed matches are not cached, as their results are usually needed for error reporting. Match results
+ * taken from the cache have no {@link MatchResult#getMatcher() matcher} and empty statistics.
+ * <p>
+ * Cache files are written to a temporary file first and then moved into place, so that several processes
+ * can share a cache directory. Files of the cache must not be modified in place while the cache is in use.
+ */
+public final class ParseCache {
+    private static final MatchStatistics NO_STATISTICS = new MatchStatistics(0, 0, 0, 0, 0, 0, 0, 0);
+    
+    private final Path directory;
+    private final Map<Grammar, byte[]> fingerprints = new WeakHashMap<>();
+    private long hitCount = 0;
+    private long missCount = 0;
+    
+    /**
+     * @param directory The directory to store the cache files in. It is created if it does not exist.
+     * @throws IOException If the directory cannot be created.
+     */
+    public ParseCache(Path directory) throws IOException {
+        super();
+        this.directory = Files.createDirectories(directory);
+    }
+    
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Cached version of {@link Grammar#match(String)}.
+     */
+    public MatchResult match(Grammar grammar, String input) throws IOException {
+        if (grammar.getDefaultStartRule() == null) {
+            throw new OhmException("Grammar '%s' has no default start rule.".formatted(grammar.getName()));
+        }
+        return match(grammar, input, grammar.getDefaultStartRule());
+    }
+    
+    /**
+     * Cached version of {@link Grammar#match(String, String)}.
+     *
+     * @throws IOException If writing the cache file fails.
+     * @throws OhmException If the grammar cannot be saved, see {@link Grammar#save(java.io.OutputStream)}.
+     */
+    public MatchResult match(Grammar grammar, String input, String startRule) throws IOException {
+        if (input == null) {
+            throw new OhmException("Cannot match against null string");
+        }
+        if (startRule == null) {
+            throw new OhmException("Start application cannot be null");
+        }
+        Path file = directory.resolve(getFileName(grammar, input, startRule));
+        
+        if (Files.exists(file)) {
+            try {
+                MappedCST cst = MappedCST.map(file);
+                if (cst.getInputLength() == input.length()) {
+                    synchronized (this) {
+                        hitCount++;
+                    }
+                    return new MatchResult(null, input, grammar.parseApplication(startRule), cst.getRoot(),
+                        cst.getCstOffset(), cst.getRightmostExaminedPosition(), NO_STATISTICS);
+                }
+            } catch (IOException | OhmException e) {
+                // Unreadable or corrupt cache files are replaced by matching again
+            }
+        }
+        
+        synchronized (this) {
+            missCount++;
+        }
+        MatchResult matchResult = grammar.match(input, startRule);
+        if (matchResult.succeeded()) {
+            write(file, MappedCST.toBytes(matchResult));
+        }
+        return matchResult;
+    }
+    
+    private void write(Path file, ByteBuffer bytes) throws IOException {
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+    
+    private String getFileName(Grammar grammar, String input, String startRule) {
+        MessageDigest digest = newDigest();
+        digest.update(getFingerprint(grammar));
+        digest.update(startRule.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(newDigest().digest(input.getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(digest.digest()) + ".cst";
+    }
+    
+    /**
+     * Returns a hash of the grammar's snapshot, see {@link Grammar#save(java.io.OutputStream)}. Built-in
+     * grammars are identified by their name.
+     */
+    private byte[] getFingerprint(Grammar grammar) {
+        synchronized (fingerprints) {
+            byte[] fingerprint = fingerprints.get(grammar);
+            if (fingerprint == null) {
+                byte[] bytes;
+                if (grammar.isBuiltIn()) {
+                    bytes = grammar.getName().getBytes(StandardCharsets.UTF_8);
+                } else {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    try {
+                        grammar.save(out);
+                    } catch (IOException e) {
+                        // Not thrown by ByteArrayOutputStream
+                        throw new IllegalStateException(e);
+                    }
+                    bytes = out.toByteArray();
+                }
+                fingerprint = newDigest().digest(bytes);
+                fingerprints.put(grammar, fingerprint);
+            }
+            return fingerprint;
+        }
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "ParseCache[%s, hits=%d, misses=%d]".formatted(directory, hitCount, missCount);
+    }
+}
@@ -0,0 +1,27 @@
+package net.stlutz.ohm;
+
+/**
+ * Receives the CST of a match as a stream of events while matching, see
+ * {@link Grammar#matchEvents(String, String, ParseListener)}. Offsets are positions in the input.
+ * <p>
+ * Only the successful derivation is reported: events for a subexpression are delivered once no enclosing
+ * alternative, iteration step, negation or left recursion can discard it anymore, e.g. as soon as a step of
+ * a top-level iteration has succeeded. The events correspond to a depth-first traversal of the CST, except
+ * that iteration nodes have no events of their own; their children are reported in input order.
+ * <p>
+ * If the match fails, the events reported so far describe a prefix of the input, which the start rule
+ * might not have matched completely. Rules entered are not necessarily exited then.
+ */
+public interface ParseListener {
+    default void enterRule(String ruleName, int offset) {
+        // do nothing
+    }
+    
+    default void exitRule(String ruleName, int offset, int length) {
+        // do nothing
+    }
+    
+    default void terminal(int offset, int length) {
+        // do nothing
+    }
+}
@@ -2,17 +2,29 @@ package net.stlutz.ohm;
 
 import net.stlutz.ohm.pexprs.Apply;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 
 public class PositionInfo {
-    // stack top at last
-    private final List<String> applicationMemoKeyStack = new ArrayList<>();
+    // Rough estimates of retained sizes in bytes, used for memory accounting
+    static final int APPROXIMATE_SIZE = 128;
+    private static final int APPROXIMATE_RECORD_SIZE = 96;
+    private static final int APPROXIMATE_NODE_SIZE = 64;
+    private static final int APPROXIMATE_CHILD_SIZE = 8;
+    
+    private static final int[] EMPTY_STACK = new int[0];
+    
+    // IDs of the active applications, stack top at applicationStackSize - 1
+    private int[] applicationStack = EMPTY_STACK;
+    private int applicationStackSize = 0;
     private final Map<String, MemoizationRecord> memo = new HashMap<>();
     private int maxExaminedLength = 0;
     private int maxRightmostFailureOffset = -1;
+    private int memoBytes = 0;
+    private boolean evicted = false;
     private MemoizationRecord currentLeftRecursion = null;
     
     PositionInfo() {
@@ -23,42 +35,56 @@ public class PositionInfo {
         return currentLeftRecursion;
     }
     
-    public boolean isActive(Apply application) {
-        return applicationMemoKeyStack.contains(application.toMemoKey());
+    /**
+     * Returns whether the application with the given ID is active at this position.
+     *
+     * @see Matcher#getApplicationId(Apply)
+     */
+    public boolean isActive(int applicationId) {
+        return indexOfApplication(applicationId) >= 0;
     }
     
-    public void enter(Apply application) {
-        applicationMemoKeyStack.add(application.toMemoKey());
+    private int indexOfApplication(int applicationId) {
+        for (int i = 0; i < applicationStackSize; i++) {
+            if (applicationStack[i] == applicationId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    public void enter(int applicationId) {
+        if (applicationStackSize == applicationStack.length) {
+            applicationStack = Arrays.copyOf(applicationStack, Math.max(4, applicationStackSize * 2));
+        }
+        applicationStack[applicationStackSize++] = applicationId;
     }
     
     public void exit() {
-        applicationMemoKeyStack.remove(applicationMemoKeyStack.size() - 1);
+        applicationStackSize--;
     }
     
-    public void startLeftRecursion(Apply headApplication, MemoizationRecord memoRec) {
+    public void startLeftRecursion(Apply headApplication, int headApplicationId, MemoizationRecord memoRec) {
         memoRec.setLeftRecursion(true);
         memoRec.setHeadApplication(headApplication);
+        memoRec.setHeadApplicationId(headApplicationId);
         memoRec.setNextLeftRecursion(currentLeftRecursion);
         currentLeftRecursion = memoRec;
         
-        int indexOfFirstInvolvedRule = applicationMemoKeyStack.indexOf(headApplication.toMemoKey()) - 1;
-        List<String> involvedApplicationMemoKeys = new ArrayList<>(
-            applicationMemoKeyStack.subList(indexOfFirstInvolvedRule, applicationMemoKeyStack.size()));
-        
-        // TODO: This seems like it could be done much cleaner differently. For now just
-        // copied 1:1 from ohm-js
-        memoRec.setIsInvolved((applicationMemoKey) -> {
-            return involvedApplicationMemoKeys.contains(applicationMemoKey);
-        });
-        
-        memoRec.setUpdateInvolvedApplicationMemoKeys(() -> {
-            for (int i = indexOfFirstInvolvedRule; i < applicationMemoKeyStack.size(); i++) {
-                String applicationMemoKey = applicationMemoKeyStack.get(i);
-                if (memoRec.isInvolved(applicationMemoKey)) {
-                    involvedApplicationMemoKeys.add(applicationMemoKey);
-                }
-            }
-        });
+        memoRec.setFirstInvolvedIndex(indexOfApplication(headApplicationId) + 1);
+        memoRec.setInvolvedApplications(new BitSet());
+        updateInvolvedApplications(memoRec);
+    }
+    
+    /**
+     * Adds all applications that are currently active above the head of the given left recursion to its
+     * involved applications.
+     */
+    public void updateInvolvedApplications(MemoizationRecord memoRec) {
+        BitSet involvedApplications = memoRec.getInvolvedApplications();
+        for (int i = memoRec.getFirstInvolvedIndex(); i < applicationStackSize; i++) {
+            involvedApplications.set(applicationStack[i]);
+        }
     }
     
     public void endLeftRecursion() {
@@ -73,8 +99,8 @@ public class PositionInfo {
             return true;
         }
         
-        for (String applicationMemoKey : applicationMemoKeyStack) {
-            if (memoRec.isInvolved(applicationMemoKey)) {
+        for (int i = 0; i < applicationStackSize; i++) {
+            if (memoRec.isInvolved(applicationStack[i])) {
                 return false;
             }
         }
@@ -87,18 +113,90 @@ public class PositionInfo {
     }
     
     public MemoizationRecord memoize(String memoKey) {
-        MemoizationRecord memoRec = new MemoizationRecord();
-        memo.put(memoKey, memoRec);
-        return memoRec;
+        return memoize(memoKey, new MemoizationRecord());
     }
     
     public MemoizationRecord memoize(String memoKey, MemoizationRecord memoRec) {
-        memo.put(memoKey, memoRec);
+        MemoizationRecord previous = memo.put(memoKey, memoRec);
+        if (previous != null) {
+            memoBytes -= previous.getApproximateSize();
+        }
+        memoRec.setApproximateSize(approximateSize(memoRec));
+        memoBytes += memoRec.getApproximateSize();
+        maxExaminedLength = Math.max(maxExaminedLength, memoRec.getExaminedLength());
         return memoRec;
     }
     
+    private static int approximateSize(MemoizationRecord memoRec) {
+        ParseNode value = memoRec.getValue();
+        if (value == null) {
+            return APPROXIMATE_RECORD_SIZE;
+        }
+        // Only the node itself, its descendants are either accounted for by other records or not memoized
+        return APPROXIMATE_RECORD_SIZE + APPROXIMATE_NODE_SIZE + APPROXIMATE_CHILD_SIZE * value.numChildren();
+    }
+    
     public void forget(String memoKey) {
-        memo.remove(memoKey);
+        MemoizationRecord memoRec = memo.remove(memoKey);
+        if (memoRec != null) {
+            memoBytes -= memoRec.getApproximateSize();
+        }
     }
     
+    /**
+     * Returns the number of memoized records at this position.
+     */
+    public int getMemoSize() {
+        return memo.size();
+    }
+    
+    /**
+     * Returns the approximate number of bytes retained by the records at this position.
+     */
+    public int getMemoBytes() {
+        return memoBytes;
+    }
+    
+    /**
+     * Returns whether this position info was removed from the memo table to make room. Evaluations that
+     * started before that still refer to it, but must no longer memoize to it.
+     */
+    public boolean isEvicted() {
+        return evicted;
+    }
+    
+    void markEvicted() {
+        evicted = true;
+    }
+    
+    /**
+     * Returns whether applications are being evaluated at this position, in which case its records must not
+     * be forgotten to make room.
+     */
+    public boolean isInUse() {
+        return applicationStackSize > 0 || currentLeftRecursion != null;
+    }
+    
+    /**
+     * Forgets all records at {@code position} that examined the input at or after {@code invalidatedIndex}.
+     * Records that examined input up to exactly that index are forgotten as well, since reaching it may
+     * have involved noticing that it was the end of the input.
+     */
+    public void clearObsoleteEntries(int position, int invalidatedIndex) {
+        if (position + maxExaminedLength < invalidatedIndex) {
+            return;
+        }
+        
+        maxExaminedLength = 0;
+        Iterator<MemoizationRecord> iterator = memo.values().iterator();
+        while (iterator.hasNext()) {
+            MemoizationRecord memoRec = iterator.next();
+            if (position + memoRec.getExaminedLength() >= invalidatedIndex) {
+                iterator.remove();
+                memoBytes -= memoRec.getApproximateSize();
+            } else {
+                maxExaminedLength = Math.max(maxExaminedLength, memoRec.getExaminedLength());
+            }
+        }
+    }
 }
@@ -0,0 +1,151 @@
+package net.stlutz.ohm;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Matches input that arrives in chunks, e.g. from the network. Each chunk is appended to the input of an
+ * underlying {@link Matcher}, which is then matched as far as possible. Memoized results that did not reach
+ * the end of the input so far stay valid, so matching after the next chunk only re-evaluates what depends on
+ * the end of the input, instead of everything consumed before.
+ * <p>
+ * Can also be used as a {@link Flow.Subscriber} of {@link CharBuffer}s, whose {@link #getResult() result}
+ * completes once the publisher completes, or as soon as the input is known to fail.
+ */
+public class PushMatcher implements Flow.Subscriber<CharBuffer> {
+    private final Matcher matcher;
+    private final String startRule;
+    private final MatchOptions options;
+    private final CompletableFuture<MatchResult> result = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private MatchResult lastResult;
+    private boolean finished = false;
+    
+    public PushMatcher(Grammar grammar, String startRule) {
+        this(grammar, startRule, MatchOptions.defaults());
+    }
+    
+    public PushMatcher(Grammar grammar, String startRule, MatchOptions options) {
+        super();
+        if (startRule == null) {
+            throw new OhmException("Start rule cannot be null");
+        }
+        this.matcher = grammar.getMatcher("");
+        this.startRule = startRule;
+        this.options = options;
+    }
+    
+    public Matcher getMatcher() {
+        return matcher;
+    }
+    
+    /**
+     * Returns the input fed so far.
+     */
+    public String getInput() {
+        return matcher.getInput();
+    }
+    
+    /**
+     * Appends {@code chunk} to the input and matches as far as possible.
+     *
+     * @throws OhmException If this matcher is already finished.
+     */
+    public void feed(CharSequence chunk) {
+        if (finished) {
+            throw new OhmException("Cannot feed a finished matcher");
+        }
+        if (chunk.length() == 0 && lastResult != null) {
+            return;
+        }
+        int end = matcher.getInput().length();
+        matcher.replaceInputRange(end, end, chunk.toString());
+        if (!hasFailed()) {
+            lastResult = matcher.match(startRule, options);
+        }
+    }
+    
+    /**
+     * Returns whether the input fed so far fails to match no matter what follows, i.e. the match failed
+     * without examining the end of the input.
+     */
+    public boolean hasFailed() {
+        return lastResult != null && lastResult.failed()
+            && lastResult.getRightmostExaminedPosition() < lastResult.getInput().length();
+    }
+    
+    /**
+     * Marks the end of the input and returns the final match result.
+     */
+    public MatchResult finish() {
+        if (!finished) {
+            finished = true;
+            try {
+                // Only re-evaluates if input was fed after the match failed for good
+                if (lastResult == null || lastResult.getInput() != matcher.getInput()) {
+                    lastResult = matcher.match(startRule, options);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                throw e;
+            }
+            result.complete(lastResult);
+        }
+        return lastResult;
+    }
+    
+    /**
+     * Returns the result, which completes when {@link #finish()} is called, the subscription completes, or
+     * the input is known to fail.
+     */
+    public CompletableFuture<MatchResult> getResult() {
+        return result;
+    }
+    
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+    
+    @Override
+    public void onNext(CharBuffer chunk) {
+        if (finished) {
+            return;
+        }
+        try {
+            feed(chunk);
+        } catch (RuntimeException e) {
+            finished = true;
+            subscription.cancel();
+            result.completeExceptionally(e);
+            return;
+        }
+        if (hasFailed()) {
+            subscription.cancel();
+            finish();
+        } else {
+            subscription.request(1);
+        }
+    }
+    
+    @Override
+    public void onError(Throwable throwable) {
+        finished = true;
+        result.completeExceptionally(throwable);
+    }
+    
+    @Override
+    public void onComplete() {
+        try {
+            finish();
+        } catch (RuntimeException e) {
+            // already reported through the result
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Apply;
+
+/**
+ * The result of {@link Grammar#recognize(String, String)}. Unlike {@link MatchResult}, it has no CST.
+ */
+public class RecognitionResult {
+    private final Matcher matcher;
+    private final String input;
+    private final Apply startApplication;
+    private final boolean succeeded;
+    private final int consumedLength;
+    private final int rightmostExaminedPosition;
+    private final MatchStatistics statistics;
+    
+    public RecognitionResult(Matcher matcher, String input, Apply startApplication, boolean succeeded,
+                             int consumedLength, int rightmostExaminedPosition, MatchStatistics statistics) {
+        super();
+        this.matcher = matcher;
+        this.input = input;
+        this.startApplication = startApplication;
+        this.succeeded = succeeded;
+        this.consumedLength = consumedLength;
+        this.rightmostExaminedPosition = rightmostExaminedPosition;
+        this.statistics = statistics;
+    }
+    
+    public Matcher getMatcher() {
+        return matcher;
+    }
+    
+    public String getInput() {
+        return input;
+    }
+    
+    public Apply getStartApplication() {
+        return startApplication;
+    }
+    
+    /**
+     * Returns the position in the input where the start application ended, i.e. the number of chars it
+     * consumed including preceding spaces, or -1 if it did not match. Trailing spaces skipped after a
+     * syntactic start rule are not included. If the start application matched but the recognition failed,
+     * the input continues after that position.
+     */
+    public int getConsumedLength() {
+        return consumedLength;
+    }
+    
+    /**
+     * Returns the rightmost position in the input that had to be examined. For failed recognitions, this
+     * is a good approximation of where the input went wrong.
+     */
+    public int getRightmostExaminedPosition() {
+        return rightmostExaminedPosition;
+    }
+    
+    public MatchStatistics getStatistics() {
+        return statistics;
+    }
+    
+    public boolean succeeded() {
+        return succeeded;
+    }
+    
+    public boolean failed() {
+        return !succeeded;
+    }
+}
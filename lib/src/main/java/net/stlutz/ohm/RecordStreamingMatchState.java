@@ -0,0 +1,46 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.PExpr;
+
+import java.util.function.Consumer;
+
+/**
+ * A match state that hands the final nodes of one rule to a consumer, see
+ * {@link Matcher#matchStream(String, String, Consumer)}. Like all final bindings, they are dropped from the
+ * bindings stack and the memo table afterwards.
+ */
+class RecordStreamingMatchState extends StreamingMatchState {
+    private static final ParseListener IGNORE = new ParseListener() {};
+    
+    private final String recordRuleName;
+    private final Consumer<Node> consumer;
+    
+    RecordStreamingMatchState(Matcher matcher, Apply startApplication, MatchOptions options,
+                              String recordRuleName, Consumer<Node> consumer) {
+        super(matcher, startApplication, options, IGNORE);
+        this.recordRuleName = recordRuleName;
+        this.consumer = consumer;
+    }
+    
+    @Override
+    int numBlockingFrames(PExpr parent, PExpr expr) {
+        // A record is only committed as a whole
+        int result = super.numBlockingFrames(parent, expr);
+        if (expr instanceof Apply apply && apply.getRuleName().equals(recordRuleName)) {
+            result++;
+        }
+        return result;
+    }
+    
+    @Override
+    void emit(ParseNode node, int position) {
+        if (node.isNonterminal() && node.ctorName().equals(recordRuleName)) {
+            SourceInterval source = new SourceInterval(input, position, position + node.getMatchLength(),
+                matcher.getLineIndex());
+            consumer.accept(new NodeWrapper(node, source));
+        } else {
+            super.emit(node, position);
+        }
+    }
+}
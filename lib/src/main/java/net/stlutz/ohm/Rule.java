@@ -48,6 +48,21 @@ public interface Rule {
      */
     SourceInterval getSource();
     
+    /**
+     * @return {@code true} if this rule's body can succeed without consuming any input. May be conservative.
+     */
+    default boolean isNullable() {
+        return true;
+    }
+    
+    /**
+     * @return {@code true} if applications of this rule may be left-recursive. May be conservative. Only
+     * applications of left-recursive rules take part in cycle detection while matching.
+     */
+    default boolean isLeftRecursive() {
+        return true;
+    }
+    
     /**
      * @return {@code true} if this rule is a definition (i.e. declared using {@code =}).
      */
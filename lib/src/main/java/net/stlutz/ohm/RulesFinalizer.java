@@ -2,31 +2,81 @@ package net.stlutz.ohm;
 
 import net.stlutz.ohm.pexprs.Apply;
 import net.stlutz.ohm.pexprs.BasePExprVisitor;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.PExprCopier;
+import net.stlutz.ohm.pexprs.Plus;
+import net.stlutz.ohm.pexprs.Scan;
+import net.stlutz.ohm.pexprs.Star;
 
 import java.util.Map;
 
 public class RulesFinalizer extends BasePExprVisitor<Void> {
     private final Map<String, ? extends Rule> rules;
+    /**
+     * Whether to set up scans for iterations. Done after optimizing character classes.
+     */
+    private boolean scanning = false;
     
     private RulesFinalizer(Map<String, ? extends Rule> rules) {
         this.rules = rules;
     }
     
-    public static void finalize(Map<String, ? extends Rule> rules) {
-        RulesFinalizer finalizer = new RulesFinalizer(rules);
-        for (Rule rule : rules.values()) {
+    public static void finalize(Map<String, ConstructedRule> rules) {
+        finalize(rules, rules);
+    }
+    
+    /**
+     * Finalizes {@code ownRules}, binding their applications to {@code allRules}. The remaining rules of
+     * {@code allRules} must already be finalized and are left untouched.
+     */
+    static void finalize(Map<String, ConstructedRule> ownRules, Map<String, ConstructedRule> allRules) {
+        // Bodies may come from a super grammar and must not be bound to the rules of this one
+        for (ConstructedRule rule : ownRules.values()) {
+            rule.body = PExprCopier.copy(rule.body);
+        }
+        
+        RulesFinalizer finalizer = new RulesFinalizer(allRules);
+        for (Rule rule : ownRules.values()) {
+            finalizer.visit(rule.getBody());
+        }
+        CharClassOptimizer.optimize(ownRules);
+        LeftRecursionAnalysis.analyze(ownRules, allRules);
+        finalizer.scanning = true;
+        for (Rule rule : ownRules.values()) {
             finalizer.visit(rule.getBody());
         }
     }
     
     @Override
     public Void visitApply(Apply expr) {
+        if (scanning) {
+            return null;
+        }
         Rule rule = rules.get(expr.getRuleName());
         if (rule == null) {
             // TODO: collect errors
             return null;
         }
         expr.setRule(rule);
+        for (PExpr arg : expr.getArgs()) {
+            visit(arg);
+        }
         return null;
     }
+    
+    @Override
+    public Void visitStar(Star expr) {
+        if (scanning) {
+            expr.setScan(Scan.of(expr.expr));
+        }
+        return super.visitStar(expr);
+    }
+    
+    @Override
+    public Void visitPlus(Plus expr) {
+        if (scanning) {
+            expr.setScan(Scan.of(expr.expr));
+        }
+        return super.visitPlus(expr);
+    }
 }
@@ -2,6 +2,7 @@ package net.stlutz.ohm;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
+import java.util.function.BinaryOperator;
 
 /**
  * Semantics represent a function to be applied to a concrete syntax tree (CST) -- it's very
@@ -24,6 +25,8 @@ public class Semantics {
     Map<String, SemanticAction> actionMap;
     Node rootNode;
     protected Node self = null;
+    // Only set for instances taking part in a parallel execution
+    ParallelExecution<?> parallelExecution;
     
     public Grammar getGrammar() {
         return grammar;
@@ -92,6 +95,29 @@ public class Semantics {
         return executeAction(action, node);
     }
     
+    /**
+     * Applies this operation to each child of {@code node} and combines the results with {@code reducer},
+     * starting from {@code identity}.
+     * <p>
+     * When executing in parallel (see {@link SemanticsBlueprint#onParallel}), the children of iteration nodes
+     * with more children than the threshold are split among tasks, each applying the operation with a new
+     * instance of this semantics. The reducer must therefore be associative, and actions must not depend on
+     * state that other actions stored in the semantics.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R reduceChildren(Node node, R identity, BinaryOperator<R> reducer) {
+        Node[] children = node.getChildren();
+        if (parallelExecution != null && node.isIteration() && children.length > parallelExecution.getThreshold()) {
+            return parallelExecution.reduce(children, identity, reducer);
+        }
+        
+        R result = identity;
+        for (Node child : children) {
+            result = reducer.apply(result, (R) apply(child));
+        }
+        return result;
+    }
+    
     // TODO: Ensure this does not override default actions defined in super semantic
     @Action(SpecialActionNames.nonterminal)
     public Object defaultNonterminalAction(Node... children) {
@@ -6,6 +6,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 public class SemanticsBlueprint<T extends Semantics> {
     // blueprint state
@@ -83,6 +84,21 @@ public class SemanticsBlueprint<T extends Semantics> {
         return on(matchResult.getRootNode());
     }
     
+    /**
+     * Like {@link #on(MatchResult)}, but {@link Semantics#reduceChildren} processes the children of large
+     * iteration nodes in parallel, using {@code pool}. Iterations with more than {@code threshold} children
+     * are split into tasks of at most that many children, each with its own instance of the semantics. The
+     * semantics class therefore must not be an inner class.
+     */
+    public T onParallel(MatchResult matchResult, ForkJoinPool pool, int threshold) {
+        if (threshold < 1) {
+            throw new OhmException("Parallel threshold must be positive, but was %d".formatted(threshold));
+        }
+        T result = on(matchResult);
+        result.parallelExecution = new ParallelExecution<>(this, pool, threshold, result.rootNode);
+        return result;
+    }
+    
     T on(Node rootNode) {
         // TODO: why do we do this? just let people instantiate it themselves
         T result = instantiate();
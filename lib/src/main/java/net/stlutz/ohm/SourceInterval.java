@@ -10,9 +10,18 @@ public class SourceInterval {
     private final int startIndex;
     private final int endIndex;
     private String contentsCache;
+    /**
+     * Shared between all intervals derived from this one. May be {@code null}.
+     */
+    private LineIndex lineIndex;
     
     public SourceInterval(String sourceString, int startIndex, int endIndex) {
+        this(sourceString, startIndex, endIndex, null);
+    }
+    
+    public SourceInterval(String sourceString, int startIndex, int endIndex, LineIndex lineIndex) {
         this.sourceString = Objects.requireNonNull(sourceString);
+        this.lineIndex = lineIndex;
         
         if (startIndex > endIndex || startIndex < 0 || endIndex > sourceString.length()) {
             throw new RuntimeException(
@@ -86,7 +95,7 @@ public class SourceInterval {
      */
     public SourceInterval collapsedLeft() {
         // TODO: why?
-        return new SourceInterval(sourceString, startIndex, startIndex);
+        return new SourceInterval(sourceString, startIndex, startIndex, lineIndex);
     }
     
     /**
@@ -94,12 +103,21 @@ public class SourceInterval {
      */
     public SourceInterval collapsedRight() {
         // TODO: why?
-        return new SourceInterval(sourceString, endIndex, endIndex);
+        return new SourceInterval(sourceString, endIndex, endIndex, lineIndex);
+    }
+    
+    /**
+     * Returns the line index of the source string, building one if this interval doesn't share one yet.
+     */
+    public LineIndex getLineIndex() {
+        if (lineIndex == null) {
+            lineIndex = new LineIndex(sourceString);
+        }
+        return lineIndex;
     }
     
     LineAndColumnInfo getLineAndColumn() {
-        // TODO
-        return LineAndColumnInfo.from(sourceString, startIndex);
+        return getLineIndex().getLineAndColumn(startIndex);
     }
     
     String getLineAndColumnMessage() {
@@ -126,15 +144,15 @@ public class SourceInterval {
         } else if (startIndex < subtrahend.startIndex && endIndex > subtrahend.endIndex) {
             // we are split by the subtrahend
             return new SourceInterval[]{
-                new SourceInterval(sourceString, startIndex, subtrahend.startIndex),
-                new SourceInterval(sourceString, subtrahend.endIndex, endIndex),};
+                new SourceInterval(sourceString, startIndex, subtrahend.startIndex, lineIndex),
+                new SourceInterval(sourceString, subtrahend.endIndex, endIndex, lineIndex),};
         } else if (startIndex >= subtrahend.startIndex) {
             // subtrahend overlaps with our start
-            return new SourceInterval[]{new SourceInterval(sourceString, subtrahend.endIndex, endIndex)};
+            return new SourceInterval[]{new SourceInterval(sourceString, subtrahend.endIndex, endIndex, lineIndex)};
         } else {
             // subtrahend overlaps with our end
             return new SourceInterval[]{
-                new SourceInterval(sourceString, startIndex, subtrahend.startIndex)};
+                new SourceInterval(sourceString, startIndex, subtrahend.startIndex, lineIndex)};
         }
     }
     
@@ -170,7 +188,7 @@ public class SourceInterval {
             left++;
         }
         
-        return new SourceInterval(sourceString, left, right);
+        return new SourceInterval(sourceString, left, right, lineIndex);
     }
     
     /**
@@ -180,7 +198,7 @@ public class SourceInterval {
     public SourceInterval subInterval(int offset, int length) {
         int newStartIndex = startIndex + offset;
         int newEndIndex = newStartIndex + length;
-        return new SourceInterval(sourceString, newStartIndex, newEndIndex);
+        return new SourceInterval(sourceString, newStartIndex, newEndIndex, lineIndex);
     }
     
     private void assertSameSource(SourceInterval interval) {
@@ -219,6 +237,7 @@ public class SourceInterval {
             endIndex = Math.max(endIndex, interval.endIndex);
         }
         
-        return new SourceInterval(firstInterval.sourceString, startIndex, endIndex);
+        return new SourceInterval(firstInterval.sourceString, startIndex, endIndex,
+            firstInterval.lineIndex);
     }
 }
@@ -0,0 +1,288 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Alt;
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.Iter;
+import net.stlutz.ohm.pexprs.Lex;
+import net.stlutz.ohm.pexprs.Not;
+import net.stlutz.ohm.pexprs.Opt;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.Seq;
+import net.stlutz.ohm.pexprs.Star;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A match state that reports the CST to a {@link ParseListener} instead of keeping it.
+ * <p>
+ * An expression that succeeded is final if none of the expressions being evaluated around it can still
+ * backtrack over it: alternatives and iterations while their current operand can fail, negations and
+ * possibly left recursive applications until they are done. The bindings of final expressions are reported
+ * and then only counted, as committed bindings at the bottom of the bindings stack. Enclosing applications
+ * are reported when the first of their bindings is, and memoized results before the current position are
+ * evicted, since no expression can return there anymore.
+ */
+class StreamingMatchState extends MatchState {
+    private static final ParseNode COMMITTED = new NonterminalNode(0, "_committed", new ParseNode[0], new int[0]);
+    
+    private final ParseListener listener;
+    private final Deque<PExpr> evalStack = new ArrayDeque<>();
+    private final Map<PExpr, Boolean> cannotFail = new IdentityHashMap<>();
+    private int numBlockingFrames = 0;
+    private int numCommittedBindings = 0;
+    // The outermost active applications that were reported already
+    private int numEnteredApplications = 0;
+    
+    StreamingMatchState(Matcher matcher, Apply startApplication, MatchOptions options, ParseListener listener) {
+        super(matcher, startApplication, options);
+        this.listener = listener;
+    }
+    
+    /**
+     * Returns how many choice points could backtrack over {@code expr} (and all bindings below it) while it is
+     * evaluated: its parent if that is an alternative or iteration and {@code expr} can fail, and
+     * {@code expr} itself if it is a negation or a possibly left recursive application.
+     */
+    int numBlockingFrames(PExpr parent, PExpr expr) {
+        int result = 0;
+        if ((parent instanceof Alt || parent instanceof Iter) && !cannotFail(expr)) {
+            result++;
+        }
+        if (expr instanceof Not || (expr instanceof Apply apply && apply.mightBeLeftRecursive())) {
+            result++;
+        }
+        return result;
+    }
+    
+    private boolean cannotFail(PExpr expr) {
+        Boolean result = cannotFail.get(expr);
+        if (result == null) {
+            if (expr instanceof Star || expr instanceof Opt) {
+                result = true;
+            } else if (expr instanceof Seq seq) {
+                result = Arrays.stream(seq.getTerms()).allMatch(this::cannotFail);
+            } else if (expr instanceof Alt alt) {
+                result = Arrays.stream(alt.getTerms()).anyMatch(this::cannotFail);
+            } else if (expr instanceof Lex lex) {
+                result = cannotFail(lex.expr);
+            } else {
+                result = false;
+            }
+            cannotFail.put(expr, result);
+        }
+        return result;
+    }
+    
+    @Override
+    public boolean eval(PExpr expr) {
+        int blockingFrames = numBlockingFrames(evalStack.peekLast(), expr);
+        numBlockingFrames += blockingFrames;
+        evalStack.addLast(expr);
+        boolean succeeded = super.eval(expr);
+        evalStack.removeLast();
+        numBlockingFrames -= blockingFrames;
+        
+        if (succeeded && !recognizing && numBlockingFrames == 0) {
+            commit(expr);
+        }
+        return succeeded;
+    }
+    
+    private void commit(PExpr expr) {
+        int numNewBindings = Math.min(expr.getArity(), bindings.size());
+        if (evalStack.peekLast() == startExpr && expr != startApplication) {
+            // Bindings of the start expression other than the start application are not part of the CST
+            discardNewBindings(numNewBindings);
+            return;
+        }
+        
+        enterApplications();
+        ParseNode[] nodes = new ParseNode[numNewBindings];
+        int[] offsets = new int[numNewBindings];
+        Iterator<ParseNode> nodeIterator = bindings.descendingIterator();
+        Iterator<Integer> offsetIterator = bindingOffsets.descendingIterator();
+        for (int i = numNewBindings - 1; i >= 0; i--) {
+            nodes[i] = nodeIterator.next();
+            offsets[i] = offsetIterator.next();
+        }
+        emitAll(nodes, offsets, offsetToPosition(0));
+        discardNewBindings(numNewBindings);
+        
+        int position = inputStream.getPosition();
+        while (evictionCursor < position) {
+            evictedRecords += matcher.evictMemoAt(evictionCursor);
+            evictionCursor++;
+        }
+    }
+    
+    private void discardNewBindings(int numNewBindings) {
+        for (int i = 0; i < numNewBindings; i++) {
+            bindings.removeLast();
+            bindingOffsets.removeLast();
+        }
+        numCommittedBindings += numNewBindings;
+    }
+    
+    /**
+     * Reports the active applications that were not reported yet, outermost first.
+     */
+    private void enterApplications() {
+        int numApplications = applicationStack.size() - numEnteredApplications;
+        if (numApplications == 0) {
+            return;
+        }
+        Apply[] applications = new Apply[numApplications];
+        int[] positions = new int[numApplications];
+        Iterator<Apply> applicationIterator = applicationStack.descendingIterator();
+        Iterator<Integer> positionIterator = positionStack.descendingIterator();
+        for (int i = numApplications - 1; i >= 0; i--) {
+            applications[i] = applicationIterator.next();
+            positions[i] = positionIterator.next();
+        }
+        for (int i = 0; i < numApplications; i++) {
+            listener.enterRule(applications[i].getRuleName(), positions[i]);
+        }
+        numEnteredApplications = applicationStack.size();
+    }
+    
+    /**
+     * Reports {@code node}, which starts at {@code position}, and its descendants.
+     */
+    void emit(ParseNode node, int position) {
+        if (node == COMMITTED) {
+            return;
+        }
+        if (node.isTerminal()) {
+            listener.terminal(position, node.getMatchLength());
+        } else if (node.isNonterminal()) {
+            listener.enterRule(node.ctorName(), position);
+            emitAll(node.getChildren(), node.getChildOffsets(), position);
+            listener.exitRule(node.ctorName(), position, node.getMatchLength());
+        }
+    }
+    
+    /**
+     * Reports {@code nodes} in input order. The iteration nodes of one iteration (one per column) have the
+     * same source, their children are reported row by row.
+     */
+    private void emitAll(ParseNode[] nodes, int[] offsets, int basePosition) {
+        int i = 0;
+        while (i < nodes.length) {
+            ParseNode node = nodes[i];
+            if (!node.isIteration()) {
+                emit(node, basePosition + offsets[i]);
+                i++;
+                continue;
+            }
+            
+            int end = i + 1;
+            while (end < nodes.length && nodes[end].isIteration() && offsets[end] == offsets[i]
+                && nodes[end].getMatchLength() == node.getMatchLength()
+                && nodes[end].numChildren() == node.numChildren()) {
+                end++;
+            }
+            ParseNode[] row = new ParseNode[end - i];
+            int[] rowOffsets = new int[end - i];
+            for (int rowIndex = 0; rowIndex < node.numChildren(); rowIndex++) {
+                for (int column = i; column < end; column++) {
+                    row[column - i] = nodes[column].getChildren()[rowIndex];
+                    rowOffsets[column - i] = nodes[column].getChildOffsets()[rowIndex];
+                }
+                // Children of iteration nodes are relative to the same base as the iteration node
+                emitAll(row, rowOffsets, basePosition);
+            }
+            i = end;
+        }
+    }
+    
+    @Override
+    public void exitApplication(PositionInfo positionInfo, ParseNode nodeOrNull) {
+        if (applicationStack.size() > numEnteredApplications) {
+            super.exitApplication(positionInfo, nodeOrNull);
+            return;
+        }
+        
+        // The bindings of a reported application are committed, so only its end is left to report
+        numEnteredApplications--;
+        if (nodeOrNull != null) {
+            int originalPosition = positionStack.getLast();
+            listener.exitRule(currentApplication().getRuleName(), originalPosition,
+                inputStream.getPosition() - originalPosition);
+        }
+        super.exitApplication(positionInfo, null);
+        if (nodeOrNull != null) {
+            numCommittedBindings++;
+        }
+    }
+    
+    @Override
+    public boolean isCommitted(int numBindings) {
+        return numBindings > 0 && numRecognizedBindings == 0 && numBindings > bindings.size();
+    }
+    
+    @Override
+    public void pushBinding(ParseNode node, int originalPosition) {
+        if (node == null && !recognizing) {
+            // Result of an iteration over committed bindings
+            numCommittedBindings++;
+            return;
+        }
+        super.pushBinding(node, originalPosition);
+    }
+    
+    @Override
+    public void popBinding() {
+        if (numRecognizedBindings == 0 && bindings.isEmpty()) {
+            numCommittedBindings--;
+            return;
+        }
+        super.popBinding();
+    }
+    
+    @Override
+    public int numBindings() {
+        return numCommittedBindings + super.numBindings();
+    }
+    
+    @Override
+    void truncateBindings(int newLength) {
+        if (newLength < numCommittedBindings) {
+            super.truncateBindings(numCommittedBindings);
+            numCommittedBindings = newLength;
+        } else {
+            super.truncateBindings(newLength);
+        }
+    }
+    
+    @Override
+    public ParseNode[] spliceLastBindings(int numBindings) {
+        int numRealBindings = Math.min(numBindings, bindings.size());
+        ParseNode[] realBindings = super.spliceLastBindings(numRealBindings);
+        if (numRealBindings == numBindings) {
+            return realBindings;
+        }
+        ParseNode[] result = new ParseNode[numBindings];
+        int numCommitted = numBindings - numRealBindings;
+        Arrays.fill(result, 0, numCommitted, COMMITTED);
+        System.arraycopy(realBindings, 0, result, numCommitted, numRealBindings);
+        numCommittedBindings -= numCommitted;
+        return result;
+    }
+    
+    @Override
+    public int[] spliceLastBindingOffsets(int numBindingOffsets) {
+        int numRealOffsets = Math.min(numBindingOffsets, bindingOffsets.size());
+        int[] realOffsets = super.spliceLastBindingOffsets(numRealOffsets);
+        if (numRealOffsets == numBindingOffsets) {
+            return realOffsets;
+        }
+        int[] result = new int[numBindingOffsets];
+        System.arraycopy(realOffsets, 0, result, numBindingOffsets - numRealOffsets, numRealOffsets);
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+package net.stlutz.ohm;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens of an input, see {@link Tokenizer#getTokens()}. Each token is stored as its start and end
+ * position and the index of its kind, i.e. the rule that matched it, so that tokens can be compared by
+ * integer kinds.
+ */
+public final class TokenArray {
+    private final String input;
+    private final String[] kinds;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] kindIndices;
+    private final int endPosition;
+    
+    TokenArray(String input, String[] kinds, int[] starts, int[] ends, int[] kindIndices,
+               int endPosition) {
+        super();
+        this.input = input;
+        this.kinds = kinds;
+        this.starts = starts;
+        this.ends = ends;
+        this.kindIndices = kindIndices;
+        this.endPosition = endPosition;
+    }
+    
+    public String getInput() {
+        return input;
+    }
+    
+    public int size() {
+        return starts.length;
+    }
+    
+    public int getStart(int index) {
+        return starts[index];
+    }
+    
+    public int getEnd(int index) {
+        return ends[index];
+    }
+    
+    public String getText(int index) {
+        return input.substring(starts[index], ends[index]);
+    }
+    
+    /**
+     * Returns the index of the kind of the token at {@code index} in {@link #getKinds()}.
+     */
+    public int getKindIndex(int index) {
+        return kindIndices[index];
+    }
+    
+    /**
+     * Returns the name of the rule that matched the token at {@code index}.
+     */
+    public String getKind(int index) {
+        return kinds[kindIndices[index]];
+    }
+    
+    /**
+     * Returns the names of the kinds by kind index.
+     */
+    public List<String> getKinds() {
+        return List.of(kinds);
+    }
+    
+    /**
+     * Returns the index of {@code kind} in {@link #getKinds()}, or -1 if there is no such kind.
+     */
+    public int kindIndexOf(String kind) {
+        return Arrays.asList(kinds).indexOf(kind);
+    }
+    
+    /**
+     * Returns the position after the last token and the spaces following it. It is the length of the input
+     * unless tokenizing failed there.
+     */
+    public int getEndPosition() {
+        return endPosition;
+    }
+    
+    public boolean isComplete() {
+        return endPosition == input.length();
+    }
+    
+    /**
+     * Returns the index of the token that contains the char at {@code position}, or -1 if there is none.
+     */
+    public int indexAt(int position) {
+        int index = Arrays.binarySearch(starts, position);
+        if (index >= 0) {
+            return index;
+        }
+        index = -index - 2;
+        return index >= 0 && position < ends[index] ? index : -1;
+    }
+    
+    @Override
+    public String toString() {
+        return "TokenArray[size=%d, kinds=%s, endPosition=%d]".formatted(size(), getKinds(), endPosition);
+    }
+}
@@ -0,0 +1,256 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Alt;
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.CharClass;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.Seq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits an input into tokens with a token rule like {@code token = comment | ident | operator | any},
+ * e.g. for syntax highlighting, and keeps the tokens up to date while the input is edited.
+ * <p>
+ * Tokens are scanned one after another, like the token rule in an iteration {@code token*}. If the token
+ * rule is syntactic, spaces are skipped before each token. The kind of a token is the rule applied by the
+ * alternative of the token rule's body that matched it, or the token rule itself for other alternatives.
+ * Matching only recognizes, no CST nodes are constructed.
+ * <p>
+ * After an edit, scanning restarts at the end of the last token that did not examine the edited range, and
+ * stops as soon as a token ends where one ended before, behind the edit. The remaining tokens are kept.
+ */
+public final class Tokenizer {
+    private final Grammar grammar;
+    private final String tokenRuleName;
+    private final Apply tokenApplication;
+    private final PExpr[] alternatives;
+    // Index of the kind of each alternative
+    private final int[] alternativeKinds;
+    private final String[] kinds;
+    private final Matcher matcher;
+    
+    private int[] starts = new int[0];
+    private int[] ends = new int[0];
+    private int[] kindIndices = new int[0];
+    // The rightmost position examined while scanning each token, including the spaces before it
+    private int[] examinedEnds = new int[0];
+    // Where scanning stopped
+    private int endPosition;
+    private int lastScannedTokens;
+    private TokenArray tokens;
+    
+    /**
+     * @throws OhmException If {@code tokenRule} is not a rule of {@code grammar} or has parameters.
+     */
+    public Tokenizer(Grammar grammar, String tokenRule, String input) {
+        super();
+        this.grammar = grammar;
+        this.tokenRuleName = tokenRule;
+        this.tokenApplication = grammar.parseApplication(tokenRule);
+        Rule rule = grammar.getRule(tokenRule);
+        if (!rule.getFormals().isEmpty()) {
+            throw new OhmException("Token rule '%s' cannot have parameters".formatted(tokenRule));
+        }
+        
+        alternatives = rule.getBody() instanceof Alt alt ? alt.getTerms() : new PExpr[]{rule.getBody()};
+        alternativeKinds = new int[alternatives.length];
+        List<String> kindNames = new ArrayList<>();
+        for (int i = 0; i < alternatives.length; i++) {
+            PExpr term = alternatives[i];
+            while (term instanceof Seq seq && seq.getTerms().length == 1) {
+                term = seq.getTerms()[0];
+            }
+            // Simple applications may have been replaced by their character class, see CharClassOptimizer
+            if (term instanceof CharClass charClass) {
+                term = charClass.getOriginal();
+            }
+            String kind = term instanceof Apply apply ? apply.getRuleName() : tokenRule;
+            if (!kindNames.contains(kind)) {
+                kindNames.add(kind);
+            }
+            alternativeKinds[i] = kindNames.indexOf(kind);
+        }
+        kinds = kindNames.toArray(new String[0]);
+        
+        matcher = grammar.getMatcher(input);
+        scan(0, 0, 0, 0);
+    }
+    
+    public Grammar getGrammar() {
+        return grammar;
+    }
+    
+    public String getTokenRule() {
+        return tokenRuleName;
+    }
+    
+    public String getInput() {
+        return matcher.getInput();
+    }
+    
+    /**
+     * Returns the tokens of the current input. {@link TokenArray#getKinds()} returns all kinds a token can
+     * have.
+     */
+    public TokenArray getTokens() {
+        if (tokens == null) {
+            tokens = new TokenArray(getInput(), kinds, starts, ends, kindIndices, endPosition);
+        }
+        return tokens;
+    }
+    
+    /**
+     * Returns the number of tokens scanned for the last edit (or initially), including the ones that turned
+     * out to be unchanged.
+     */
+    public int getLastScannedTokens() {
+        return lastScannedTokens;
+    }
+    
+    /**
+     * Replaces the chars from {@code startIndex} (inclusive) to {@code endIndex} (exclusive) of the input with
+     * {@code str} and rescans the tokens affected by that.
+     *
+     * @return The tokens of the new input.
+     */
+    public TokenArray replaceInputRange(int startIndex, int endIndex, String str) {
+        // Validates the range
+        matcher.replaceInputRange(startIndex, endIndex, str);
+        int shift = str.length() - (endIndex - startIndex);
+        
+        // Same criterion as for memo records, see PositionInfo#clearObsoleteEntries
+        int firstAffected = 0;
+        while (firstAffected < starts.length && examinedEnds[firstAffected] < startIndex) {
+            firstAffected++;
+        }
+        int restartPosition = firstAffected == 0 ? 0 : ends[firstAffected - 1];
+        scan(firstAffected, restartPosition, startIndex + str.length(), shift);
+        return getTokens();
+    }
+    
+    /**
+     * Replaces the tokens from {@code firstToken} on by scanning from {@code position}. Once a token ends at
+     * or behind {@code resyncPosition} where a previous token ended (moved by {@code shift}), the previous
+     * tokens after it are kept, since scanning them only examined the input after that position.
+     */
+    private void scan(int firstToken, int position, int resyncPosition, int shift) {
+        Scanner scanner = new Scanner(matcher, tokenApplication);
+        int[] newStarts = new int[16];
+        int[] newEnds = new int[16];
+        int[] newKinds = new int[16];
+        int[] newExaminedEnds = new int[16];
+        int numNewTokens = 0;
+        // Index of the first previous token to keep, if any
+        int keptToken = -1;
+        
+        int inputLength = getInput().length();
+        while (true) {
+            int alternative = scanner.scanToken(position);
+            int start = scanner.getTokenStart();
+            int end = scanner.getPosition();
+            if (alternative < 0 || end == start) {
+                endPosition = start;
+                break;
+            }
+            if (numNewTokens == newStarts.length) {
+                newStarts = Arrays.copyOf(newStarts, numNewTokens * 2);
+                newEnds = Arrays.copyOf(newEnds, numNewTokens * 2);
+                newKinds = Arrays.copyOf(newKinds, numNewTokens * 2);
+                newExaminedEnds = Arrays.copyOf(newExaminedEnds, numNewTokens * 2);
+            }
+            newStarts[numNewTokens] = start;
+            newEnds[numNewTokens] = end;
+            newKinds[numNewTokens] = alternativeKinds[alternative];
+            newExaminedEnds[numNewTokens] = scanner.getExaminedEnd();
+            numNewTokens++;
+            position = end;
+            
+            if (end >= resyncPosition) {
+                int previous = Arrays.binarySearch(ends, firstToken, ends.length, end - shift);
+                if (previous >= 0) {
+                    keptToken = previous + 1;
+                    break;
+                }
+            }
+            if (end == inputLength) {
+                endPosition = end;
+                break;
+            }
+        }
+        lastScannedTokens = numNewTokens;
+        
+        int numKeptTokens = keptToken < 0 ? 0 : starts.length - keptToken;
+        int length = firstToken + numNewTokens + numKeptTokens;
+        starts = splice(starts, firstToken, newStarts, numNewTokens, keptToken, numKeptTokens, shift, length);
+        ends = splice(ends, firstToken, newEnds, numNewTokens, keptToken, numKeptTokens, shift, length);
+        kindIndices = splice(kindIndices, firstToken, newKinds, numNewTokens, keptToken, numKeptTokens, 0, length);
+        examinedEnds = splice(examinedEnds, firstToken, newExaminedEnds, numNewTokens, keptToken, numKeptTokens,
+            shift, length);
+        if (keptToken >= 0) {
+            endPosition += shift;
+        }
+        tokens = null;
+    }
+    
+    /**
+     * Returns the first {@code numPrevious} values of {@code previous}, followed by the first
+     * {@code numNew} values of {@code newValues} and {@code numKept} values of {@code previous} from
+     * {@code kept} on, plus {@code shift}.
+     */
+    private static int[] splice(int[] previous, int numPrevious, int[] newValues, int numNew, int kept,
+                                int numKept, int shift, int length) {
+        int[] result = Arrays.copyOf(previous, length);
+        System.arraycopy(newValues, 0, result, numPrevious, numNew);
+        for (int i = 0; i < numKept; i++) {
+            result[numPrevious + numNew + i] = previous[kept + i] + shift;
+        }
+        return result;
+    }
+    
+    /**
+     * Matches single tokens without constructing nodes.
+     */
+    private class Scanner extends MatchState {
+        private int tokenStart;
+        
+        Scanner(Matcher matcher, Apply tokenApplication) {
+            super(matcher, tokenApplication);
+            recognizing = true;
+        }
+        
+        /**
+         * Scans the token at {@code position}, after spaces if the token rule is syntactic.
+         *
+         * @return The index of the alternative that matched, or -1.
+         */
+        int scanToken(int position) {
+            inputStream.setPosition(position);
+            inputStream.setRightmostExaminedPosition(position);
+            tokenStart = startApplication.isSyntactic() ? skipSpaces() : position;
+            for (int i = 0; i < alternatives.length; i++) {
+                int originalNumBindings = numBindings();
+                boolean succeeded = eval(alternatives[i]);
+                truncateBindings(originalNumBindings);
+                if (succeeded) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        int getTokenStart() {
+            return tokenStart;
+        }
+        
+        int getPosition() {
+            return inputStream.getPosition();
+        }
+        
+        int getExaminedEnd() {
+            return inputStream.getRightmostExaminedPosition();
+        }
+    }
+}
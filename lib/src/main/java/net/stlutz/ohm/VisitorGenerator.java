@@ -0,0 +1,536 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.Alt;
+import net.stlutz.ohm.pexprs.Any;
+import net.stlutz.ohm.pexprs.Apply;
+import net.stlutz.ohm.pexprs.BasePExprVisitor;
+import net.stlutz.ohm.pexprs.CaseInsensitiveTerminal;
+import net.stlutz.ohm.pexprs.CharClass;
+import net.stlutz.ohm.pexprs.End;
+import net.stlutz.ohm.pexprs.Extend;
+import net.stlutz.ohm.pexprs.Iter;
+import net.stlutz.ohm.pexprs.Not;
+import net.stlutz.ohm.pexprs.Opt;
+import net.stlutz.ohm.pexprs.PExpr;
+import net.stlutz.ohm.pexprs.Param;
+import net.stlutz.ohm.pexprs.Plus;
+import net.stlutz.ohm.pexprs.Range;
+import net.stlutz.ohm.pexprs.Star;
+import net.stlutz.ohm.pexprs.Terminal;
+import net.stlutz.ohm.pexprs.UnicodeChar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Generates the Java source of a typed visitor interface for the CST of a grammar. The interface declares
+ * one method per rule, taking exactly the rule's children, and a {@code visit(Node)} method dispatching on
+ * the rule name with a {@code switch}. Unlike {@link Semantics}, implementations need no reflection and
+ * arity mismatches are compile errors.
+ * <p>
+ * Each rule also gets a nested node class, e.g. {@code ExpNode} for rule {@code Exp}, wrapping its
+ * {@link Node}. Children that are applications of such rules are passed as these classes, iterations as
+ * {@code List}s and optionals as {@code Optional}s of their element types. All other children, e.g.
+ * terminals, applications of built-in rules and alternatives of children with different types, are passed
+ * as {@link Node}s.
+ * <p>
+ * Rules of built-in grammars are dispatched to {@code visitNonterminal}, which visits the only
+ * child by default. Terminals and iterations are dispatched to {@code visitTerminal} and
+ * {@code visitIteration}.
+ * <p>
+ * {@link #main(String[])} generates visitors for all grammars in a set of {@code .ohm} files, see the
+ * {@code generateVisitors} task of the build.
+ */
+public final class VisitorGenerator {
+    private static final Set<String> RESERVED_NAMES = Set.of("abstract", "assert", "boolean", "break", "byte",
+        "case", "catch", "char", "class", "const", "continue", "default", "do", "double", "else", "enum",
+        "extends", "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+        "interface", "long", "native", "new", "package", "private", "protected", "public", "return", "short",
+        "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try",
+        "void", "volatile", "while", "true", "false", "null", "_", "node", "children", "visit", "visitTerminal",
+        "visitIteration", "visitNonterminal", "toList", "toOptional");
+    
+    private final Grammar grammar;
+    private final String packageName;
+    private final StringBuilder sb = new StringBuilder();
+    
+    private VisitorGenerator(Grammar grammar, String packageName) {
+        super();
+        this.grammar = grammar;
+        this.packageName = packageName;
+    }
+    
+    /**
+     * Returns the source of the visitor interface for {@code grammar}, declared in package
+     * {@code packageName} (or the unnamed package if it is empty).
+     */
+    public static String generate(Grammar grammar, String packageName) {
+        return new VisitorGenerator(grammar, packageName).generate();
+    }
+    
+    public static String getVisitorName(Grammar grammar) {
+        return grammar.getName() + "Visitor";
+    }
+    
+    /**
+     * Usage: {@code VisitorGenerator <output directory> <package name> <grammar file>...}
+     * <p>
+     * Grammar files are read in order and may refer to grammars of earlier files as super grammars.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: VisitorGenerator <output directory> <package name> <grammar file>...");
+            System.exit(1);
+        }
+        Path outputDirectory = Path.of(args[0]);
+        String packageName = args[1];
+        if (!packageName.isEmpty()) {
+            outputDirectory = outputDirectory.resolve(packageName.replace('.', '/'));
+        }
+        Files.createDirectories(outputDirectory);
+        
+        Namespace namespace = new Namespace();
+        for (int i = 2; i < args.length; i++) {
+            String source = Files.readString(Path.of(args[i]));
+            for (Grammar grammar : Ohm.grammars(source, namespace)) {
+                Path file = outputDirectory.resolve(getVisitorName(grammar) + ".java");
+                Files.writeString(file, generate(grammar, packageName));
+            }
+        }
+    }
+    
+    private String generate() {
+        Map<String, Rule> rules = getVisitedRules(grammar);
+        Map<String, String> classNames = getNodeClassNames(rules.keySet());
+        String visitorName = getVisitorName(grammar);
+        
+        sb.append("// Generated by ").append(VisitorGenerator.class.getName()).append(" from grammar ")
+            .append(grammar.getName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n");
+        }
+        sb.append("\n");
+        sb.append("import ").append(Node.class.getName()).append(";\n");
+        sb.append("import ").append(OhmException.class.getName()).append(";\n");
+        sb.append("\n");
+        sb.append("import java.util.ArrayList;\n");
+        sb.append("import java.util.List;\n");
+        sb.append("import java.util.Optional;\n");
+        sb.append("import java.util.function.Function;\n");
+        sb.append("\n");
+        sb.append("/**\n");
+        sb.append(" * Typed visitor for the CST of grammar {@code ").append(grammar.getName()).append("}.\n");
+        sb.append(" */\n");
+        sb.append("public interface ").append(visitorName).append("<T> {\n");
+        
+        Map<String, List<ChildType>> parameterTypes = new HashMap<>();
+        for (Rule rule : rules.values()) {
+            List<String> names = getParameterNames(rule);
+            List<ChildType> types = getParameterTypes(rule, classNames);
+            parameterTypes.put(rule.getName(), types);
+            sb.append("    T ").append(getMethodName(rule.getName())).append("(");
+            for (int i = 0; i < names.size(); i++) {
+                sb.append(i > 0 ? ", " : "").append(types.get(i).getJavaType()).append(" ").append(names.get(i));
+            }
+            sb.append(");\n");
+            sb.append("\n");
+        }
+        
+        sb.append("""
+                default T visitNonterminal(Node node) {
+                    if (node.numChildren() == 1) {
+                        return visit(node.childAt(0));
+                    }
+                    throw new OhmException("Missing visitor method for rule '%s'".formatted(node.ctorName()));
+                }
+            
+                default T visitTerminal(Node node) {
+                    throw new OhmException("Missing visitor method for terminals");
+                }
+            
+                default T visitIteration(Node node) {
+                    throw new OhmException("Missing visitor method for iterations");
+                }
+            
+                default T visit(Node node) {
+                    if (node.isTerminal()) {
+                        return visitTerminal(node);
+                    } else if (node.isIteration()) {
+                        return visitIteration(node);
+                    }
+            
+                    Node[] children = node.getChildren();
+                    return switch (node.ctorName()) {
+            """);
+        for (Rule rule : rules.values()) {
+            sb.append("            case \"").append(rule.getName()).append("\" -> ")
+                .append(getMethodName(rule.getName())).append("(");
+            List<ChildType> types = parameterTypes.get(rule.getName());
+            for (int i = 0; i < types.size(); i++) {
+                sb.append(i > 0 ? ", " : "").append(types.get(i).convert("children[" + i + "]", 0));
+            }
+            sb.append(");\n");
+        }
+        sb.append("""
+                        default -> visitNonterminal(node);
+                    };
+                }
+            
+                private static <N> List<N> toList(Node iteration, Function<Node, N> type) {
+                    List<N> result = new ArrayList<>(iteration.numChildren());
+                    for (Node child : iteration.getChildren()) {
+                        result.add(type.apply(child));
+                    }
+                    return result;
+                }
+            
+                private static <N> Optional<N> toOptional(Node iteration, Function<Node, N> type) {
+                    return iteration.hasChildren() ? Optional.of(type.apply(iteration.childAt(0))) : Optional.empty();
+                }
+            """);
+        
+        for (Rule rule : rules.values()) {
+            String className = classNames.get(rule.getName());
+            sb.append("\n");
+            sb.append("    /**\n");
+            sb.append("     * A node of rule {@code ").append(rule.getName()).append("}.\n");
+            sb.append("     */\n");
+            sb.append("    final class ").append(className).append(" {\n");
+            sb.append("        private final Node node;\n");
+            sb.append("\n");
+            sb.append("        private ").append(className).append("(Node node) {\n");
+            sb.append("            this.node = node;\n");
+            sb.append("        }\n");
+            sb.append("\n");
+            sb.append("        public Node getNode() {\n");
+            sb.append("            return node;\n");
+            sb.append("        }\n");
+            sb.append("\n");
+            sb.append("        public <R> R accept(").append(visitorName).append("<R> visitor) {\n");
+            sb.append("            return visitor.visit(node);\n");
+            sb.append("        }\n");
+            sb.append("    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+    
+    /**
+     * Returns the rules of {@code grammar} that get a visitor method, i.e. all rules except those of built-in
+     * grammars (including overrides and extensions of them), sorted by name.
+     */
+    static Map<String, Rule> getVisitedRules(Grammar grammar) {
+        Grammar builtIn = grammar;
+        while (builtIn != null && !builtIn.isBuiltIn()) {
+            builtIn = builtIn.getSuperGrammar();
+        }
+        
+        Map<String, Rule> result = new TreeMap<>();
+        for (Rule rule : grammar.getRules().values()) {
+            if (builtIn == null || !builtIn.hasRule(rule.getName())) {
+                result.put(rule.getName(), rule);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the names of the node classes of {@code ruleNames}, e.g. {@code IdentNode} for {@code ident}.
+     * Names that would clash get a {@code _} appended.
+     */
+    static Map<String, String> getNodeClassNames(Set<String> ruleNames) {
+        Map<String, String> result = new HashMap<>();
+        Set<String> used = new HashSet<>();
+        for (String ruleName : new TreeSet<>(ruleNames)) {
+            String className = Character.toUpperCase(ruleName.charAt(0)) + ruleName.substring(1) + "Node";
+            while (!used.add(className)) {
+                className += "_";
+            }
+            result.put(ruleName, className);
+        }
+        return result;
+    }
+    
+    static String getMethodName(String ruleName) {
+        return RESERVED_NAMES.contains(ruleName) ? ruleName + "_" : ruleName;
+    }
+    
+    /**
+     * Returns one parameter name per child of {@code rule}, derived from the expressions producing them.
+     * Falls back to {@code child0}, {@code child1}, ... if they cannot be determined.
+     */
+    static List<String> getParameterNames(Rule rule) {
+        ChildNames childNames = new ChildNames(rule.getFormals(), Map.of());
+        childNames.visit(rule.getBody());
+        List<String> names = childNames.names;
+        if (names.size() != rule.getArity()) {
+            names.clear();
+            for (int i = 0; i < rule.getArity(); i++) {
+                names.add("child" + i);
+            }
+            return names;
+        }
+        
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (String name : names) {
+            occurrences.merge(name, 1, Integer::sum);
+        }
+        Map<String, Integer> seen = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (occurrences.get(name) > 1) {
+                name += seen.merge(name, 1, Integer::sum);
+            }
+            names.set(i, RESERVED_NAMES.contains(name) ? name + "_" : name);
+        }
+        return names;
+    }
+    
+    /**
+     * Returns the type of each child of {@code rule}, given the node classes of the visited rules. Falls back
+     * to {@link Node} if they cannot be determined.
+     */
+    static List<ChildType> getParameterTypes(Rule rule, Map<String, String> classNames) {
+        ChildNames childNames = new ChildNames(rule.getFormals(), classNames);
+        childNames.visit(rule.getBody());
+        List<ChildType> types = childNames.types;
+        if (types.size() != rule.getArity()) {
+            types.clear();
+            for (int i = 0; i < rule.getArity(); i++) {
+                types.add(ChildType.NODE);
+            }
+        }
+        return types;
+    }
+    
+    /**
+     * The Java type of a child parameter, and how to convert the child's {@link Node} to it.
+     */
+    static final class ChildType {
+        static final ChildType NODE = new ChildType(null, null, null);
+        
+        // The node class of a rule, or null
+        private final String className;
+        // For iterations, the helper converting them and the type of their elements, otherwise null
+        private final String iterationHelper;
+        private final ChildType elementType;
+        
+        private ChildType(String className, String iterationHelper, ChildType elementType) {
+            super();
+            this.className = className;
+            this.iterationHelper = iterationHelper;
+            this.elementType = elementType;
+        }
+        
+        static ChildType ofRule(String className) {
+            return new ChildType(className, null, null);
+        }
+        
+        static ChildType ofIteration(boolean optional, ChildType elementType) {
+            return new ChildType(null, optional ? "toOptional" : "toList", elementType);
+        }
+        
+        String getJavaType() {
+            if (elementType != null) {
+                String wrapper = iterationHelper.equals("toOptional") ? "Optional" : "List";
+                return wrapper + "<" + elementType.getJavaType() + ">";
+            }
+            return className == null ? "Node" : className;
+        }
+        
+        /**
+         * Returns an expression converting the node {@code expr} to this type. Lambdas nested in it use
+         * {@code depth} to name their parameter.
+         */
+        String convert(String expr, int depth) {
+            if (elementType != null) {
+                return iterationHelper + "(" + expr + ", " + elementType.toFunction(depth) + ")";
+            }
+            return className == null ? expr : "new " + className + "(" + expr + ")";
+        }
+        
+        private String toFunction(int depth) {
+            if (elementType != null) {
+                String parameter = "n" + depth;
+                return parameter + " -> " + convert(parameter, depth + 1);
+            }
+            return className == null ? "Function.identity()" : className + "::new";
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ChildType other && Objects.equals(className, other.className)
+                && Objects.equals(iterationHelper, other.iterationHelper)
+                && Objects.equals(elementType, other.elementType);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(className, iterationHelper, elementType);
+        }
+        
+        @Override
+        public String toString() {
+            return getJavaType();
+        }
+    }
+    
+    private static class ChildNames extends BasePExprVisitor<Void> {
+        private final List<String> formals;
+        private final Map<String, String> classNames;
+        private final List<String> names = new ArrayList<>();
+        private final List<ChildType> types = new ArrayList<>();
+        private String suffix = "";
+        
+        ChildNames(List<String> formals, Map<String, String> classNames) {
+            super();
+            this.formals = formals;
+            this.classNames = classNames;
+        }
+        
+        private void add(String name) {
+            add(name, ChildType.NODE);
+        }
+        
+        private void add(String name, ChildType type) {
+            names.add(name + suffix);
+            types.add(type);
+        }
+        
+        private Void visitIteration(Iter expr, String iterationSuffix) {
+            String outerSuffix = suffix;
+            suffix = iterationSuffix + outerSuffix;
+            int first = types.size();
+            visitIterChild(expr);
+            for (int i = first; i < types.size(); i++) {
+                types.set(i, ChildType.ofIteration(expr instanceof Opt, types.get(i)));
+            }
+            suffix = outerSuffix;
+            return null;
+        }
+        
+        @Override
+        public Void visitAlt(Alt expr) {
+            PExpr[] terms = expr.getTerms();
+            if (terms.length == 0) {
+                return null;
+            }
+            // All terms have the same arity, so the names of the first one are as good as any
+            int first = names.size();
+            visit(terms[0]);
+            List<String> termNames = new ArrayList<>(names.subList(first, names.size()));
+            List<ChildType> termTypes = new ArrayList<>(types.subList(first, types.size()));
+            for (int i = 1; i < terms.length; i++) {
+                names.subList(first, names.size()).clear();
+                types.subList(first, types.size()).clear();
+                visit(terms[i]);
+                List<ChildType> otherTypes = types.subList(first, types.size());
+                for (int j = 0; j < termTypes.size(); j++) {
+                    if (j >= otherTypes.size() || !termTypes.get(j).equals(otherTypes.get(j))) {
+                        termTypes.set(j, ChildType.NODE);
+                    }
+                }
+            }
+            names.subList(first, names.size()).clear();
+            types.subList(first, types.size()).clear();
+            names.addAll(termNames);
+            types.addAll(termTypes);
+            return null;
+        }
+        
+        @Override
+        public Void visitExtend(Extend expr) {
+            return visitAlt(expr);
+        }
+        
+        @Override
+        public Void visitNot(Not expr) {
+            return null;
+        }
+        
+        @Override
+        public Void visitOpt(Opt expr) {
+            return visitIteration(expr, "Opt");
+        }
+        
+        @Override
+        public Void visitPlus(Plus expr) {
+            return visitIteration(expr, "Iter");
+        }
+        
+        @Override
+        public Void visitStar(Star expr) {
+            return visitIteration(expr, "Iter");
+        }
+        
+        @Override
+        public Void visitApply(Apply expr) {
+            String ruleName = expr.getRuleName();
+            String className = classNames.get(ruleName);
+            add(Character.toLowerCase(ruleName.charAt(0)) + ruleName.substring(1),
+                className == null ? ChildType.NODE : ChildType.ofRule(className));
+            return null;
+        }
+        
+        @Override
+        public Void visitParam(Param expr) {
+            add(expr.index < formals.size() ? formals.get(expr.index) : "param");
+            return null;
+        }
+        
+        @Override
+        public Void visitAny(Any expr) {
+            add("any");
+            return null;
+        }
+        
+        @Override
+        public Void visitEnd(End expr) {
+            add("end");
+            return null;
+        }
+        
+        @Override
+        public Void visitTerminal(Terminal expr) {
+            add("terminal");
+            return null;
+        }
+        
+        @Override
+        public Void visitCaseInsensitiveTerminal(CaseInsensitiveTerminal expr) {
+            add("terminal");
+            return null;
+        }
+        
+        @Override
+        public Void visitRange(Range expr) {
+            add("terminal");
+            return null;
+        }
+        
+        @Override
+        public Void visitCharClass(CharClass expr) {
+            if (expr.getOriginal() != null) {
+                return visit(expr.getOriginal());
+            }
+            add("terminal");
+            return null;
+        }
+        
+        @Override
+        public Void visitUnicodeChar(UnicodeChar expr) {
+            add("terminal");
+            return null;
+        }
+    }
+}
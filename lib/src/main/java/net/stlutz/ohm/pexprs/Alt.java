@@ -19,6 +19,26 @@ public class Alt extends Aggregation {
         return terms.length > 0 ? terms[0].getArity() : 0;
     }
     
+    @Override
+    public boolean isNullable() {
+        for (PExpr term : terms) {
+            if (term.isNullable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        for (PExpr term : terms) {
+            if (term.mightStartWith(codePoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     @Override
     public <T> T accept(PExprVisitor<T> visitor) {
         return visitor.visitAlt(this);
@@ -27,7 +47,7 @@ public class Alt extends Aggregation {
     @Override
     public boolean eval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
         for (PExpr term : terms) {
-            if (evalContext.eval(term)) {
+            if (evalContext.mightSucceed(term) && evalContext.eval(term)) {
                 return true;
             }
         }
@@ -19,6 +19,11 @@ public class Any extends Prim {
         return visitor.visitAny(this);
     }
     
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return codePoint >= 0;
+    }
+    
     @Override
     public boolean eval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
         if (inputStream.atEnd()) {
@@ -10,6 +10,11 @@ import net.stlutz.ohm.Rule;
 import net.stlutz.ohm.Util;
 
 public class Apply extends PExpr {
+    /**
+     * Stands in for the node of a successful application while recognizing. Never memoized.
+     */
+    private static final ParseNode RECOGNIZED = new NonterminalNode(0, "_recognized", new ParseNode[0], new int[0]);
+    
     private final String ruleName;
     private final PExpr[] args;
     private Rule rule;
@@ -58,6 +63,14 @@ public class Apply extends PExpr {
         this.rule = rule;
     }
     
+    /**
+     * Returns whether this application has to take part in cycle detection, see
+     * {@link Rule#isLeftRecursive()}.
+     */
+    public boolean mightBeLeftRecursive() {
+        return rule == null || rule.isLeftRecursive();
+    }
+    
     @Override
     public boolean allowsSkippingPrecedingSpace() {
         return true;
@@ -68,6 +81,12 @@ public class Apply extends PExpr {
         return 1;
     }
     
+    @Override
+    public boolean isNullable() {
+        // Unresolved rules are resolved at match time and might be nullable
+        return rule == null || rule.isNullable();
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         if (args.length == 0) {
@@ -93,9 +112,10 @@ public class Apply extends PExpr {
         Apply app = (Apply) substituteParams(actuals);
         
         PositionInfo posInfo = evalContext.getCurrentPositionInfo();
-        if (posInfo.isActive(app)) {
+        int appId = app.mightBeLeftRecursive() ? evalContext.getApplicationId(app) : -1;
+        if (appId >= 0 && posInfo.isActive(appId)) {
             // This rule is already active at this position, i.e. it's left-recursive
-            return app.handleCycle(evalContext, inputStream);
+            return app.handleCycle(evalContext, inputStream, appId);
         }
         
         String memoKey = app.toMemoKey();
@@ -105,33 +125,34 @@ public class Apply extends PExpr {
             if (evalContext.hasNecessaryInfo(memoRec)) {
                 return evalContext.useMemoizedResult(inputStream.getPosition(), memoRec);
             }
-            posInfo.forget(memoKey);
+            evalContext.forget(posInfo, app);
         }
         
-        return app.reallyEval(evalContext, inputStream, inputStream.getPosition());
+        return app.reallyEval(evalContext, inputStream, inputStream.getPosition(), appId);
     }
     
-    private boolean handleCycle(EvalContext evalContext, InputStream inputStream) {
+    private boolean handleCycle(EvalContext evalContext, InputStream inputStream, int appId) {
         PositionInfo posInfo = evalContext.getCurrentPositionInfo();
         MemoizationRecord currentLeftRecursion = posInfo.getCurrentLeftRecursion();
         String memoKey = toMemoKey();
         MemoizationRecord memoRec = posInfo.remember(memoKey);
         
-        if (currentLeftRecursion != null
-            && currentLeftRecursion.getHeadApplication().toMemoKey().equals(memoKey)) {
+        if (currentLeftRecursion != null && currentLeftRecursion.getHeadApplicationId() == appId) {
             // We already know about this left recursion, but it's possible there are
             // "involved applications" that we don't already know about, so...
-            memoRec.updateInvolvedApplicationMemoKeys();
+            posInfo.updateInvolvedApplications(memoRec);
         } else if (memoRec == null) {
             // New left recursion detected! Memoize a failure to try to get a seed parse.
-            memoRec = posInfo.memoize(memoKey);
-            posInfo.startLeftRecursion(this, memoRec);
+            memoRec = new MemoizationRecord();
+            evalContext.memoize(posInfo, this, memoRec);
+            posInfo.startLeftRecursion(this, appId, memoRec);
         }
         
         return evalContext.useMemoizedResult(inputStream.getPosition(), memoRec);
     }
     
-    private boolean reallyEval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
+    private boolean reallyEval(EvalContext evalContext, InputStream inputStream, int originalPosition,
+                               int appId) {
         PositionInfo origPosInfo = evalContext.getCurrentPositionInfo();
         if (rule == null) {
             // TODO: Can we get around this for all cases?
@@ -142,12 +163,16 @@ public class Apply extends PExpr {
         }
         
         evalContext.enterApplication(origPosInfo, this);
+        if (appId >= 0) {
+            origPosInfo.enter(appId);
+        }
+        // Track the input examined by this application separately, so that it can be memoized
+        int origRightmostExaminedPosition = inputStream.getRightmostExaminedPosition();
+        inputStream.setRightmostExaminedPosition(originalPosition);
         
         ParseNode nodeOrNull = evalOnce(rule.getBody(), evalContext);
         MemoizationRecord currentLR = origPosInfo.getCurrentLeftRecursion();
-        String memoKey = toMemoKey();
-        boolean isHeadOfLeftRecursion =
-            (currentLR != null) && (currentLR.getHeadApplication().toMemoKey().equals(memoKey));
+        boolean isHeadOfLeftRecursion = (currentLR != null) && (currentLR.getHeadApplicationId() == appId);
         
         MemoizationRecord memoRec = null;
         if (isHeadOfLeftRecursion) {
@@ -155,13 +180,17 @@ public class Apply extends PExpr {
                 growSeedResult(rule.getBody(), evalContext, originalPosition, currentLR, nodeOrNull);
             origPosInfo.endLeftRecursion();
             memoRec = currentLR;
-            origPosInfo.memoize(memoKey, memoRec);
-        } else if ((currentLR == null) || (!currentLR.isInvolved(memoKey))) {
+            memoRec.setExaminedLength(inputStream.getRightmostExaminedPosition() - originalPosition);
+            evalContext.memoize(origPosInfo, this, memoRec);
+        } else if ((currentLR == null) || (appId < 0) || (!currentLR.isInvolved(appId))) {
             // This application is not involved in left recursion, so it's ok to memoize it
             memoRec = new MemoizationRecord();
-            memoRec.setMatchLength(inputStream.getPosition() - originalPosition);
-            memoRec.setValue(nodeOrNull);
-            memoRec = origPosInfo.memoize(memoKey, memoRec);
+            memoRec.setExaminedLength(inputStream.getRightmostExaminedPosition() - originalPosition);
+            if (nodeOrNull != null) {
+                memoRec.setMatchLength(inputStream.getPosition() - originalPosition);
+                memoRec.setValue(toMemoValue(nodeOrNull));
+            }
+            evalContext.memoize(origPosInfo, this, memoRec);
         }
         boolean succeeded = nodeOrNull != null;
         
@@ -174,7 +203,11 @@ public class Apply extends PExpr {
             }
         }
         
-        
+        inputStream.setRightmostExaminedPosition(
+            Math.max(inputStream.getRightmostExaminedPosition(), origRightmostExaminedPosition));
+        if (appId >= 0) {
+            origPosInfo.exit();
+        }
         evalContext.exitApplication(origPosInfo, nodeOrNull);
         
         return succeeded;
@@ -186,10 +219,16 @@ public class Apply extends PExpr {
         
         if (evalContext.eval(body)) {
             int arity = body.getArity();
+            if (evalContext.isRecognizing() || evalContext.isCommitted(arity)) {
+                evalContext.discardLastBindings(arity);
+                return RECOGNIZED;
+            }
             ParseNode[] bindings = evalContext.spliceLastBindings(arity);
             int[] offsets = evalContext.spliceLastBindingOffsets(arity);
             int matchLength = inputStream.getPosition() - originalPosition;
-            return new NonterminalNode(matchLength, ruleName, bindings, offsets);
+            ParseNode node = evalContext.intern(new NonterminalNode(matchLength, ruleName, bindings, offsets));
+            evalContext.nodeConstructed(originalPosition, node);
+            return node;
         }
         
         return null;
@@ -202,16 +241,22 @@ public class Apply extends PExpr {
         }
         
         InputStream inputStream = evalContext.getInputStream();
+        ParseNode value;
         
         do {
             lrMemoRec.setMatchLength(inputStream.getPosition() - originalPosition);
-            lrMemoRec.setValue(newValue);
+            lrMemoRec.setValue(toMemoValue(newValue));
+            value = newValue;
             inputStream.setPosition(originalPosition);
             newValue = evalOnce(body, evalContext);
         } while (inputStream.getPosition() - originalPosition > lrMemoRec.getMatchLength());
         
         inputStream.setPosition(originalPosition + lrMemoRec.getMatchLength());
-        return lrMemoRec.getValue();
+        return value;
+    }
+    
+    private static ParseNode toMemoValue(ParseNode node) {
+        return node == RECOGNIZED ? null : node;
     }
     
     public boolean isSyntactic() {
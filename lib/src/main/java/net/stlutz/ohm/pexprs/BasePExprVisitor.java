@@ -103,6 +103,11 @@ public class BasePExprVisitor<T> implements PExprVisitor<T> {
         return null;
     }
     
+    @Override
+    public T visitCharClass(CharClass expr) {
+        return null;
+    }
+    
     @Override
     public T visitEnd(End expr) {
         return null;
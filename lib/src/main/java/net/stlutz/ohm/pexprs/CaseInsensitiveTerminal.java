@@ -7,12 +7,20 @@ import net.stlutz.ohm.TerminalNode;
 public class CaseInsensitiveTerminal extends PExpr {
     
     private final PExpr param;
+    /**
+     * The case-folded form of the terminal's string, computed on first use.
+     */
+    private int[] foldedString;
     
     public CaseInsensitiveTerminal(PExpr param) {
         super();
         this.param = param;
     }
     
+    public PExpr getParam() {
+        return param;
+    }
+    
     @Override
     public boolean allowsSkippingPrecedingSpace() {
         return true;
@@ -23,6 +31,11 @@ public class CaseInsensitiveTerminal extends PExpr {
         return 1;
     }
     
+    @Override
+    public boolean isNullable() {
+        return param.isNullable();
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return new CaseInsensitiveTerminal(param.substituteParams(actuals));
@@ -41,7 +54,11 @@ public class CaseInsensitiveTerminal extends PExpr {
         }
         String matchStr = terminal.getString();
         
-        if (inputStream.matches(matchStr, true)) {
+        if (foldedString == null) {
+            foldedString = InputStream.foldCase(matchStr);
+        }
+        
+        if (inputStream.matchesIgnoringCase(matchStr, foldedString)) {
             inputStream.advance(matchStr.length());
             evalContext.pushBinding(TerminalNode.get(matchStr.length()), originalPosition);
             return true;
@@ -0,0 +1,355 @@
+package net.stlutz.ohm.pexprs;
+
+import net.stlutz.ohm.InputStream;
+import net.stlutz.ohm.NonterminalNode;
+import net.stlutz.ohm.ParseNode;
+import net.stlutz.ohm.Rule;
+import net.stlutz.ohm.TerminalNode;
+import net.stlutz.ohm.Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set of code points that is matched in a single step. Replaces ranges, Unicode categories, single-character
+ * terminals and alternations of these, including applications of lexical rules whose bodies are character
+ * classes themselves. Evaluation examines the same input and produces the same nodes as the original
+ * expression would.
+ */
+public class CharClass extends Prim {
+    private static final int MAX_INLINING_DEPTH = 8;
+    
+    /**
+     * BMP lookup tables, shared by all classes with the same ranges and categories.
+     */
+    private static final Map<String, long[]> bmpTables = new ConcurrentHashMap<>();
+    
+    private final PExpr original;
+    /**
+     * The alternatives of the original expression, in order.
+     */
+    private final Member[] members;
+    private final long asciiLow;
+    private final long asciiHigh;
+    /**
+     * Pairs of inclusive code point bounds, sorted and merged.
+     */
+    private final int[] ranges;
+    /**
+     * Bitset of Unicode categories, see {@link Character#getType(int)}.
+     */
+    private final int categories;
+    /**
+     * Single-character terminals don't examine anything at the end of the input and only examine the first
+     * char of a mismatching code point.
+     */
+    private final boolean terminalsOnly;
+    private final boolean hasApplications;
+    private volatile long[] bmp;
+    
+    private CharClass(PExpr original, Member[] members) {
+        this.original = original;
+        this.members = members;
+        
+        List<int[]> allRanges = new ArrayList<>();
+        int allCategories = 0;
+        boolean allTerminals = true;
+        boolean anyApplications = false;
+        for (Member member : members) {
+            allRanges.add(member.ranges);
+            allCategories |= member.categories;
+            allTerminals &= member.isTerminal;
+            anyApplications |= member.ruleNames.length > 0;
+        }
+        ranges = mergeRanges(allRanges);
+        categories = allCategories;
+        terminalsOnly = allTerminals;
+        hasApplications = anyApplications;
+        
+        long low = 0;
+        long high = 0;
+        for (int codePoint = 0; codePoint < 128; codePoint++) {
+            if (matchesSlowly(codePoint)) {
+                if (codePoint < 64) {
+                    low |= 1L << codePoint;
+                } else {
+                    high |= 1L << (codePoint - 64);
+                }
+            }
+        }
+        asciiLow = low;
+        asciiHigh = high;
+    }
+    
+    /**
+     * Returns a character class equivalent to {@code expr}, or {@code null} if {@code expr} is not a character
+     * class. Applications must already be bound to their rules in order to be inlined.
+     */
+    public static CharClass of(PExpr expr) {
+        if (expr instanceof CharClass charClass) {
+            return charClass;
+        }
+        List<Member> members = new ArrayList<>();
+        if (!collectMembers(expr, new String[0], members, new HashSet<>(), 0)) {
+            return null;
+        }
+        return new CharClass(expr, members.toArray(new Member[0]));
+    }
+    
+    private static boolean collectMembers(PExpr expr, String[] ruleNames, List<Member> members,
+                                          Set<Rule> visiting, int depth) {
+        if (expr instanceof CharClass charClass) {
+            for (Member member : charClass.members) {
+                members.add(member.within(ruleNames));
+            }
+            return true;
+        } else if (expr instanceof Range range) {
+            members.add(new Member(new int[]{range.from, range.to}, 0, false, ruleNames));
+            return true;
+        } else if (expr instanceof Terminal terminal) {
+            String str = terminal.getString();
+            if (str.isEmpty() || str.length() != Character.charCount(str.codePointAt(0))) {
+                return false;
+            }
+            int codePoint = str.codePointAt(0);
+            members.add(new Member(new int[]{codePoint, codePoint}, 0, true, ruleNames));
+            return true;
+        } else if (expr instanceof UnicodeChar unicodeChar) {
+            members.add(new Member(new int[0], unicodeChar.getCategories(), false, ruleNames));
+            return true;
+        } else if (expr instanceof Alt alt) {
+            if (alt.terms.length == 0) {
+                return false;
+            }
+            for (PExpr term : alt.terms) {
+                if (!collectMembers(term, ruleNames, members, visiting, depth)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (expr instanceof Seq seq && seq.terms.length == 1) {
+            return collectMembers(seq.terms[0], ruleNames, members, visiting, depth);
+        } else if (expr instanceof Apply app) {
+            Rule rule = app.getRule();
+            if (rule == null || app.getArgs().length > 0 || Util.isSyntactic(app.getRuleName())
+                || depth >= MAX_INLINING_DEPTH || !visiting.add(rule)) {
+                return false;
+            }
+            String[] innerRuleNames = Arrays.copyOf(ruleNames, ruleNames.length + 1);
+            innerRuleNames[ruleNames.length] = app.getRuleName();
+            boolean result = collectMembers(rule.getBody(), innerRuleNames, members, visiting, depth + 1);
+            visiting.remove(rule);
+            return result;
+        }
+        return false;
+    }
+    
+    private static int[] mergeRanges(List<int[]> rangeLists) {
+        List<int[]> pairs = new ArrayList<>();
+        for (int[] rangeList : rangeLists) {
+            for (int i = 0; i < rangeList.length; i += 2) {
+                pairs.add(new int[]{rangeList[i], rangeList[i + 1]});
+            }
+        }
+        pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+        
+        int[] result = new int[pairs.size() * 2];
+        int length = 0;
+        for (int[] pair : pairs) {
+            if (length > 0 && pair[0] <= result[length - 1] + 1) {
+                result[length - 1] = Math.max(result[length - 1], pair[1]);
+            } else {
+                result[length++] = pair[0];
+                result[length++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+    
+    private static boolean inRanges(int[] ranges, int codePoint) {
+        // Binary search for the last pair starting at or before codePoint
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (ranges[mid * 2] <= codePoint) {
+                if (codePoint <= ranges[mid * 2 + 1]) {
+                    return true;
+                }
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean inCategories(int categories, int codePoint) {
+        return categories != 0 && ((categories >> Character.getType(codePoint)) & 1) != 0;
+    }
+    
+    private boolean matchesSlowly(int codePoint) {
+        return inRanges(ranges, codePoint) || inCategories(categories, codePoint);
+    }
+    
+    public boolean matches(int codePoint) {
+        if (codePoint < 64) {
+            return ((asciiLow >>> codePoint) & 1) != 0;
+        } else if (codePoint < 128) {
+            return ((asciiHigh >>> (codePoint - 64)) & 1) != 0;
+        } else if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return ((getBmpTable()[codePoint >>> 6] >>> (codePoint & 63)) & 1) != 0;
+        }
+        return matchesSlowly(codePoint);
+    }
+    
+    private long[] getBmpTable() {
+        long[] result = bmp;
+        if (result == null) {
+            String key = categories + ":" + Arrays.toString(ranges);
+            result = bmpTables.computeIfAbsent(key, k -> {
+                long[] table = new long[Character.MIN_SUPPLEMENTARY_CODE_POINT / 64];
+                for (int codePoint = 0; codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT; codePoint++) {
+                    if (matchesSlowly(codePoint)) {
+                        table[codePoint >>> 6] |= 1L << (codePoint & 63);
+                    }
+                }
+                return table;
+            });
+            bmp = result;
+        }
+        return result;
+    }
+    
+    /**
+     * Returns {@code true} if matching produces plain terminal nodes, i.e. no rules were inlined.
+     */
+    public boolean producesTerminals() {
+        return !hasApplications;
+    }
+    
+    public PExpr getOriginal() {
+        return original;
+    }
+    
+    @Override
+    public <T> T accept(PExprVisitor<T> visitor) {
+        return visitor.visitCharClass(this);
+    }
+    
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return codePoint >= 0 && matches(codePoint);
+    }
+    
+    @Override
+    public boolean eval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
+        int codePoint = inputStream.peekCodePoint();
+        if (codePoint < 0 || !matches(codePoint)) {
+            examineMismatch(inputStream);
+            evalContext.processFailure(originalPosition, this);
+            return false;
+        }
+        
+        int charCount = Character.charCount(codePoint);
+        inputStream.examine(charCount);
+        inputStream.advance(charCount);
+        if (!hasApplications) {
+            evalContext.pushBinding(TerminalNode.get(charCount), originalPosition);
+            return true;
+        }
+        ParseNode node = getMember(codePoint).getNode(charCount);
+        if (!evalContext.isRecognizing()) {
+            // The nodes of the inlined applications, as Apply would have reported them
+            for (ParseNode nested = node; nested.isNonterminal(); nested = nested.getChildren()[0]) {
+                evalContext.nodeConstructed(originalPosition, nested);
+            }
+        }
+        evalContext.pushBinding(node, originalPosition);
+        return true;
+    }
+    
+    /**
+     * Returns the number of chars the original expression examines when failing on {@code codePoint}, which
+     * is -1 at the end of the input.
+     */
+    public int getMismatchExaminedLength(int codePoint) {
+        if (codePoint < 0) {
+            return terminalsOnly ? 0 : 1;
+        }
+        return terminalsOnly ? 1 : Character.charCount(codePoint);
+    }
+    
+    void examineMismatch(InputStream inputStream) {
+        inputStream.examine(getMismatchExaminedLength(inputStream.peekCodePoint()));
+    }
+    
+    private Member getMember(int codePoint) {
+        for (Member member : members) {
+            if (member.matches(codePoint)) {
+                return member;
+            }
+        }
+        throw new IllegalStateException("No member matches a code point of the class");
+    }
+    
+    @Override
+    public void toFailureDescription(StringBuilder sb) {
+        original.toFailureDescription(sb);
+    }
+    
+    @Override
+    public void toString(StringBuilder sb) {
+        original.toString(sb);
+    }
+    
+    /**
+     * An alternative of the original expression, possibly nested in applications of the given rules.
+     */
+    private static class Member {
+        final int[] ranges;
+        final int categories;
+        final boolean isTerminal;
+        final String[] ruleNames;
+        /**
+         * The nodes for matches of one and two chars.
+         */
+        private final ParseNode[] nodes = new ParseNode[2];
+        
+        Member(int[] ranges, int categories, boolean isTerminal, String[] ruleNames) {
+            this.ranges = ranges;
+            this.categories = categories;
+            this.isTerminal = isTerminal;
+            this.ruleNames = ruleNames;
+            for (int charCount = 1; charCount <= 2; charCount++) {
+                ParseNode node = TerminalNode.get(charCount);
+                for (int i = ruleNames.length - 1; i >= 0; i--) {
+                    node = new NonterminalNode(charCount, ruleNames[i], new ParseNode[]{node}, new int[]{0});
+                }
+                nodes[charCount - 1] = node;
+            }
+        }
+        
+        Member within(String[] outerRuleNames) {
+            if (outerRuleNames.length == 0) {
+                return this;
+            }
+            String[] allRuleNames = Arrays.copyOf(outerRuleNames, outerRuleNames.length + ruleNames.length);
+            System.arraycopy(ruleNames, 0, allRuleNames, outerRuleNames.length, ruleNames.length);
+            return new Member(ranges, categories, isTerminal, allRuleNames);
+        }
+        
+        boolean matches(int codePoint) {
+            return inRanges(ranges, codePoint) || inCategories(categories, codePoint);
+        }
+        
+        ParseNode getNode(int charCount) {
+            return nodes[charCount - 1];
+        }
+    }
+}
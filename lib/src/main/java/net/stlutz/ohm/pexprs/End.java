@@ -14,11 +14,21 @@ public class End extends Prim {
         super();
     }
     
+    @Override
+    public boolean isNullable() {
+        return true;
+    }
+    
     @Override
     public <T> T accept(PExprVisitor<T> visitor) {
         return visitor.visitEnd(this);
     }
     
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return codePoint < 0;
+    }
+    
     @Override
     public boolean eval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
         if (inputStream.atEnd()) {
@@ -18,6 +18,14 @@ public interface EvalContext {
      */
     boolean eval(PExpr expr);
     
+    /**
+     * Returns {@code false} if {@code expr} is known to fail at the current position, {@code true} otherwise.
+     * Used to avoid constructing nodes for terms that will be backtracked anyway, so it must be cheap and
+     * never evaluate {@code expr}, see {@link PExpr#mightStartWith(int)}. Bindings and position are unchanged
+     * afterwards.
+     */
+    boolean mightSucceed(PExpr expr);
+    
     void pushBinding(ParseNode node, int originalPosition);
     
     default void processFailure(int failurePosition, PExpr expr) {
@@ -37,8 +45,41 @@ public interface EvalContext {
     
     Apply currentApplication();
     
+    /**
+     * Returns {@code true} if no parse nodes need to be constructed, i.e. only whether (and how far)
+     * expressions match is of interest. Pushed bindings are counted, but their nodes are dropped.
+     */
+    boolean isRecognizing();
+    
+    /**
+     * Returns {@code true} if the last {@code numBindings} bindings were already reported to a
+     * {@link net.stlutz.ohm.ParseListener}, so that no nodes need to be constructed from them. Like
+     * recognized bindings, they are only counted.
+     */
+    default boolean isCommitted(int numBindings) {
+        return false;
+    }
+    
     ParseNode[] spliceLastBindings(int numBindings);
     
+    /**
+     * Returns a node equal to the newly constructed {@code node} to be used instead of it, or {@code node}
+     * itself.
+     */
+    default ParseNode intern(ParseNode node) {
+        return node;
+    }
+    
+    /**
+     * Called with each node constructed by an application of a rule at {@code position}, including the
+     * applications inlined into a {@link CharClass}.
+     */
+    default void nodeConstructed(int position, ParseNode node) {
+        // do nothing
+    }
+    
+    void discardLastBindings(int numBindings);
+    
     int[] spliceLastBindingOffsets(int numBindingOffsets);
     
     int positionToOffset(int position);
@@ -46,7 +87,9 @@ public interface EvalContext {
     int offsetToPosition(int offset);
     
     
-    // Lex
+    // Lex, Iter
+    
+    boolean inSyntacticContext();
     
     void enterLexifiedContext();
     
@@ -65,5 +108,18 @@ public interface EvalContext {
     
     PositionInfo getCurrentPositionInfo();
     
+    /**
+     * Memoizes {@code memoRec} as the result of {@code application} at {@code positionInfo}, unless the
+     * memory limit prevents that.
+     */
+    void memoize(PositionInfo positionInfo, Apply application, MemoizationRecord memoRec);
+    
+    void forget(PositionInfo positionInfo, Apply application);
+    
+    /**
+     * Returns the ID of {@code application} used for left recursion bookkeeping in the position infos.
+     */
+    int getApplicationId(Apply application);
+    
     boolean hasNecessaryInfo(MemoizationRecord memoRec);
 }
@@ -1,12 +1,18 @@
 package net.stlutz.ohm.pexprs;
 
+import net.stlutz.ohm.CharIterationNode;
 import net.stlutz.ohm.InputStream;
 import net.stlutz.ohm.IterationNode;
 import net.stlutz.ohm.OhmException;
 import net.stlutz.ohm.ParseNode;
+import net.stlutz.ohm.TerminalNode;
 
 public abstract class Iter extends PExpr {
     public PExpr expr;
+    /**
+     * Set by the {@link net.stlutz.ohm.RulesFinalizer} if this iteration can be executed as a bulk scan.
+     */
+    private Scan scan;
     
     public abstract char getOperator();
     
@@ -20,6 +26,14 @@ public abstract class Iter extends PExpr {
     
     protected abstract Iter newInstance(PExpr expr);
     
+    public Scan getScan() {
+        return scan;
+    }
+    
+    public void setScan(Scan scan) {
+        this.scan = scan;
+    }
+    
     @Override
     public boolean allowsSkippingPrecedingSpace() {
         return false;
@@ -30,19 +44,36 @@ public abstract class Iter extends PExpr {
         return expr.getArity();
     }
     
+    @Override
+    public boolean isNullable() {
+        return getMinNumMatches() == 0 || expr.isNullable();
+    }
+    
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return getMinNumMatches() == 0 || expr.mightStartWith(codePoint);
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
-        return newInstance(expr.substituteParams(actuals));
+        Iter result = newInstance(expr.substituteParams(actuals));
+        // Scannable operands don't contain parameters
+        result.scan = scan;
+        return result;
     }
     
     @Override
     public boolean eval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
+        if (scan != null && !evalContext.inSyntacticContext()) {
+            return evalScan(evalContext, inputStream, originalPosition);
+        }
+        
         int arity = getArity();
         
         int numMatches = 0;
         int previousPosition = originalPosition;
         int maxNumMatches = getMaxNumMatches();
-        while (numMatches < maxNumMatches && evalContext.eval(expr)) {
+        while (numMatches < maxNumMatches && evalContext.mightSucceed(expr) && evalContext.eval(expr)) {
             if (inputStream.getPosition() == previousPosition) {
                 // TODO: proper error handling
                 throw new OhmException("Kleene expression has nullable operand");
@@ -55,6 +86,14 @@ public abstract class Iter extends PExpr {
             return false;
         }
         
+        if (evalContext.isRecognizing() || evalContext.isCommitted(numMatches * arity)) {
+            evalContext.discardLastBindings(numMatches * arity);
+            for (int columnIndex = 0; columnIndex < arity; columnIndex++) {
+                evalContext.pushBinding(null, originalPosition);
+            }
+            return true;
+        }
+        
         int offset = evalContext.positionToOffset(originalPosition);
         int matchLength = 0;
         int numBindings = numMatches * arity;
@@ -76,13 +115,60 @@ public abstract class Iter extends PExpr {
                 column[rowIndex] = bindings[index];
                 columnOffsets[rowIndex] = bindingOffsets[index];
             }
-            IterationNode child = new IterationNode(matchLength, column, columnOffsets, isOptional());
+            ParseNode child = evalContext.intern(new IterationNode(matchLength, column, columnOffsets, isOptional()));
             evalContext.pushBinding(child, position);
         }
         
         return true;
     }
     
+    private boolean evalScan(EvalContext evalContext, InputStream inputStream, int originalPosition) {
+        int endPosition = scan.scan(inputStream);
+        int matchLength = endPosition - originalPosition;
+        int numMatches =
+            scan.hasCharSteps() ? matchLength : inputStream.codePointCount(originalPosition, endPosition);
+        
+        if (numMatches < getMinNumMatches()) {
+            return false;
+        }
+        
+        inputStream.setPosition(endPosition);
+        if (evalContext.isRecognizing()) {
+            evalContext.pushBinding(null, originalPosition);
+            return true;
+        }
+        
+        int offset = evalContext.positionToOffset(originalPosition);
+        ParseNode node;
+        ParseNode stepNode = scan.getStepNode();
+        if (stepNode != null) {
+            ParseNode[] children = new ParseNode[numMatches];
+            int[] childOffsets = new int[numMatches];
+            for (int i = 0; i < numMatches; i++) {
+                children[i] = stepNode;
+                childOffsets[i] = offset + i;
+                evalContext.nodeConstructed(originalPosition + i, stepNode);
+            }
+            node = new IterationNode(matchLength, children, childOffsets, isOptional());
+        } else if (numMatches == matchLength) {
+            node = new CharIterationNode(matchLength, offset, isOptional());
+        } else {
+            // There are supplementary code points, i.e. terminals of different lengths
+            String scanned = inputStream.sourceSlice(originalPosition, endPosition);
+            ParseNode[] children = new ParseNode[numMatches];
+            int[] childOffsets = new int[numMatches];
+            for (int i = 0, index = 0; i < numMatches; i++) {
+                int charCount = Character.charCount(scanned.codePointAt(index));
+                children[i] = TerminalNode.get(charCount);
+                childOffsets[i] = offset + index;
+                index += charCount;
+            }
+            node = new IterationNode(matchLength, children, childOffsets, isOptional());
+        }
+        evalContext.pushBinding(evalContext.intern(node), originalPosition);
+        return true;
+    }
+    
     @Override
     public void toFailureDescription(StringBuilder sb) {
         sb.append("(");
@@ -20,6 +20,11 @@ public class Lex extends PExpr {
         return expr.getArity();
     }
     
+    @Override
+    public boolean isNullable() {
+        return expr.isNullable();
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return new Lex(expr.substituteParams(actuals));
@@ -20,6 +20,11 @@ public class Lookahead extends PExpr {
         return expr.getArity();
     }
     
+    @Override
+    public boolean isNullable() {
+        return true;
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return new Lookahead(expr.substituteParams(actuals));
@@ -20,6 +20,11 @@ public class Not extends PExpr {
         return 0;
     }
     
+    @Override
+    public boolean isNullable() {
+        return true;
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return new Not(expr.substituteParams(actuals));
@@ -37,7 +42,7 @@ public class Not extends PExpr {
         // TODO: Double negation should be equivalent to lookahead, but that's not the
         // case right now wrt failures. E.g., ~~'foo' produces a failure for ~~'foo',
         // but maybe it should produce a failure for 'foo' instead.
-        boolean matched = evalContext.eval(expr);
+        boolean matched = evalContext.mightSucceed(expr) && evalContext.eval(expr);
         
         if (matched) {
             evalContext.processFailure(originalPosition, this);
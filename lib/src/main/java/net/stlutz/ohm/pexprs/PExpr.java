@@ -35,6 +35,23 @@ public abstract class PExpr {
     
     public abstract int getArity();
     
+    /**
+     * Returns {@code true} if this expression can succeed without consuming any input. Applications use the
+     * nullability their rule was given during grammar finalization. The result is conservative, i.e. it may
+     * be {@code true} for expressions that never succeed without consuming input.
+     */
+    public abstract boolean isNullable();
+    
+    /**
+     * Returns {@code false} if this expression is known to fail when the input at its position (after skipping
+     * spaces in a syntactic context) starts with {@code codePoint}, which is -1 at the end of the input. Only
+     * looks at the expression itself, applications and expressions that change the context return
+     * {@code true}.
+     */
+    public boolean mightStartWith(int codePoint) {
+        return true;
+    }
+    
     /**
      * Returns a PExpr that results from recursively replacing every formal parameter (i.e., instance
      * of `Param`) inside this PExpr with its actual value from `actuals` (an Array).
@@ -99,8 +116,6 @@ public abstract class PExpr {
     // abstract void assertAllApplicationsAreValid(String ruleName, Grammar grammar);
     // abstract void assertChoicesHaveUniformArity(String ruleName);
     // abstract void assertIteratedExprsAreNotNullable(Grammar grammar);
-    // public abstract boolean isNullable(Grammar grammar) {}
-    // public abstract boolean isNullable(Grammar grammar, ? memo);
     
     public boolean isSequence() {
         return false;
@@ -0,0 +1,136 @@
+package net.stlutz.ohm.pexprs;
+
+/**
+ * Creates deep copies of rule bodies, so that a grammar can bind applications and rewrite expressions
+ * without affecting the super grammar the body came from. Leaves cannot be modified and are shared.
+ */
+public class PExprCopier implements PExprVisitor<PExpr> {
+    private static final PExprCopier instance = new PExprCopier();
+    
+    private PExprCopier() {
+    }
+    
+    public static PExpr copy(PExpr expr) {
+        return instance.visit(expr).withSource(expr.getSource());
+    }
+    
+    private PExpr[] copyAll(PExpr[] exprs) {
+        PExpr[] result = new PExpr[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            result[i] = copy(exprs[i]);
+        }
+        return result;
+    }
+    
+    private PExpr copyIter(Iter expr) {
+        Iter result = expr.newInstance(copy(expr.expr));
+        result.setScan(expr.getScan());
+        return result;
+    }
+    
+    
+    // Composites
+    
+    @Override
+    public PExpr visitAlt(Alt expr) {
+        return new Alt(copyAll(expr.terms));
+    }
+    
+    @Override
+    public PExpr visitApply(Apply expr) {
+        Apply result = new Apply(expr.getRuleName(), copyAll(expr.getArgs()));
+        result.setRule(expr.getRule());
+        return result;
+    }
+    
+    @Override
+    public PExpr visitCaseInsensitiveTerminal(CaseInsensitiveTerminal expr) {
+        return expr;
+    }
+    
+    /**
+     * Character classes may contain inlined rules and are recreated from the original expression.
+     */
+    @Override
+    public PExpr visitCharClass(CharClass expr) {
+        return copy(expr.getOriginal());
+    }
+    
+    @Override
+    public PExpr visitExtend(Extend expr) {
+        return new Extend(copy(expr.superBody), copy(expr.body));
+    }
+    
+    @Override
+    public PExpr visitLex(Lex expr) {
+        return new Lex(copy(expr.expr));
+    }
+    
+    @Override
+    public PExpr visitLookahead(Lookahead expr) {
+        return new Lookahead(copy(expr.expr));
+    }
+    
+    @Override
+    public PExpr visitNot(Not expr) {
+        return new Not(copy(expr.expr));
+    }
+    
+    @Override
+    public PExpr visitOpt(Opt expr) {
+        return copyIter(expr);
+    }
+    
+    @Override
+    public PExpr visitPlus(Plus expr) {
+        return copyIter(expr);
+    }
+    
+    @Override
+    public PExpr visitSeq(Seq expr) {
+        return new Seq(copyAll(expr.terms));
+    }
+    
+    @Override
+    public PExpr visitSplice(Splice expr) {
+        return expr.superExpr == null ? new Splice() : new Splice(copy(expr.superExpr));
+    }
+    
+    @Override
+    public PExpr visitStar(Star expr) {
+        return copyIter(expr);
+    }
+    
+    
+    // Leaves
+    
+    @Override
+    public PExpr visitAny(Any expr) {
+        return expr;
+    }
+    
+    @Override
+    public PExpr visitEnd(End expr) {
+        return expr;
+    }
+    
+    @Override
+    public PExpr visitParam(Param expr) {
+        return expr;
+    }
+    
+    @Override
+    public PExpr visitRange(Range expr) {
+        return expr;
+    }
+    
+    @Override
+    public PExpr visitTerminal(Terminal expr) {
+        return expr;
+    }
+    
+    @Override
+    public PExpr visitUnicodeChar(UnicodeChar expr) {
+        return expr;
+    }
+}
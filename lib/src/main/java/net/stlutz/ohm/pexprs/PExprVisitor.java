@@ -15,6 +15,8 @@ public interface PExprVisitor<T> {
     
     T visitCaseInsensitiveTerminal(CaseInsensitiveTerminal expr);
     
+    T visitCharClass(CharClass expr);
+    
     T visitEnd(End expr);
     
     T visitExtend(Extend expr);
@@ -21,6 +21,12 @@ public class Param extends PExpr {
         return 1;
     }
     
+    @Override
+    public boolean isNullable() {
+        // The actual parameter is unknown
+        return true;
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return actuals[index];
@@ -12,6 +12,11 @@ public abstract class Prim extends PExpr {
         return 1;
     }
     
+    @Override
+    public boolean isNullable() {
+        return false;
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return this;
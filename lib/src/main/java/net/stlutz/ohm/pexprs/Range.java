@@ -27,6 +27,11 @@ public class Range extends Prim {
         return visitor.visitRange(this);
     }
     
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return codePoint >= from && codePoint <= to;
+    }
+    
     @Override
     public boolean eval(EvalContext evalContext, InputStream inputStream, int originalPosition) {
         if (!inputStream.atEnd()) {
@@ -0,0 +1,159 @@
+package net.stlutz.ohm.pexprs;
+
+import net.stlutz.ohm.InputStream;
+import net.stlutz.ohm.NonterminalNode;
+import net.stlutz.ohm.ParseNode;
+import net.stlutz.ohm.TerminalNode;
+
+/**
+ * Executes the iteration of a simple operand as a bulk scan over the input, instead of evaluating the
+ * operand once per character. Supported operands are {@link CharClass character classes} producing plain
+ * terminals, as well as {@code ~X any} where {@code X} is a terminal or a character class and {@code any}
+ * is either the primitive or an application of the built-in rule.
+ */
+public abstract class Scan {
+    /**
+     * The node of each step if they apply a rule, e.g. {@code any}, or {@code null} if they are terminals.
+     */
+    private ParseNode stepNode;
+    
+    /**
+     * Returns the position the iteration would end at, starting from the current position of
+     * {@code inputStream}. Does not move the stream, but records examined input like regular evaluation
+     * would.
+     */
+    public abstract int scan(InputStream inputStream);
+    
+    /**
+     * Returns {@code true} if every step of the iteration consumes a single char, {@code false} if it
+     * consumes a code point.
+     */
+    public abstract boolean hasCharSteps();
+    
+    /**
+     * Returns the node every step of the iteration produces if it is not a terminal, see
+     * {@link #hasCharSteps()}. Since nodes don't know their position, the same node can be used for all steps.
+     */
+    public ParseNode getStepNode() {
+        return stepNode;
+    }
+    
+    /**
+     * Returns a scan for iterating {@code operand}, or {@code null} if it cannot be scanned.
+     */
+    public static Scan of(PExpr operand) {
+        operand = unwrap(operand);
+        if (operand instanceof Seq seq && seq.terms.length == 2 && seq.terms[0] instanceof Not not) {
+            PExpr step = unwrap(seq.terms[1]);
+            if (step != Any.getInstance() && !isAnyApplication(step)) {
+                return null;
+            }
+            PExpr excluded = unwrap(not.expr);
+            Scan result;
+            if (excluded instanceof Terminal terminal) {
+                result = new UntilTerminal(terminal.getString());
+            } else {
+                CharClass charClass = CharClass.of(excluded);
+                if (charClass == null) {
+                    return null;
+                }
+                result = new UntilCharClass(charClass);
+            }
+            if (step instanceof Apply app) {
+                result.stepNode = new NonterminalNode(1, app.getRuleName(), new ParseNode[]{TerminalNode.get(1)},
+                    new int[]{0});
+            }
+            return result;
+        }
+        
+        CharClass charClass = CharClass.of(operand);
+        return charClass == null || !charClass.producesTerminals() ? null : new WhileCharClass(charClass);
+    }
+    
+    /**
+     * Returns the only term of single-term sequences and alternations, as produced for parenthesized
+     * expressions of grammars parsed from source.
+     */
+    private static PExpr unwrap(PExpr expr) {
+        while ((expr instanceof Seq || expr instanceof Alt) && ((Aggregation) expr).terms.length == 1) {
+            expr = ((Aggregation) expr).terms[0];
+        }
+        return expr;
+    }
+    
+    /**
+     * Returns whether {@code expr} applies a rule like the built-in {@code any}, whose body is {@link Any}.
+     */
+    private static boolean isAnyApplication(PExpr expr) {
+        return expr instanceof Apply app && app.getArgs().length == 0 && app.getRule() != null
+            && app.getRule().getBody() == Any.getInstance();
+    }
+    
+    /**
+     * {@code (~"str" any)*}
+     */
+    private static class UntilTerminal extends Scan {
+        private final String str;
+        
+        UntilTerminal(String str) {
+            this.str = str;
+        }
+        
+        @Override
+        public int scan(InputStream inputStream) {
+            return inputStream.scanUntil(str);
+        }
+        
+        @Override
+        public boolean hasCharSteps() {
+            return true;
+        }
+    }
+    
+    /**
+     * {@code (~charClass any)*}
+     */
+    private static class UntilCharClass extends Scan {
+        private final CharClass charClass;
+        
+        UntilCharClass(CharClass charClass) {
+            this.charClass = charClass;
+        }
+        
+        @Override
+        public int scan(InputStream inputStream) {
+            return inputStream.scanUntil(charClass::matches);
+        }
+        
+        @Override
+        public boolean hasCharSteps() {
+            return true;
+        }
+    }
+    
+    /**
+     * {@code charClass*}
+     */
+    private static class WhileCharClass extends Scan {
+        private final CharClass charClass;
+        
+        WhileCharClass(CharClass charClass) {
+            this.charClass = charClass;
+        }
+        
+        @Override
+        public int scan(InputStream inputStream) {
+            int originalPosition = inputStream.getPosition();
+            int endPosition = inputStream.scanWhile(charClass::matches);
+            inputStream.setPosition(endPosition);
+            charClass.examineMismatch(inputStream);
+            inputStream.setPosition(originalPosition);
+            return endPosition;
+        }
+        
+        @Override
+        public boolean hasCharSteps() {
+            return false;
+        }
+    }
+}
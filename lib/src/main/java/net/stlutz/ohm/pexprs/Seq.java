@@ -21,6 +21,21 @@ public class Seq extends Aggregation {
         return arity;
     }
     
+    @Override
+    public boolean isNullable() {
+        for (PExpr term : terms) {
+            if (!term.isNullable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return terms.length == 0 || terms[0].mightStartWith(codePoint);
+    }
+    
     @Override
     public <T> T accept(PExprVisitor<T> visitor) {
         return visitor.visitSeq(this);
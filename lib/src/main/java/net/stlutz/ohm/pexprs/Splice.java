@@ -17,6 +17,10 @@ public class Splice extends PExpr {
         this.superExpr = superExpr;
     }
     
+    public PExpr getSuperExpr() {
+        return superExpr;
+    }
+    
     @Override
     public boolean allowsSkippingPrecedingSpace() {
         return superExpr.allowsSkippingPrecedingSpace();
@@ -27,6 +31,11 @@ public class Splice extends PExpr {
         return superExpr.getArity();
     }
     
+    @Override
+    public boolean isNullable() {
+        return superExpr.isNullable();
+    }
+    
     @Override
     public PExpr substituteParams(PExpr[] actuals) {
         return new Splice(superExpr.substituteParams(actuals));
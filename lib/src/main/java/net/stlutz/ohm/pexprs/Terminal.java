@@ -17,6 +17,16 @@ public class Terminal extends Prim {
         return obj;
     }
     
+    @Override
+    public boolean isNullable() {
+        return obj.isEmpty();
+    }
+    
+    @Override
+    public boolean mightStartWith(int codePoint) {
+        return obj.isEmpty() || obj.codePointAt(0) == codePoint;
+    }
+    
     @Override
     public <T> T accept(PExprVisitor<T> visitor) {
         return visitor.visitTerminal(this);
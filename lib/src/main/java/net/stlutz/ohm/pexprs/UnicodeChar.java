@@ -39,6 +39,13 @@ public class UnicodeChar extends Prim {
         return false;
     }
     
+    /**
+     * Returns the Unicode categories matched by this expression as a bitset indexed by category.
+     */
+    public int getCategories() {
+        return categories;
+    }
+    
     private Collection<String> getShorthands() {
         Collection<String> shorthands = new ArrayList<>();
         for (int i = 0; i < unicodeCategoryShorthands.length; i++) {
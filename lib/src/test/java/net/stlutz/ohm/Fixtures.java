@@ -0,0 +1,25 @@
+package net.stlutz.ohm;
+
+/**
+ * Grammars shared by several test classes.
+ */
+final class Fixtures {
+    /**
+     * Assignments of left-recursive sums, the start rule is {@code Program}.
+     */
+    static final Grammar statements = Ohm.grammar("""
+        Statements {
+          Program = Stmt*
+          Stmt = ident "=" Exp ";"
+          Exp = Exp "+" Pri -- plus
+              | Pri
+          Pri = "(" Exp ")" -- paren
+              | ident
+              | number
+          ident = letter alnum*
+          number = digit+
+        }""");
+    
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,72 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestGrammarCache {
+    static String source(int i) {
+        return "G%d { start = \"%d\" }".formatted(i, i);
+    }
+    
+    @Test
+    void testSameSourceReturnsSameGrammar() {
+        GrammarCache cache = new GrammarCache(4);
+        Grammar grammar = cache.grammar(source(1));
+        assertSame(grammar, cache.grammar(source(1)));
+        assertNotSame(grammar, cache.grammar(source(2)));
+        assertTrue(grammar.match("1").succeeded());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+    }
+    
+    @Test
+    void testLeastRecentlyUsedIsEvicted() {
+        GrammarCache cache = new GrammarCache(2);
+        Grammar first = cache.grammar(source(1));
+        cache.grammar(source(2));
+        cache.grammar(source(1));
+        cache.grammar(source(3));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+        assertSame(first, cache.grammar(source(1)));
+        cache.grammar(source(2));
+        assertEquals(4, cache.getMissCount());
+    }
+    
+    @Test
+    void testNamespaceIsPartOfKey() {
+        GrammarCache cache = new GrammarCache(4);
+        String sub = "Sub <: G1 { start += \"x\" }";
+        
+        Namespace namespace1 = new Namespace();
+        cache.grammars(source(1), namespace1);
+        Grammar sub1 = cache.grammars(sub, namespace1).get(0);
+        assertSame(sub1, namespace1.getGrammarNamed("Sub"));
+        
+        // Same super grammar instance, so the same sub grammar
+        Namespace namespace2 = new Namespace();
+        cache.grammars(source(1), namespace2);
+        assertSame(namespace1.getGrammarNamed("G1"), namespace2.getGrammarNamed("G1"));
+        assertSame(sub1, cache.grammars(sub, namespace2).get(0));
+        
+        // A different G1 instance leads to a different sub grammar
+        Namespace namespace3 = new Namespace();
+        namespace3.add(Ohm.grammar(source(1)));
+        Grammar sub3 = cache.grammars(sub, namespace3).get(0);
+        assertNotSame(sub1, sub3);
+        assertSame(namespace3.getGrammarNamed("G1"), sub3.getSuperGrammar());
+    }
+    
+    @Test
+    void testFailedBuildIsNotCached() {
+        GrammarCache cache = new GrammarCache(4);
+        assertThrows(OhmException.class, () -> cache.grammar("G {"));
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,128 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class TestGrammarSnapshot {
+    static final String source = """
+        Base {
+          Exp = Exp "+" Pri -- plus
+              | Pri
+          Pri = "(" Exp ")" -- paren
+              | number
+          number (a number) = digit+
+        }
+        Derived <: Base {
+          Pri += ident
+          number := "0x" hexDigit+ -- hex
+                  | digit+
+          ident = (letter | "_") alnum*
+          keyword = caseInsensitive<"let"> ~alnum
+          greek = lower "λ".."ω"
+          Pair<a, b> = a b
+        }""";
+    
+    static byte[] save(Grammar grammar) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        grammar.save(out);
+        return out.toByteArray();
+    }
+    
+    static Grammar load(byte[] snapshot) throws IOException {
+        return Grammar.load(new ByteArrayInputStream(snapshot));
+    }
+    
+    static String toTreeString(Node node) {
+        if (node.isTerminal()) {
+            return node.sourceString();
+        }
+        StringBuilder sb = new StringBuilder(node.ctorName()).append("(");
+        for (Node child : node.getChildren()) {
+            sb.append(toTreeString(child)).append(" ");
+        }
+        return sb.append(")").toString();
+    }
+    
+    @Test
+    void testRoundTrip() throws IOException {
+        List<? extends Grammar> grammars = Ohm.grammars(source);
+        Grammar derived = grammars.get(1);
+        Grammar loaded = load(save(derived));
+        
+        assertEquals("Derived", loaded.getName());
+        assertEquals("Base", loaded.getSuperGrammar().getName());
+        assertSame(ConstructedGrammar.BuiltInRules, loaded.getSuperGrammar().getSuperGrammar());
+        assertEquals(derived.getDefaultStartRule(), loaded.getDefaultStartRule());
+        assertEquals(derived.getRules().keySet(), loaded.getRules().keySet());
+        assertEquals("a number", loaded.getSuperGrammar().getRule("number").getDescription());
+        assertEquals(List.of("a", "b"), loaded.getRule("Pair").getFormals());
+        assertEquals(derived.getRule("ident").getSource(), loaded.getRule("ident").getSource());
+        
+        for (String input : List.of("1 + (foo + 0xbeef)", "x + _y1 + 42", "1 + ", "(1")) {
+            MatchResult expected = derived.match(input);
+            MatchResult actual = loaded.match(input);
+            assertEquals(expected.succeeded(), actual.succeeded(), input);
+            if (expected.succeeded()) {
+                assertEquals(toTreeString(expected.getRootNode()), toTreeString(actual.getRootNode()), input);
+            }
+        }
+        assertTrue(loaded.match("aμ", "greek").succeeded());
+    }
+    
+    @Test
+    void testSnapshotOnlyContainsOwnRules() throws IOException {
+        Grammar base = Ohm.grammars(source).get(0);
+        Grammar derived = Ohm.grammars(source).get(1);
+        byte[] baseSnapshot = save(base);
+        byte[] derivedSnapshot = save(derived);
+        // The derived snapshot repeats the base grammar, but neither contains the built-in rules
+        assertTrue(derivedSnapshot.length < 3 * baseSnapshot.length);
+        assertNotNull(load(baseSnapshot).getRule("ListOf"));
+    }
+    
+    @Test
+    void testInvalidSnapshot() {
+        assertThrows(OhmException.class, () -> load(new byte[]{1, 2, 3, 4, 5}));
+        assertThrows(OhmException.class, () -> save(ConstructedGrammar.BuiltInRules));
+    }
+    
+    @Test
+    void testCorruptedSnapshot() throws IOException {
+        byte[] snapshot = save(Ohm.grammars(source).get(1));
+        for (int length = 0; length < snapshot.length; length++) {
+            byte[] truncated = Arrays.copyOf(snapshot, length);
+            assertThrows(OhmException.class, () -> load(truncated), "Truncated to %d bytes".formatted(length));
+        }
+        
+        for (int index = 0; index < snapshot.length; index++) {
+            for (int value : new int[]{0x00, 0x7F, 0xFF}) {
+                byte[] corrupted = snapshot.clone();
+                corrupted[index] = (byte) value;
+                try {
+                    load(corrupted);
+                } catch (OhmException e) {
+                    // Expected unless the corruption happens to produce another valid snapshot
+                } catch (RuntimeException e) {
+                    fail("Byte %d set to %d".formatted(index, value), e);
+                }
+            }
+        }
+        
+        // A huge declared length must not be allocated up front
+        byte[] hugeLength = snapshot.clone();
+        hugeLength[5] = 0x7F;
+        assertThrows(OhmException.class, () -> load(hugeLength));
+    }
+}
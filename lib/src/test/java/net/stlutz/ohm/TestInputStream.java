@@ -111,6 +111,43 @@ class TestInputStream {
         // TODO
     }
     
+    @Test
+    void testKindOf() {
+        assertEquals(InputStream.Kind.LATIN1, InputStream.Kind.of(sentence));
+        assertEquals(InputStream.Kind.LATIN1, InputStream.Kind.of("Grüße, ÿ"));
+        assertEquals(InputStream.Kind.SURROGATE_FREE, InputStream.Kind.of("Ωmega"));
+        assertEquals(InputStream.Kind.GENERAL, InputStream.Kind.of(unicodeString));
+    }
+    
+    private static void assertSameBehavior(String source, String str) {
+        for (int position = 0; position <= source.length(); position++) {
+            InputStream expected = new InputStream(source);
+            InputStream actual = InputStream.create(source);
+            expected.setPosition(position);
+            actual.setPosition(position);
+            String message = "'%s' at %d in '%s'".formatted(str, position, source);
+            
+            assertEquals(expected.matches(str), actual.matches(str), message);
+            assertEquals(expected.getRightmostExaminedPosition(), actual.getRightmostExaminedPosition(), message);
+            assertEquals(expected.matches(str, true), actual.matchesIgnoringCase(str, InputStream.foldCase(str)),
+                message);
+            assertEquals(expected.getRightmostExaminedPosition(), actual.getRightmostExaminedPosition(), message);
+            assertEquals(expected.peekCodePoint(), actual.peekCodePoint(), message);
+            if (position < source.length()) {
+                assertEquals(expected.nextCodePoint(), actual.nextCodePoint(), message);
+                assertEquals(expected.getPosition(), actual.getPosition(), message);
+            }
+        }
+    }
+    
+    @Test
+    void testSpecializedStreams() {
+        for (String str : new String[]{"", "the", "THE LAZY", "ß", "SS", "ÿ", "Ÿ", "µ", "Μ", "\uD83D\uDC4D"}) {
+            assertSameBehavior("The lazy dog ß ÿ µ", str);
+            assertSameBehavior("The lazy ΜΩ dog", str);
+        }
+    }
+    
     @Test
     void testSourceSlice() {
         assertEquals("The", stream.sourceSlice(0, 3));
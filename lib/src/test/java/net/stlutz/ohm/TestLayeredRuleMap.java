@@ -0,0 +1,67 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestLayeredRuleMap {
+    static final String source = """
+        Base {
+          Program = Stmt*
+          Stmt = ident "=" Exp ";"
+          Exp = Exp "+" Pri -- plus
+              | Pri
+          Pri = number
+          number = digit+
+          ident = letter+
+        }
+        Derived <: Base {
+          Pri += "(" Exp ")" -- paren
+        }
+        Hex <: Derived {
+          number := "0x" hexDigit+ -- hex
+                  | digit+
+        }""";
+    
+    static Set<String> ownRuleNames(Grammar grammar) {
+        return ((LayeredRuleMap) ((AbstractGrammar) grammar).rules).getOwnRules().keySet();
+    }
+    
+    @Test
+    void testUnchangedRulesAreShared() {
+        List<? extends Grammar> grammars = Ohm.grammars(source);
+        Grammar base = grammars.get(0);
+        Grammar derived = grammars.get(1);
+        Grammar hex = grammars.get(2);
+        
+        // Exp applies Pri, Exp_plus applies Exp and Pri, and so on up to Program
+        assertEquals(Set.of("Pri", "Pri_paren", "Exp", "Exp_plus", "Stmt", "Program"), ownRuleNames(derived));
+        assertEquals(Set.of("number", "number_hex", "Pri", "Pri_paren", "Exp", "Exp_plus", "Stmt", "Program"),
+            ownRuleNames(hex));
+        
+        assertSame(base.getRule("ident"), derived.getRule("ident"));
+        assertSame(base.getRule("letter"), hex.getRule("letter"));
+        assertSame(derived.getRule("ident"), hex.getRule("ident"));
+        assertNotSame(base.getRule("Stmt"), derived.getRule("Stmt"));
+        assertEquals(base.getRules().size() + 1, derived.getRules().size());
+        assertEquals(derived.getRules().size() + 1, hex.getRules().size());
+        assertEquals(hex.getRules().size(), hex.getRules().entrySet().stream().count());
+    }
+    
+    @Test
+    void testInheritedRulesApplyOverrides() {
+        List<? extends Grammar> grammars = Ohm.grammars(source);
+        assertFalse(grammars.get(0).match("a = (1 + 2);").succeeded());
+        assertTrue(grammars.get(1).match("a = (1 + 2);").succeeded());
+        assertFalse(grammars.get(1).match("a = (0x1f + 2);").succeeded());
+        assertTrue(grammars.get(2).match("a = (0x1f + 2); b = 3;").succeeded());
+        assertTrue(grammars.get(2).getRule("Exp").isLeftRecursive());
+    }
+}
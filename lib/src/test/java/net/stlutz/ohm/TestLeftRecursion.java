@@ -0,0 +1,81 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestLeftRecursion {
+    private static final Grammar arithmetic = Ohm.grammar("""
+        Arithmetic {
+          Exp = Exp "+" Term  -- plus
+              | Term
+          Term = Term "*" num -- times
+               | num
+          num = digit
+          opt = "x"?
+        }""");
+    
+    private static String toTreeString(ParseNode node) {
+        if (node.isTerminal()) {
+            return "_";
+        }
+        StringBuilder sb = new StringBuilder(node.ctorName()).append("(");
+        ParseNode[] children = node.getChildren();
+        for (int i = 0; i < children.length; i++) {
+            if (i > 0) {
+                sb.append(" ");
+            }
+            sb.append(toTreeString(children[i]));
+        }
+        return sb.append(")").toString();
+    }
+    
+    @Test
+    void testNullability() {
+        assertTrue(arithmetic.getRule("opt").isNullable());
+        assertTrue(arithmetic.getRule("spaces").isNullable());
+        assertFalse(arithmetic.getRule("num").isNullable());
+        assertFalse(arithmetic.getRule("Exp").isNullable());
+    }
+    
+    @Test
+    void testLeftRecursiveRules() {
+        assertTrue(arithmetic.getRule("Exp").isLeftRecursive());
+        assertTrue(arithmetic.getRule("Term").isLeftRecursive());
+        assertTrue(arithmetic.getRule("Exp_plus").isLeftRecursive());
+        assertFalse(arithmetic.getRule("num").isLeftRecursive());
+        assertFalse(arithmetic.getRule("spaces").isLeftRecursive());
+        assertTrue(arithmetic.getRule("ListOf").isLeftRecursive(),
+            "Parameters at the left edge are conservatively considered left-recursive");
+    }
+    
+    @Test
+    void testIndirectLeftRecursion() {
+        Grammar grammar = Ohm.grammar("""
+            G {
+              a = b "a" -- rec
+                | "x"
+              b = a "b" -- rec
+                | "y"
+              c = "c" a
+            }""");
+        assertTrue(grammar.getRule("a").isLeftRecursive());
+        assertTrue(grammar.getRule("b").isLeftRecursive());
+        assertFalse(grammar.getRule("c").isLeftRecursive());
+        assertTrue(grammar.match("xba", "a").succeeded());
+        assertTrue(grammar.match("ya", "a").succeeded());
+        assertTrue(grammar.match("cyaba", "c").succeeded());
+        assertFalse(grammar.match("xb", "a").succeeded());
+    }
+    
+    @Test
+    void testLeftAssociativity() {
+        MatchResult result = arithmetic.match("1 + 2 * 3 + 4");
+        assertTrue(result.succeeded());
+        assertEquals("Exp(Exp_plus(Exp(Exp_plus(Exp(Term(num(digit(_)))) _ "
+            + "Term(Term_times(Term(num(digit(_))) _ num(digit(_)))))) _ Term(num(digit(_)))))",
+            toTreeString(result.getCST()));
+    }
+}
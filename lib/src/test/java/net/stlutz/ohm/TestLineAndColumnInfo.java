@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class TestLineAndColumnInfo {
     String loremIpsum() {
@@ -84,4 +85,53 @@ class TestLineAndColumnInfo {
         assertEquals("Massa tempor nec feugiat nisl pretium.", info.previousLine);
         assertNull(info.nextLine);
     }
+    
+    @Test
+    void testCarriageReturns() {
+        LineAndColumnInfo info = LineAndColumnInfo.from("first\r\nsecond\r\nthird", 10);
+        // sec>o<nd
+        assertEquals(2, info.lineNum);
+        assertEquals(4, info.columnNum);
+        assertEquals("second", info.line);
+        assertEquals("first", info.previousLine);
+        assertEquals("third", info.nextLine);
+    }
+    
+    @Test
+    void testEmptyLines() {
+        LineIndex lineIndex = new LineIndex("\n\nfoo\n");
+        assertEquals(4, lineIndex.numLines());
+        LineAndColumnInfo info = lineIndex.getLineAndColumn(1);
+        assertEquals(2, info.lineNum);
+        assertEquals(1, info.columnNum);
+        assertEquals("", info.line);
+        assertEquals("", info.previousLine);
+        assertEquals("foo", info.nextLine);
+        info = lineIndex.getLineAndColumn(6);
+        assertEquals(4, info.lineNum);
+        assertEquals("", info.line);
+        assertNull(info.nextLine);
+    }
+    
+    @Test
+    void testLineIndexOf() {
+        LineIndex lineIndex = new LineIndex(loremIpsum());
+        assertEquals(0, lineIndex.lineIndexOf(0));
+        assertEquals(0, lineIndex.lineIndexOf(123));
+        assertEquals(1, lineIndex.lineIndexOf(124));
+        assertEquals(12, lineIndex.lineIndexOf(loremIpsum().length()));
+        assertEquals(124, lineIndex.lineStart(1));
+    }
+    
+    @Test
+    void testSharedLineIndex() {
+        Grammar grammar = Ohm.grammar("G { lines = line* \n line = (~\"\\n\" any)* \"\\n\" }");
+        MatchResult result = grammar.match("ab\ncd\nef\n");
+        Node secondLine = result.getRootNode().childAt(0).childAt(1);
+        assertSame(result.getLineIndex(), secondLine.getSource().getLineIndex());
+        LineAndColumnInfo info = secondLine.getSource().getLineAndColumn();
+        assertEquals(2, info.lineNum);
+        assertEquals(1, info.columnNum);
+        assertEquals("cd", info.line);
+    }
 }
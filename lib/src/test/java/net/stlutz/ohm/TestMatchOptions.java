@@ -0,0 +1,182 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMatchOptions {
+    static final Grammar nested = Ohm.grammar("""
+        Nested {
+          Exp = "(" Exp ")" -- paren
+              | digit
+        }""");
+    
+    static String nestedInput(int depth) {
+        return "(".repeat(depth) + "1" + ")".repeat(depth);
+    }
+    
+    @Test
+    void testDefaults() {
+        assertEquals(0, MatchOptions.defaults().getStackSize());
+        assertThrows(IllegalArgumentException.class, () -> MatchOptions.defaults().withStackSize(-1));
+    }
+    
+    @Test
+    void testStackOverflowIsReported() {
+        String input = nestedInput(200_000);
+        assertThrows(OhmException.class, () -> nested.match(input, "Exp"));
+    }
+    
+    @Test
+    void testDedicatedStack() {
+        String input = nestedInput(20_000);
+        MatchOptions options = MatchOptions.defaults().withStackSize(512L << 20);
+        assertTrue(nested.match(input, "Exp", options).succeeded());
+        assertTrue(nested.recognize(input, "Exp", options).succeeded());
+        
+        Matcher matcher = nested.getMatcher(input);
+        assertTrue(matcher.matchTwoPhase("Exp", options).succeeded());
+    }
+    
+    @Test
+    void testMatcherIsUsableAfterStackOverflow() {
+        Matcher matcher = nested.getMatcher(nestedInput(200_000));
+        assertThrows(OhmException.class, () -> matcher.match("Exp"));
+        assertTrue(matcher.match("Exp", MatchOptions.defaults().withStackSize(1L << 30)).succeeded());
+    }
+    
+    @Test
+    void testInterruptDedicatedStack() throws InterruptedException {
+        Matcher matcher = nested.getMatcher(nestedInput(5_000));
+        Thread caller = Thread.currentThread();
+        AtomicInteger checks = new AtomicInteger();
+        // Interrupts the caller from the matching thread and keeps that busy until it is interrupted as well
+        MatchOptions options = MatchOptions.defaults().withStackSize(64L << 20).withCancellation(() -> {
+            if (checks.incrementAndGet() == 1) {
+                caller.interrupt();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return false;
+        });
+        try {
+            MatchAbortedException e = assertThrows(MatchAbortedException.class, () -> matcher.match("Exp", options));
+            assertEquals(MatchAbortedException.Reason.INTERRUPTED, e.getReason());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        // The matching thread has stopped, so it can't change the matcher anymore
+        int numChecks = checks.get();
+        Thread.sleep(50);
+        assertEquals(numChecks, checks.get());
+        assertTrue(matcher.match("Exp", MatchOptions.defaults().withStackSize(64L << 20)).succeeded());
+    }
+    
+    @Test
+    void testStepBudget() {
+        String input = nestedInput(100);
+        Matcher matcher = nested.getMatcher(input);
+        MatchAbortedException e = assertThrows(MatchAbortedException.class,
+            () -> matcher.match("Exp", MatchOptions.defaults().withStepBudget(50)));
+        assertEquals(MatchAbortedException.Reason.STEP_BUDGET_EXHAUSTED, e.getReason());
+        assertEquals(51, e.getSteps());
+        assertTrue(e.getRightmostExaminedPosition() > 0 && e.getRightmostExaminedPosition() < input.length());
+        
+        assertTrue(matcher.match("Exp", MatchOptions.defaults().withStepBudget(100_000)).succeeded());
+    }
+    
+    @Test
+    void testDeadline() {
+        MatchOptions options = MatchOptions.defaults().withDeadline(Instant.now().minusSeconds(1));
+        MatchAbortedException e = assertThrows(MatchAbortedException.class,
+            () -> nested.recognize(nestedInput(10), "Exp", options));
+        assertEquals(MatchAbortedException.Reason.DEADLINE_EXCEEDED, e.getReason());
+        
+        assertTrue(nested.match(nestedInput(10), "Exp",
+            MatchOptions.defaults().withDeadline(Instant.now().plusSeconds(60))).succeeded());
+    }
+    
+    @Test
+    void testFarDeadlines() {
+        for (Instant deadline : new Instant[]{Instant.MAX, Instant.now().plus(Duration.ofDays(365L * 1000))}) {
+            assertTrue(nested.match(nestedInput(10), "Exp", MatchOptions.defaults().withDeadline(deadline))
+                .succeeded());
+        }
+        MatchAbortedException e = assertThrows(MatchAbortedException.class,
+            () -> nested.recognize(nestedInput(10), "Exp", MatchOptions.defaults().withDeadline(Instant.MIN)));
+        assertEquals(MatchAbortedException.Reason.DEADLINE_EXCEEDED, e.getReason());
+    }
+    
+    @Test
+    void testCancellation() {
+        AtomicBoolean cancelled = new AtomicBoolean(true);
+        MatchOptions options = MatchOptions.defaults().withCancellation(cancelled::get);
+        MatchAbortedException e = assertThrows(MatchAbortedException.class,
+            () -> nested.match(nestedInput(10), "Exp", options));
+        assertEquals(MatchAbortedException.Reason.CANCELLED, e.getReason());
+        
+        cancelled.set(false);
+        assertTrue(nested.match(nestedInput(10), "Exp", options).succeeded());
+    }
+    
+    @Test
+    void testInterrupt() {
+        MatchOptions options = MatchOptions.defaults().withInterruptible(true);
+        Thread.currentThread().interrupt();
+        try {
+            MatchAbortedException e = assertThrows(MatchAbortedException.class,
+                () -> nested.match(nestedInput(10), "Exp", options));
+            assertEquals(MatchAbortedException.Reason.INTERRUPTED, e.getReason());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertFalse(nested.match("(1", "Exp", options).succeeded());
+    }
+    
+    @Test
+    void testStatistics() {
+        MatchStatistics statistics = nested.match(nestedInput(10), "Exp").getStatistics();
+        assertTrue(statistics.getSteps() > 0);
+        assertEquals(11, statistics.getPositionInfos(), "One per position at which a rule was applied");
+        assertTrue(statistics.getMemoizedRecords() >= statistics.getMemoizedNodes());
+        assertTrue(statistics.getMemoizedNodes() > 0);
+        assertEquals(0, statistics.getEvictedRecords());
+        assertEquals(0, statistics.getSkippedMemoizations());
+        assertTrue(statistics.getMemoBytes() > 0);
+        assertEquals(statistics.getMemoBytes(), statistics.getPeakMemoBytes());
+        
+        RecognitionResult recognitionResult = nested.recognize(nestedInput(10), "Exp");
+        assertEquals(0, recognitionResult.getStatistics().getMemoizedNodes());
+    }
+    
+    @Test
+    void testMemoryLimit() {
+        Grammar grammar = Fixtures.statements;
+        String input = "foo = (a + 23) + 4 + bar;\n".repeat(200);
+        MatchResult unlimited = grammar.match(input, "Program");
+        long limit = unlimited.getStatistics().getPeakMemoBytes() / 10;
+        MatchResult limited = grammar.match(input, "Program", MatchOptions.defaults().withMemoryLimit(limit));
+        
+        assertTrue(limited.succeeded());
+        assertEquals(unlimited.getCST().numChildren(), limited.getCST().numChildren());
+        MatchStatistics statistics = limited.getStatistics();
+        assertTrue(statistics.getEvictedRecords() > 0);
+        assertTrue(statistics.getPeakMemoBytes() < 2 * limit,
+            "Only what is still in use may exceed the limit: " + statistics);
+        
+        MatchResult starved = grammar.match(input, "Program", MatchOptions.defaults().withMemoryLimit(0));
+        assertTrue(starved.succeeded());
+        assertTrue(starved.getStatistics().getSkippedMemoizations() > 0);
+    }
+}
@@ -97,10 +97,40 @@ class TestMatchState {
         assertFalse(matchState.inLexifiedContext());
     }
     
-    // @Test
-    // void testSkipSpaces() {
-    // fail("Not yet implemented");
-    // }
+    @Test
+    void testSkipSpaces() {
+        Grammar grammar = Ohm.grammar("G { Start = \"a\"+ }");
+        Matcher matcher = grammar.getMatcher("a  \t\na");
+        matchState = new MatchState(matcher, grammar.parseApplication("Start"));
+        InputStream inputStream = matchState.getInputStream();
+        inputStream.advance(1);
+        assertEquals(5, matchState.skipSpaces());
+        assertEquals(5, inputStream.getPosition());
+        assertEquals(6, inputStream.getRightmostExaminedPosition());
+        assertEquals(0, matchState.numBindings(), "Should not leave any bindings behind");
+        assertEquals(5, matchState.skipSpaces(), "Should be a no-op when not at a space");
+    }
+    
+    @Test
+    void testSkipSpacesWithComments() {
+        Grammar grammar = Ohm.grammar("""
+            G {
+              Start = "a"+
+              space += comment
+              comment = "#" (~"\\n" any)*
+            }""");
+        Matcher matcher = grammar.getMatcher("a # comment\n  a");
+        matchState = new MatchState(matcher, grammar.parseApplication("Start"));
+        InputStream inputStream = matchState.getInputStream();
+        inputStream.advance(1);
+        assertEquals(14, matchState.skipSpaces());
+        assertEquals(0, matchState.numBindings(), "Should not leave any bindings behind");
+        
+        matchState = new MatchState(matcher, grammar.parseApplication("Start"));
+        matchState.getInputStream().advance(1);
+        assertEquals(14, matchState.skipSpaces(), "Should use the matcher's cache");
+        assertEquals(15, matchState.getInputStream().getRightmostExaminedPosition());
+    }
     
     @Test
     void testBindingsStack() {
@@ -0,0 +1,86 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestMatchStream {
+    static final String source = """
+        G {
+          File = Record*
+          Lines = (Record ";")*
+          Record = ident "=" Value
+          Value = "[" ListOf<Record, ","> "]" -- nested
+                | number
+          ident = letter alnum*
+          number = digit+
+        }""";
+    
+    @Test
+    void testRecords() {
+        Grammar grammar = Ohm.grammar(source);
+        String input = "a = 1 b = [c = 2, d = 3]\n e=4";
+        List<Node> records = new ArrayList<>();
+        RecognitionResult result = grammar.matchStream(input, "File", "Record", records::add);
+        assertTrue(result.succeeded());
+        
+        // Records within records are part of the enclosing record
+        assertEquals(List.of("a = 1", "b = [c = 2, d = 3]", "e=4"),
+            records.stream().map(Node::sourceString).toList());
+        Node nested = records.get(1);
+        assertEquals("Record", nested.ctorName());
+        assertEquals(6, nested.getSource().getStartIndex());
+        assertEquals("[c = 2, d = 3]", nested.childAt(2).sourceString());
+        assertEquals(26, records.get(2).getSource().getStartIndex());
+    }
+    
+    @Test
+    void testRecordsBetweenSeparators() {
+        Grammar grammar = Ohm.grammar(source);
+        List<String> records = new ArrayList<>();
+        RecognitionResult result = grammar.matchStream("a=1; b=2;", "Lines", "Record",
+            record -> records.add(record.sourceString()));
+        assertTrue(result.succeeded());
+        assertEquals(List.of("a=1", "b=2"), records);
+    }
+    
+    @Test
+    void testRecordsAreHandedOverWhileMatching() {
+        Grammar grammar = Ohm.grammar(source);
+        List<String> records = new ArrayList<>();
+        assertThrows(IllegalStateException.class, () -> grammar.matchStream("a = 1 b = 2 ?", "File", "Record",
+            record -> {
+                records.add(record.sourceString());
+                throw new IllegalStateException("Stop after the first record");
+            }));
+        assertEquals(List.of("a = 1"), records);
+        
+        records.clear();
+        RecognitionResult result = grammar.matchStream("a = 1 b = 2 ?", "File", "Record",
+            record -> records.add(record.sourceString()));
+        assertTrue(result.failed());
+        assertEquals(List.of("a = 1", "b = 2"), records);
+    }
+    
+    @Test
+    void testMemoIsEvicted() {
+        Grammar grammar = Ohm.grammar(source);
+        String input = "a = [b = 1, c = 2] ".repeat(100);
+        int[] numRecords = {0};
+        RecognitionResult result = grammar.matchStream(input, "File", "Record", record -> numRecords[0]++);
+        assertTrue(result.succeeded());
+        assertEquals(100, numRecords[0]);
+        assertTrue(result.getStatistics().getEvictedRecords() > 0);
+    }
+    
+    @Test
+    void testInvalidRecordRule() {
+        Grammar grammar = Ohm.grammar(source);
+        assertThrows(OhmException.class, () -> grammar.matchStream("", "File", "Entry", record -> {}));
+    }
+}
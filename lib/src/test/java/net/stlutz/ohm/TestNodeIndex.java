@@ -0,0 +1,145 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestNodeIndex {
+    static final String source = """
+        G {
+          File = Record*
+          Record = Decl ";" -- decl
+                 | Exp ";" -- exp
+          Decl = ident "=" Exp
+          Exp = Exp "+" Pri -- plus
+              | Pri
+          Pri = "(" Exp ")" -- paren
+              | ident
+              | number
+          ident = letter alnum*
+          number = digit+
+        }""";
+    static final String input = "a = (b + 1) + c2; x + y;\n  z = 3 ; (1);";
+    static final MatchOptions options = MatchOptions.defaults().withIndexedRules("Exp", "Decl", "ident");
+    
+    /**
+     * Returns the intervals of the nodes of {@code ruleName} found by traversing the CST.
+     */
+    static List<String> traverse(Node node, String ruleName) {
+        List<String> result = new ArrayList<>();
+        traverse(node, ruleName, result);
+        return result;
+    }
+    
+    static void traverse(Node node, String ruleName, List<String> result) {
+        if (node.isNonterminal() && node.ctorName().equals(ruleName)) {
+            result.add(node.getSource().toString());
+        }
+        if (!node.isTerminal()) {
+            for (Node child : node.getChildren()) {
+                traverse(child, ruleName, result);
+            }
+        }
+    }
+    
+    static List<String> intervals(List<Node> nodes) {
+        return nodes.stream().map(node -> node.getSource().toString()).toList();
+    }
+    
+    static void assertSameAsTraversal(MatchResult result) {
+        assertTrue(result.succeeded());
+        for (String ruleName : options.getIndexedRules()) {
+            List<String> expected = new ArrayList<>(traverse(result.getRootNode(), ruleName));
+            expected.sort(null);
+            List<String> actual = new ArrayList<>(intervals(result.findAll(ruleName)));
+            actual.sort(null);
+            assertEquals(expected, actual, ruleName);
+        }
+    }
+    
+    @Test
+    void testFindAll() {
+        Grammar grammar = Ohm.grammar(source);
+        MatchResult result = grammar.match(input, "File", options);
+        // Backtracking from Decl to Exp and left recursion construct nodes that are not part of the CST
+        assertSameAsTraversal(result);
+        
+        List<Node> decls = result.findAll("Decl");
+        assertEquals(List.of("a = (b + 1) + c2", "z = 3"), decls.stream().map(Node::sourceString).toList());
+        assertEquals("Decl", decls.get(0).ctorName());
+        assertEquals("c2", decls.get(0).childAt(2).childAt(0).childAt(2).sourceString());
+        List<String> exps = result.findAll("Exp").stream().map(Node::sourceString).toList();
+        assertEquals(List.of("(b + 1) + c2", "(b + 1)", "b + 1", "b"), exps.subList(0, 4));
+    }
+    
+    @Test
+    void testFindEnclosing() {
+        Grammar grammar = Ohm.grammar(source);
+        MatchResult result = grammar.match(input, "File", options);
+        
+        assertEquals("b", result.findEnclosing("Exp", 5).sourceString());
+        assertEquals("b + 1", result.findEnclosing("Exp", 6).sourceString());
+        assertEquals("(b + 1)", result.findEnclosing("Exp", 4).sourceString());
+        assertEquals("(b + 1) + c2", result.findEnclosing("Exp", 12).sourceString());
+        assertEquals("a = (b + 1) + c2", result.findEnclosing("Decl", 15).sourceString());
+        assertEquals("c2", result.findEnclosing("ident", 15).sourceString());
+        assertNull(result.findEnclosing("Exp", 2));
+        assertNull(result.findEnclosing("Decl", 16));
+        assertNull(result.findEnclosing("ident", input.length()));
+    }
+    
+    @Test
+    void testInlinedRules() {
+        Grammar grammar = Ohm.grammar("""
+            G {
+              Exp = Exp sign Num -- op
+                  | Num
+              Num = sign? digit+
+              sign = "+" | "-"
+            }""");
+        MatchResult result = grammar.match("1 + -23 - 4", "Exp",
+            MatchOptions.defaults().withIndexedRules("sign", "digit"));
+        assertTrue(result.succeeded());
+        
+        // Both rules are inlined into character classes where they are applied
+        assertEquals(traverse(result.getRootNode(), "sign"), intervals(result.findAll("sign")));
+        assertEquals(List.of("+", "-", "-"), result.findAll("sign").stream().map(Node::sourceString).toList());
+        assertEquals(traverse(result.getRootNode(), "digit"), intervals(result.findAll("digit")));
+        assertEquals(4, result.findAll("digit").size());
+        assertEquals("-", result.findEnclosing("sign", 4).sourceString());
+        assertEquals("3", result.findEnclosing("digit", 6).sourceString());
+        assertNull(result.findEnclosing("digit", 3));
+    }
+    
+    @Test
+    void testReusedNodes() {
+        Grammar grammar = Ohm.grammar(source);
+        Matcher matcher = grammar.getMatcher(input);
+        assertSameAsTraversal(matcher.match("File", options));
+        // Nodes memoized by the first match are reused with their descendants
+        assertSameAsTraversal(matcher.match("File", options));
+        matcher.replaceInputRange(22, 23, "(y + w)");
+        assertSameAsTraversal(matcher.match("File", options));
+        assertSameAsTraversal(matcher.matchTwoPhase("File", options));
+    }
+    
+    @Test
+    void testNotIndexed() {
+        Grammar grammar = Ohm.grammar(source);
+        assertThrows(OhmException.class, () -> grammar.match(input, "File").findAll("Exp"));
+        assertThrows(OhmException.class, () -> grammar.match(input, "File", options).findAll("Pri"));
+        assertThrows(OhmException.class,
+            () -> grammar.match(input, "File", MatchOptions.defaults().withIndexedRules("Statement")));
+        
+        MatchResult failed = grammar.match("a = ;", "File", options);
+        assertTrue(failed.failed());
+        assertTrue(failed.findAll("Exp").isEmpty());
+        assertNull(failed.findEnclosing("Decl", 0));
+    }
+}
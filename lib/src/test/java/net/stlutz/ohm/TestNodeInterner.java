@@ -0,0 +1,123 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestNodeInterner {
+    static final Grammar grammar = Ohm.grammar("""
+        G {
+          File = Line*
+          Line = ident "=" Exp ";" -- assign
+               | Exp ";" -- exp
+          Exp = Exp "+" Pri -- plus
+              | Pri
+          Pri = "(" Exp ")" -- paren
+              | ident
+              | number
+          ident = letter alnum*
+          number = digit+
+        }""");
+    static final String input = "a = (b + 1) + c2; x + y;\n  z = 3 ; (1); a = b + 1; b + 1;";
+    
+    static MatchResult match(String input, NodeInterner nodeInterner) {
+        MatchResult result = grammar.match(input, "File", MatchOptions.defaults().withNodeInterner(nodeInterner));
+        assertTrue(result.succeeded());
+        return result;
+    }
+    
+    static void assertSameTree(ParseNode expected, ParseNode actual) {
+        assertEquals(expected.ctorName(), actual.ctorName());
+        assertEquals(expected.getMatchLength(), actual.getMatchLength());
+        assertEquals(expected.isOptional(), actual.isOptional());
+        assertArrayEquals(expected.getChildOffsets(), actual.getChildOffsets());
+        assertEquals(expected.numChildren(), actual.numChildren());
+        for (int i = 0; i < expected.numChildren(); i++) {
+            assertSameTree(expected.getChildren()[i], actual.getChildren()[i]);
+        }
+    }
+    
+    static ParseNode digit(ParseNode child) {
+        return new NonterminalNode(1, "digit", new ParseNode[]{child}, new int[]{0});
+    }
+    
+    @Test
+    void testSameTree() {
+        MatchResult expected = grammar.match(input, "File");
+        NodeInterner nodeInterner = new NodeInterner(1024);
+        MatchResult actual = match(input, nodeInterner);
+        assertSameTree(expected.getCST(), actual.getCST());
+        
+        MatchStatistics statistics = actual.getStatistics();
+        assertTrue(statistics.getSharedNodes() > 0);
+        assertTrue(statistics.getSharedNodeBytes() > 0);
+        assertEquals(statistics.getSharedNodes(), nodeInterner.getSharedNodes());
+        assertEquals(statistics.getSharedNodeBytes(), nodeInterner.getSavedBytes());
+        assertEquals(0, expected.getStatistics().getSharedNodes());
+    }
+    
+    @Test
+    void testEqualNodesAreShared() {
+        NodeInterner nodeInterner = new NodeInterner(16);
+        ParseNode terminal = TerminalNode.get(1);
+        ParseNode first = nodeInterner.intern(digit(terminal));
+        ParseNode second = nodeInterner.intern(digit(terminal));
+        assertSame(first, second);
+        assertEquals(2, nodeInterner.getLookups());
+        assertEquals(1, nodeInterner.getSharedNodes());
+        assertEquals(NodeInterner.approximateSize(first), nodeInterner.getSavedBytes());
+        
+        // Children are compared by identity, so equal children must have been interned themselves
+        assertNotSame(first, nodeInterner.intern(digit(digit(terminal))));
+        assertNotSame(first, nodeInterner.intern(new NonterminalNode(1, "letter", new ParseNode[]{terminal},
+            new int[]{0})));
+        
+        nodeInterner.clear();
+        assertNotSame(first, nodeInterner.intern(digit(terminal)));
+        assertEquals(1, nodeInterner.getSharedNodes());
+    }
+    
+    @Test
+    void testSmallCapacity() {
+        MatchResult expected = grammar.match(input, "File");
+        NodeInterner nodeInterner = new NodeInterner(1);
+        assertEquals(1, nodeInterner.getCapacity());
+        assertSameTree(expected.getCST(), match(input, nodeInterner).getCST());
+        assertEquals(1024, new NodeInterner(1000).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new NodeInterner(0));
+    }
+    
+    @Test
+    void testConcurrentMatches() {
+        NodeInterner nodeInterner = new NodeInterner(256);
+        List<String> inputs = IntStream.range(0, 32).mapToObj(i -> "v%d = %d + w; w + %d;".formatted(i, i % 4, i))
+            .toList();
+        inputs.parallelStream().forEach(each -> assertSameTree(grammar.match(each, "File").getCST(),
+            match(each, nodeInterner).getCST()));
+        assertTrue(nodeInterner.getSharedNodes() > 0);
+    }
+    
+    @Test
+    void testNodeIndex() {
+        MatchOptions options = MatchOptions.defaults().withIndexedRules("Exp", "ident");
+        MatchResult expected = grammar.match(input, "File", options);
+        Matcher matcher = grammar.getMatcher(input);
+        MatchOptions sharingOptions = options.withNodeInterner(new NodeInterner(1024));
+        // Shared nodes occur at several positions, each of them is indexed
+        for (int i = 0; i < 2; i++) {
+            MatchResult actual = matcher.match("File", sharingOptions);
+            for (String ruleName : options.getIndexedRules()) {
+                assertEquals(expected.findAll(ruleName).stream().map(Node::getSource).toList(),
+                    actual.findAll(ruleName).stream().map(Node::getSource).toList(), ruleName);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParallelSemantics {
+    static final Grammar grammar = Ohm.grammar("""
+        Sums {
+          Program = Sum*
+          Sum = Sum "+" number -- plus
+              | number
+          number = digit+
+        }""");
+    
+    public static class SumSemantics extends Semantics {
+        static final AtomicInteger instances = new AtomicInteger();
+        
+        public SumSemantics() {
+            super();
+            instances.incrementAndGet();
+        }
+        
+        public long sum(Node node) {
+            return (long) apply(node);
+        }
+        
+        @Action(SpecialActionNames.iteration)
+        public long iteration(Node... children) {
+            return reduceChildren(self, 0L, Long::sum);
+        }
+        
+        @Action
+        public long Sum_plus(Node sum, Node plus, Node number) {
+            return sum(sum) + sum(number);
+        }
+        
+        @Action
+        public long number(Node digits) {
+            return Long.parseLong(self.sourceString());
+        }
+    }
+    
+    static MatchResult matchSums(int count) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            input.append(i).append(" + 1\n");
+        }
+        MatchResult matchResult = grammar.match(input.toString());
+        assertTrue(matchResult.succeeded());
+        return matchResult;
+    }
+    
+    @Test
+    void testParallelMatchesSequential() {
+        MatchResult matchResult = matchSums(5000);
+        SemanticsBlueprint<SumSemantics> blueprint = SemanticsBlueprint.create(SumSemantics.class);
+        long sequential = blueprint.on(matchResult).sum(matchResult.getRootNode());
+        
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int instancesBefore = SumSemantics.instances.get();
+            long parallel = blueprint.onParallel(matchResult, pool, 100).sum(matchResult.getRootNode());
+            assertEquals(sequential, parallel);
+            assertEquals(5000L * 4999 / 2 + 5000, parallel);
+            // One instance for the root and one per task of at most 100 children
+            assertTrue(SumSemantics.instances.get() - instancesBefore > 50);
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    @Test
+    void testBelowThresholdStaysSequential() {
+        MatchResult matchResult = matchSums(10);
+        SemanticsBlueprint<SumSemantics> blueprint = SemanticsBlueprint.create(SumSemantics.class);
+        int instancesBefore = SumSemantics.instances.get();
+        long result = blueprint.onParallel(matchResult, ForkJoinPool.commonPool(), 10).sum(matchResult.getRootNode());
+        assertEquals(55L, result);
+        assertEquals(1, SumSemantics.instances.get() - instancesBefore);
+    }
+    
+    @Test
+    void testInvalidThreshold() {
+        MatchResult matchResult = matchSums(1);
+        SemanticsBlueprint<SumSemantics> blueprint = SemanticsBlueprint.create(SumSemantics.class);
+        assertThrows(OhmException.class, () -> blueprint.onParallel(matchResult, ForkJoinPool.commonPool(), 0));
+    }
+}
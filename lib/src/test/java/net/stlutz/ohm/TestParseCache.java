@@ -0,0 +1,130 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParseCache {
+    static final String source = """
+        Config {
+          Entries = Entry*
+          Entry = key "=" value? comment?
+          key = letter alnum*
+          value = digit+
+          comment = "#" (~"\\n" any)*
+        }""";
+    static final String input = "a = 1 # first\nb = # none\nc=23\n";
+    
+    @TempDir
+    Path directory;
+    
+    static void assertSameTree(ParseNode expected, ParseNode actual) {
+        assertEquals(expected.ctorName(), actual.ctorName());
+        assertEquals(expected.getMatchLength(), actual.getMatchLength());
+        assertEquals(expected.isTerminal(), actual.isTerminal());
+        assertEquals(expected.isIteration(), actual.isIteration());
+        assertEquals(expected.isOptional(), actual.isOptional());
+        assertEquals(expected.isLexical(), actual.isLexical());
+        assertEquals(expected.isSyntactic(), actual.isSyntactic());
+        assertEquals(expected.numChildren(), actual.numChildren());
+        assertArrayEquals(expected.getChildOffsets(), actual.getChildOffsets());
+        for (int i = 0; i < expected.numChildren(); i++) {
+            assertSameTree(expected.getChildren()[i], actual.getChildren()[i]);
+        }
+    }
+    
+    static List<Path> cacheFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+    
+    @Test
+    void testRoundTrip() {
+        Grammar grammar = Ohm.grammar(source);
+        MatchResult expected = grammar.match(input);
+        assertTrue(expected.succeeded());
+        
+        MappedCST cst = MappedCST.wrap(MappedCST.toBytes(expected));
+        assertEquals(input.length(), cst.getInputLength());
+        assertEquals(expected.getCstOffset(), cst.getCstOffset());
+        assertEquals(expected.getRightmostExaminedPosition(), cst.getRightmostExaminedPosition());
+        assertSameTree(expected.getCST(), cst.getRoot());
+    }
+    
+    @Test
+    void testCache() throws IOException {
+        Grammar grammar = Ohm.grammar(source);
+        ParseCache cache = new ParseCache(directory);
+        
+        MatchResult first = cache.match(grammar, input);
+        assertTrue(first.succeeded());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cacheFiles(directory).size());
+        
+        MatchResult second = cache.match(grammar, input);
+        assertEquals(1, cache.getHitCount());
+        assertNull(second.getMatcher());
+        assertSameTree(first.getCST(), second.getCST());
+        Node entries = second.getRootNode();
+        assertEquals(input, entries.sourceString());
+        assertEquals("c=23", entries.childAt(0).childAt(2).sourceString());
+        assertEquals(4, second.getLineIndex().numLines());
+        
+        // An equivalent grammar built again hits as well
+        cache.match(Ohm.grammar(source), input);
+        assertEquals(2, cache.getHitCount());
+    }
+    
+    @Test
+    void testKey() throws IOException {
+        Grammar grammar = Ohm.grammar(source);
+        ParseCache cache = new ParseCache(directory);
+        
+        cache.match(grammar, input);
+        cache.match(grammar, input + "d=4");
+        cache.match(grammar, "a", "key");
+        cache.match(Ohm.grammar(source.replace("digit+", "digit*")), input);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(4, cacheFiles(directory).size());
+    }
+    
+    @Test
+    void testFailuresAreNotCached() throws IOException {
+        Grammar grammar = Ohm.grammar(source);
+        ParseCache cache = new ParseCache(directory);
+        
+        assertTrue(cache.match(grammar, "1 = 2").failed());
+        assertTrue(cache.match(grammar, "1 = 2").failed());
+        assertEquals(2, cache.getMissCount());
+        assertTrue(cacheFiles(directory).isEmpty());
+    }
+    
+    @Test
+    void testCorruptFile() throws IOException {
+        Grammar grammar = Ohm.grammar(source);
+        ParseCache cache = new ParseCache(directory);
+        
+        MatchResult expected = cache.match(grammar, input);
+        Path file = cacheFiles(directory).get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        
+        MatchResult actual = cache.match(grammar, input);
+        assertEquals(2, cache.getMissCount());
+        assertSameTree(expected.getCST(), actual.getCST());
+        assertArrayEquals(bytes, Files.readAllBytes(file));
+    }
+}
@@ -0,0 +1,155 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestParseListener {
+    static final String source = """
+        G {
+          File = Record*
+          Record = Decl ";" -- decl
+                 | Exp ";" -- exp
+          Decl = ident "=" Exp
+          Exp = Exp "+" Pri -- plus
+              | Pri
+          Pri = "(" Exp ")" -- paren
+              | ident
+              | number
+          Pairs = (ident ":" number)+
+          ident = letter alnum*
+          number = digit+
+        }""";
+    
+    static class Recorder implements ParseListener {
+        final List<String> events = new ArrayList<>();
+        
+        @Override
+        public void enterRule(String ruleName, int offset) {
+            events.add("enter " + ruleName + " " + offset);
+        }
+        
+        @Override
+        public void exitRule(String ruleName, int offset, int length) {
+            events.add("exit " + ruleName + " " + offset + " " + length);
+        }
+        
+        @Override
+        public void terminal(int offset, int length) {
+            events.add("terminal " + offset + " " + length);
+        }
+    }
+    
+    /**
+     * Returns the events of a depth-first traversal of the CST, with the children of iterations in input
+     * order.
+     */
+    static List<String> expectedEvents(Node node) {
+        List<String> events = new ArrayList<>();
+        addEvents(node, events);
+        return events;
+    }
+    
+    static void addEvents(Node node, List<String> events) {
+        SourceInterval source = node.getSource();
+        if (node.isTerminal()) {
+            events.add("terminal " + source.getStartIndex() + " " + source.length());
+        } else if (node.isIteration()) {
+            for (Node child : node.getChildren()) {
+                addEvents(child, events);
+            }
+        } else {
+            events.add("enter " + node.ctorName() + " " + source.getStartIndex());
+            addChildEvents(node.getChildren(), events);
+            events.add("exit " + node.ctorName() + " " + source.getStartIndex() + " " + source.length());
+        }
+    }
+    
+    static void addChildEvents(Node[] children, List<String> events) {
+        int i = 0;
+        while (i < children.length) {
+            // Columns of the same iteration are interleaved row by row
+            int end = i + 1;
+            while (children[i].isIteration() && end < children.length && children[end].isIteration()
+                && children[end].getSource().equals(children[i].getSource())) {
+                end++;
+            }
+            if (end - i == 1) {
+                addEvents(children[i], events);
+            } else {
+                for (int row = 0; row < children[i].numChildren(); row++) {
+                    for (int column = i; column < end; column++) {
+                        addEvents(children[column].childAt(row), events);
+                    }
+                }
+            }
+            i = end;
+        }
+    }
+    
+    static void assertSameEvents(Grammar grammar, String input, String startRule) {
+        MatchResult matchResult = grammar.match(input, startRule);
+        assertTrue(matchResult.succeeded());
+        Recorder recorder = new Recorder();
+        RecognitionResult result = grammar.matchEvents(input, startRule, recorder);
+        assertTrue(result.succeeded());
+        assertEquals(expectedEvents(matchResult.getRootNode()), recorder.events);
+    }
+    
+    @Test
+    void testEvents() {
+        Grammar grammar = Ohm.grammar(source);
+        Recorder recorder = new Recorder();
+        grammar.matchEvents("a=1;", "File", recorder);
+        assertEquals(List.of("enter File 0", "enter Record 0", "enter Record_decl 0", "enter Decl 0",
+            "enter ident 0", "enter letter 0", "enter lower 0", "terminal 0 1", "exit lower 0 1",
+            "exit letter 0 1", "exit ident 0 1", "terminal 1 1", "enter Exp 2", "enter Pri 2", "enter number 2",
+            "enter digit 2", "terminal 2 1", "exit digit 2 1", "exit number 2 1", "exit Pri 2 1", "exit Exp 2 1",
+            "exit Decl 0 3", "terminal 3 1", "exit Record_decl 0 4", "exit Record 0 4", "exit File 0 4"),
+            recorder.events);
+    }
+    
+    @Test
+    void testSameAsCST() {
+        Grammar grammar = Ohm.grammar(source);
+        // Backtracking from Decl to Exp, left recursion and nested applications
+        assertSameEvents(grammar, "a = (b + 1) + c2; x + y;\n  z = 3 ; (1);", "File");
+        assertSameEvents(grammar, "a + (b + c)", "Exp");
+        // Iterations with several columns
+        assertSameEvents(grammar, "a: 1 b2 : 34", "Pairs");
+        assertSameEvents(grammar, "", "File");
+        // Syntactic rules, lookahead and parameterized rules
+        assertSameEvents(Ohm.OhmGrammar, TestGrammarSnapshot.source, "Grammars");
+    }
+    
+    @Test
+    void testRecordsAreReportedWhileMatching() {
+        Grammar grammar = Ohm.grammar(source);
+        Recorder recorder = new Recorder() {
+            @Override
+            public void exitRule(String ruleName, int offset, int length) {
+                super.exitRule(ruleName, offset, length);
+                if (ruleName.equals("Record")) {
+                    throw new IllegalStateException("Stop after the first record");
+                }
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> grammar.matchEvents("a = 1; b; ?", "File", recorder));
+        assertEquals("enter File 0", recorder.events.get(0));
+        assertEquals("exit Record 0 6", recorder.events.get(recorder.events.size() - 1));
+    }
+    
+    @Test
+    void testMemoIsEvicted() {
+        Grammar grammar = Ohm.grammar(source);
+        String input = "a = b + 1;".repeat(100);
+        RecognitionResult result = grammar.matchEvents(input, "File", new ParseListener() {});
+        assertTrue(result.succeeded());
+        assertTrue(result.getStatistics().getEvictedRecords() > 0);
+    }
+}
@@ -0,0 +1,101 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestPushMatcher {
+    private static final Grammar grammar = Fixtures.statements;
+    
+    static final String program = "a = 1 + b;\nfoo = (a + 23) + 4;\nbar = foo + (1 + (2 + 3));\n";
+    
+    private static String toTreeString(ParseNode node) {
+        if (node == null) {
+            return null;
+        }
+        if (node.isTerminal()) {
+            return "_" + node.getMatchLength();
+        }
+        StringBuilder sb = new StringBuilder(node.ctorName()).append("(");
+        ParseNode[] children = node.getChildren();
+        int[] offsets = node.getChildOffsets();
+        for (int i = 0; i < children.length; i++) {
+            sb.append(" ").append(offsets[i]).append(":").append(toTreeString(children[i]));
+        }
+        return sb.append(")").toString();
+    }
+    
+    @Test
+    void testReplaceInputRange() {
+        Matcher matcher = grammar.getMatcher(program);
+        assertTrue(matcher.match("Program").succeeded());
+        
+        String[][] edits = {{"4", "5"}, {"foo", "x"}, {"+ 5", "+ (5 + y)"}, {"\n", ""}, {"= 1", "= (1"}};
+        String input = program;
+        for (String[] edit : edits) {
+            int start = input.indexOf(edit[0]);
+            input = input.substring(0, start) + edit[1] + input.substring(start + edit[0].length());
+            matcher.replaceInputRange(start, start + edit[0].length(), edit[1]);
+            assertEquals(input, matcher.getInput());
+            
+            MatchResult expected = grammar.match(input, "Program");
+            MatchResult actual = matcher.match("Program");
+            assertEquals(expected.succeeded(), actual.succeeded(), input);
+            assertEquals(toTreeString(expected.getCST()), toTreeString(actual.getCST()), input);
+        }
+        
+        assertThrows(OhmException.class, () -> matcher.replaceInputRange(3, 2, ""));
+        assertThrows(OhmException.class, () -> matcher.replaceInputRange(0, matcher.getInput().length() + 1, ""));
+    }
+    
+    @Test
+    void testFeedChunks() {
+        String expected = toTreeString(grammar.match(program, "Program").getCST());
+        for (int chunkSize : new int[]{1, 2, 5, 13, 100}) {
+            PushMatcher pushMatcher = new PushMatcher(grammar, "Program");
+            for (int i = 0; i < program.length(); i += chunkSize) {
+                pushMatcher.feed(program.substring(i, Math.min(i + chunkSize, program.length())));
+                assertFalse(pushMatcher.hasFailed());
+            }
+            MatchResult result = pushMatcher.finish();
+            assertTrue(result.succeeded());
+            assertEquals(program, result.getInput());
+            assertEquals(expected, toTreeString(result.getCST()));
+            assertTrue(pushMatcher.getResult().isDone());
+            assertThrows(OhmException.class, () -> pushMatcher.feed("x"));
+        }
+    }
+    
+    @Test
+    void testFailsEarly() {
+        PushMatcher pushMatcher = new PushMatcher(grammar, "Program");
+        pushMatcher.feed("a = 1;\n");
+        pushMatcher.feed("b = ");
+        assertFalse(pushMatcher.hasFailed(), "More input might still complete the statement");
+        pushMatcher.feed("; c = 2;");
+        assertTrue(pushMatcher.hasFailed());
+        pushMatcher.feed("d = 3;");
+        assertTrue(pushMatcher.finish().failed());
+    }
+    
+    @Test
+    void testSubscriber() throws Exception {
+        PushMatcher pushMatcher = new PushMatcher(grammar, "Program");
+        try (SubmissionPublisher<CharBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(pushMatcher);
+            for (String line : program.split("(?<=\n)")) {
+                publisher.submit(CharBuffer.wrap(line));
+            }
+        }
+        MatchResult result = pushMatcher.getResult().get(10, TimeUnit.SECONDS);
+        assertTrue(result.succeeded());
+        assertEquals(program, result.getInput());
+    }
+}
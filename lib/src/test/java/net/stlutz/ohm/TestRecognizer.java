@@ -0,0 +1,138 @@
+package net.stlutz.ohm;
+
+import net.stlutz.ohm.pexprs.PExpr;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestRecognizer {
+    static final String arithmeticSource = """
+        Arithmetic {
+          Exp = AddExp
+          AddExp = MulExp ("+" MulExp)*
+          MulExp = PriExp ("*" PriExp)*
+          PriExp = "(" Exp ")" -- paren
+                 | number
+          number = digit+
+        }""";
+    
+    @Test
+    void testRecognizeAgreesWithMatch() {
+        Grammar grammar = Ohm.grammar(arithmeticSource);
+        String[] inputs = {"1", " 1 + 2 * 3 ", "(1+2)*3", "", "1 +", "(1", "1 2"};
+        for (String input : inputs) {
+            assertEquals(grammar.match(input).succeeded(), grammar.recognize(input).succeeded(),
+                "Recognizing '%s' should agree with matching".formatted(input));
+        }
+    }
+    
+    @Test
+    void testRightmostExaminedPosition() {
+        Grammar grammar = Ohm.grammar(arithmeticSource);
+        RecognitionResult result = grammar.recognize("1 + (2 * )");
+        assertTrue(result.failed());
+        assertEquals(10, result.getRightmostExaminedPosition());
+    }
+    
+    @Test
+    void testConsumedLength() {
+        Grammar grammar = Ohm.grammar(arithmeticSource);
+        assertEquals(8, grammar.recognize(" 1 + 2*3 ").getConsumedLength());
+        
+        RecognitionResult trailing = grammar.recognize("1 2");
+        assertTrue(trailing.failed());
+        assertEquals(1, trailing.getConsumedLength());
+        
+        assertEquals(-1, grammar.recognize("(1").getConsumedLength());
+        assertEquals(-1, grammar.recognize("").getConsumedLength());
+    }
+    
+    @Test
+    void testMatchAfterRecognizeBuildsCst() {
+        Grammar grammar = Ohm.grammar(arithmeticSource);
+        Matcher matcher = grammar.getMatcher("(1+2)*3");
+        assertTrue(matcher.recognize("Exp").succeeded());
+        MatchResult matchResult = matcher.match("Exp");
+        assertTrue(matchResult.succeeded());
+        assertNotNull(matchResult.getCST());
+        assertEquals("Exp", matchResult.getRootNode().ctorName());
+    }
+    
+    @Test
+    void testRecognizeOhmGrammar() {
+        assertTrue(Ohm.OhmGrammar.recognize("G { start = \"a\" | \"b\" }").succeeded());
+        assertFalse(Ohm.OhmGrammar.recognize("G { start = ( }").succeeded());
+    }
+    
+    static void assertSameTree(ParseNode expected, ParseNode actual) {
+        assertEquals(expected.ctorName(), actual.ctorName());
+        assertEquals(expected.getMatchLength(), actual.getMatchLength());
+        assertEquals(expected.isOptional(), actual.isOptional());
+        assertArrayEquals(expected.getChildOffsets(), actual.getChildOffsets());
+        assertEquals(expected.numChildren(), actual.numChildren());
+        for (int i = 0; i < expected.numChildren(); i++) {
+            assertSameTree(expected.getChildren()[i], actual.getChildren()[i]);
+        }
+    }
+    
+    @Test
+    void testTwoPhaseMatch() {
+        Grammar grammar = Ohm.grammar(arithmeticSource);
+        String[] inputs = {"1", " 1 + 2 * 3 ", "((1+2)*3 + 4) * 5"};
+        for (String input : inputs) {
+            MatchResult expected = grammar.match(input);
+            MatchResult actual = grammar.getMatcher(input).matchTwoPhase("Exp");
+            assertTrue(actual.succeeded());
+            assertEquals(expected.getCstOffset(), actual.getCstOffset());
+            assertSameTree(expected.getCST(), actual.getCST());
+        }
+        assertTrue(grammar.getMatcher("1 + ").matchTwoPhase("Exp").failed());
+    }
+    
+    @Test
+    void testTwoPhaseMatchWithBacktracking() {
+        Grammar grammar = Ohm.grammar("""
+            Statements {
+              Stmts = Stmt*
+              Stmt = Call ";" -- call
+                   | Call "!" -- bang
+                   | "{" Stmts "}" -- block
+              Call = ident "(" ListOf<Call, ","> ")" -- args
+                   | ident
+              ident = letter+
+            }""");
+        String input = "f(g, h(x)); { a! b(c)! } d;";
+        MatchResult expected = grammar.match(input);
+        MatchResult actual = grammar.getMatcher(input).matchTwoPhase("Stmts");
+        assertTrue(actual.succeeded());
+        assertSameTree(expected.getCST(), actual.getCST());
+    }
+    
+    @Test
+    void testMightStartWith() {
+        assertTrue(PExpr.seq(PExpr.terminal("ab"), PExpr.any()).mightStartWith('a'));
+        assertFalse(PExpr.seq(PExpr.terminal("ab"), PExpr.any()).mightStartWith('b'));
+        assertTrue(PExpr.alt(PExpr.range("a", "z"), PExpr.end()).mightStartWith(-1));
+        assertFalse(PExpr.alt(PExpr.range("a", "z"), PExpr.end()).mightStartWith('A'));
+        assertFalse(PExpr.plus(PExpr.range("0", "9")).mightStartWith('x'));
+        assertTrue(PExpr.star(PExpr.range("0", "9")).mightStartWith('x'));
+        assertTrue(PExpr.not(PExpr.terminal("x")).mightStartWith('y'));
+    }
+    
+    @Test
+    void testTwoPhaseMatchOhmGrammar() throws IOException {
+        String source = Files.readString(Paths.get("src", "main", "grammars", "ohm-grammar.ohm"));
+        MatchResult expected = Ohm.OhmGrammar.match(source);
+        MatchResult actual = Ohm.OhmGrammar.getMatcher(source).matchTwoPhase("Grammars");
+        assertTrue(actual.succeeded());
+        assertSameTree(expected.getCST(), actual.getCST());
+    }
+}
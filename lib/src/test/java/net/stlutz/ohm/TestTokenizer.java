@@ -0,0 +1,120 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestTokenizer {
+    static final String source = """
+        G {
+          Token = ident | number | operator | comment
+          token = ident | number | operator | comment | space
+          ident = letter alnum*
+          number = digit+
+          operator = "+" | "-" | "=" | "(" | ")" | ";"
+          comment = "#" (~"\\n" any)*
+        }""";
+    
+    /**
+     * Returns the kind and text of each token.
+     */
+    static List<String> tokens(TokenArray tokens) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            result.add(tokens.getKind(i) + " " + tokens.getText(i));
+        }
+        return result;
+    }
+    
+    static void assertSameTokens(TokenArray expected, TokenArray actual) {
+        assertEquals(expected.getInput(), actual.getInput());
+        assertEquals(tokens(expected), tokens(actual));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getStart(i), actual.getStart(i));
+        }
+        assertEquals(expected.getEndPosition(), actual.getEndPosition());
+    }
+    
+    @Test
+    void testTokens() {
+        Tokenizer tokenizer = new Tokenizer(Ohm.OhmGrammar, "token", "G { // rules\n  a = \"b\" }");
+        TokenArray tokens = tokenizer.getTokens();
+        assertTrue(tokens.isComplete());
+        assertEquals(List.of("caseName", "comment", "ident", "operator", "punctuation", "terminal", "any"),
+            tokens.getKinds());
+        // The token rule is lexical, so spaces are tokens as well
+        assertEquals(List.of("ident G", "any  ", "any {", "any  ", "comment // rules", "any \n", "any  ", "any  ",
+            "ident a", "any  ", "operator =", "any  ", "terminal \"b\"", "any  ", "any }"), tokens(tokens));
+        
+        assertEquals(4, tokens.getStart(4));
+        assertEquals(12, tokens.getEnd(4));
+        assertEquals(tokens.getKindIndex(1), tokens.getKindIndex(2));
+        assertEquals(tokens.kindIndexOf("ident"), tokens.getKindIndex(0));
+        assertEquals(-1, tokens.kindIndexOf("keyword"));
+        assertEquals(4, tokens.indexAt(6));
+        assertEquals(-1, tokens.indexAt(tokens.getInput().length()));
+    }
+    
+    @Test
+    void testSyntacticTokenRule() {
+        Grammar grammar = Ohm.grammar(source);
+        Tokenizer tokenizer = new Tokenizer(grammar, "Token", "a1 = (b - 22) # c\n");
+        assertEquals(List.of("ident a1", "operator =", "operator (", "ident b", "operator -", "number 22",
+            "operator )", "comment # c"), tokens(tokenizer.getTokens()));
+        assertTrue(tokenizer.getTokens().isComplete());
+        
+        tokenizer.replaceInputRange(5, 6, "?");
+        assertFalse(tokenizer.getTokens().isComplete());
+        assertEquals(5, tokenizer.getTokens().getEndPosition());
+        tokenizer.replaceInputRange(5, 6, "");
+        assertTrue(tokenizer.getTokens().isComplete());
+        
+        assertThrows(OhmException.class, () -> new Tokenizer(grammar, "Tokens", ""));
+        assertThrows(OhmException.class, () -> tokenizer.replaceInputRange(3, 2, ""));
+    }
+    
+    @Test
+    void testIncremental() {
+        Grammar grammar = Ohm.grammar(source);
+        String line = "abc = (x1 + 22) - y; # comment\n";
+        Tokenizer tokenizer = new Tokenizer(grammar, "token", line.repeat(100));
+        int numTokens = tokenizer.getTokens().size();
+        assertEquals(numTokens, tokenizer.getLastScannedTokens());
+        
+        int position = 50 * line.length() + 7;
+        tokenizer.replaceInputRange(position, position + 2, "foo");
+        assertTrue(tokenizer.getLastScannedTokens() < 5);
+        assertEquals(numTokens, tokenizer.getTokens().size());
+        assertSameTokens(new Tokenizer(grammar, "token", tokenizer.getInput()).getTokens(), tokenizer.getTokens());
+        
+        // Opening a comment changes the tokens up to the end of the line
+        tokenizer.replaceInputRange(position, position, "#");
+        assertSameTokens(new Tokenizer(grammar, "token", tokenizer.getInput()).getTokens(), tokenizer.getTokens());
+        assertTrue(tokenizer.getTokens().size() < numTokens);
+    }
+    
+    @Test
+    void testRandomEdits() {
+        Grammar grammar = Ohm.grammar(source);
+        String[] insertions = {"a", "1", " ", "\n", "#", "+", "?", "ab 12", ""};
+        Random random = new Random(42);
+        for (String tokenRule : List.of("token", "Token")) {
+            Tokenizer tokenizer = new Tokenizer(grammar, tokenRule, "abc = (x1 + 22) - y; # comment\nz");
+            for (int i = 0; i < 300; i++) {
+                int length = tokenizer.getInput().length();
+                int start = random.nextInt(length + 1);
+                int end = Math.min(length, start + random.nextInt(3));
+                tokenizer.replaceInputRange(start, end, insertions[random.nextInt(insertions.length)]);
+                assertSameTokens(new Tokenizer(grammar, tokenRule, tokenizer.getInput()).getTokens(),
+                    tokenizer.getTokens());
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package net.stlutz.ohm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestVisitorGenerator {
+    static final Grammar grammar = Ohm.grammar("""
+        Arithmetic {
+          Exp = Exp "+" Exp -- plus
+              | Pri
+          Pri = "(" Exp ")" -- paren
+              | number
+          Call = ident "(" ListOf<Exp, ","> ")"
+          Pair<a, b> = a b
+          number = digit+ ("." digit+)?
+          ident = letter alnum*
+        }""");
+    
+    static final String evaluatorSource = """
+        package com.example;
+
+        import net.stlutz.ohm.Node;
+
+        import java.util.List;
+        import java.util.Optional;
+
+        public class Evaluator implements ArithmeticVisitor<Double> {
+            public Double Exp(Node exp) {
+                return visit(exp);
+            }
+
+            public Double Exp_plus(ExpNode left, Node plus, ExpNode right) {
+                return left.accept(this) + right.accept(this);
+            }
+
+            public Double Pri(Node pri) {
+                return visit(pri);
+            }
+
+            public Double Pri_paren(Node open, ExpNode exp, Node close) {
+                return exp.accept(this);
+            }
+
+            public Double Call(IdentNode ident, Node open, Node args, Node close) {
+                throw new UnsupportedOperationException();
+            }
+
+            public Double Pair(Node a, Node b) {
+                throw new UnsupportedOperationException();
+            }
+
+            public Double number(List<Node> digits, Optional<Node> point, Optional<List<Node>> fraction) {
+                StringBuilder sb = new StringBuilder();
+                digits.forEach(digit -> sb.append(digit.sourceString()));
+                point.ifPresent(node -> sb.append(node.sourceString()));
+                fraction.ifPresent(nodes -> nodes.forEach(digit -> sb.append(digit.sourceString())));
+                return Double.parseDouble(sb.toString());
+            }
+
+            public Double ident(Node letter, List<Node> rest) {
+                throw new UnsupportedOperationException();
+            }
+        }
+""";
+    
+    @TempDir
+    Path tempDir;
+    
+    @Test
+    void testParameterNames() {
+        assertEquals(List.of("exp1", "terminal", "exp2"),
+            VisitorGenerator.getParameterNames(grammar.getRule("Exp_plus")));
+        assertEquals(List.of("terminal1", "exp", "terminal2"),
+            VisitorGenerator.getParameterNames(grammar.getRule("Pri_paren")));
+        assertEquals(List.of("digitIter", "terminalOpt", "digitIterOpt"),
+            VisitorGenerator.getParameterNames(grammar.getRule("number")));
+        assertEquals(List.of("a", "b"), VisitorGenerator.getParameterNames(grammar.getRule("Pair")));
+    }
+    
+    @Test
+    void testParameterTypes() {
+        Map<String, String> classNames =
+            VisitorGenerator.getNodeClassNames(VisitorGenerator.getVisitedRules(grammar).keySet());
+        assertEquals("[ExpNode, Node, ExpNode]",
+            VisitorGenerator.getParameterTypes(grammar.getRule("Exp_plus"), classNames).toString());
+        // Exp_plus and Pri
+        assertEquals("[Node]", VisitorGenerator.getParameterTypes(grammar.getRule("Exp"), classNames).toString());
+        assertEquals("[List<Node>, Optional<Node>, Optional<List<Node>>]",
+            VisitorGenerator.getParameterTypes(grammar.getRule("number"), classNames).toString());
+        assertEquals("[IdentNode, Node, Node, Node]",
+            VisitorGenerator.getParameterTypes(grammar.getRule("Call"), classNames).toString());
+    }
+    
+    @Test
+    void testNodeClassNames() {
+        assertEquals(Map.of("Ident", "IdentNode", "ident", "IdentNode_", "Exp_plus", "Exp_plusNode"),
+            VisitorGenerator.getNodeClassNames(Set.of("ident", "Ident", "Exp_plus")));
+    }
+    
+    @Test
+    void testVisitedRules() {
+        var rules = VisitorGenerator.getVisitedRules(grammar).keySet();
+        assertTrue(rules.contains("Exp_plus"));
+        assertTrue(rules.contains("ident"));
+        assertFalse(rules.contains("ListOf"));
+        assertFalse(rules.contains("letter"));
+    }
+    
+    @Test
+    void testGenerate() {
+        String source = VisitorGenerator.generate(grammar, "com.example");
+        assertTrue(source.contains("package com.example;"));
+        assertTrue(source.contains("public interface ArithmeticVisitor<T> {"));
+        assertTrue(source.contains("T Exp_plus(ExpNode exp1, Node terminal, ExpNode exp2);"));
+        assertTrue(source.contains("T Call(IdentNode ident, Node terminal1, Node listOf, Node terminal2);"));
+        assertTrue(source.contains(
+            "case \"Exp_plus\" -> Exp_plus(new ExpNode(children[0]), children[1], new ExpNode(children[2]));"));
+        assertTrue(source.contains("case \"number\" -> number(toList(children[0], Function.identity()), "
+            + "toOptional(children[1], Function.identity()), "
+            + "toOptional(children[2], n0 -> toList(n0, Function.identity())));"));
+        assertTrue(source.contains("default -> visitNonterminal(node);"));
+    }
+    
+    @Test
+    void testGeneratedVisitorCompilesAndRuns() throws Exception {
+        Path sourceDir = tempDir.resolve("com/example");
+        Files.createDirectories(sourceDir);
+        Path visitorFile = sourceDir.resolve("ArithmeticVisitor.java");
+        Files.writeString(visitorFile, VisitorGenerator.generate(grammar, "com.example"));
+        Path evaluatorFile = sourceDir.resolve("Evaluator.java");
+        Files.writeString(evaluatorFile, evaluatorSource);
+        compile(visitorFile, evaluatorFile);
+        
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[]{tempDir.toUri().toURL()},
+            getClass().getClassLoader())) {
+            Class<?> evaluatorClass = classLoader.loadClass("com.example.Evaluator");
+            Object evaluator = evaluatorClass.getConstructor().newInstance();
+            Method visit = evaluatorClass.getMethod("visit", Node.class);
+            assertEquals(7.5, visit.invoke(evaluator, grammar.match("(1 + 2.5) + 4", "Exp").getRootNode()));
+        }
+    }
+    
+    @Test
+    void testOhmGrammarVisitorCompiles() throws IOException {
+        String source = Files.readString(Paths.get("src", "main", "grammars", "ohm-grammar.ohm"));
+        Grammar ohmGrammar = Ohm.grammar(source);
+        Path visitorFile = tempDir.resolve(VisitorGenerator.getVisitorName(ohmGrammar) + ".java");
+        Files.writeString(visitorFile, VisitorGenerator.generate(ohmGrammar, ""));
+        compile(visitorFile);
+    }
+    
+    private void compile(Path... files) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> arguments = new ArrayList<>(List.of("-d", tempDir.toString(), "-classpath",
+            System.getProperty("java.class.path")));
+        for (Path file : files) {
+            arguments.add(file.toString());
+        }
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int status = compiler.run(null, null, errors, arguments.toArray(new String[0]));
+        assertEquals(0, status, errors.toString());
+    }
+}
@@ -0,0 +1,109 @@
+package net.stlutz.ohm.pexprs;
+
+import net.stlutz.ohm.Grammar;
+import net.stlutz.ohm.Ohm;
+import net.stlutz.ohm.ParseNode;
+import org.junit.jupiter.api.Test;
+
+import static net.stlutz.ohm.pexprs.PExpr.alt;
+import static net.stlutz.ohm.pexprs.PExpr.letter;
+import static net.stlutz.ohm.pexprs.PExpr.range;
+import static net.stlutz.ohm.pexprs.PExpr.seq;
+import static net.stlutz.ohm.pexprs.PExpr.terminal;
+import static net.stlutz.ohm.pexprs.PExpr.unicodeChar;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestCharClass extends AbstractPExprTest {
+    @Override
+    protected void registerBasicEvalTestCases() {
+        PExpr hexDigit = CharClass.of(alt(range("0", "9"), range("a", "f"), range("A", "F")));
+        addBasicEvalTestCase("0aF", 0, hexDigit, 1);
+        addBasicEvalTestCase("0aF", 1, hexDigit, 1);
+        addBasicEvalTestCase("0aF", 2, hexDigit, 1);
+        addBasicEvalTestCase("g", 0, hexDigit, -1);
+        addBasicEvalTestCase("", 0, hexDigit, -1);
+        
+        PExpr letters = CharClass.of(letter());
+        addBasicEvalTestCase("Hello", 0, letters, 1);
+        addBasicEvalTestCase("äö", 1, letters, 1);
+        addBasicEvalTestCase("𝐚", 0, letters, 2);
+        addBasicEvalTestCase("1", 0, letters, -1);
+        addBasicEvalTestCase("😀", 0, letters, -1, 2);
+        
+        // Terminals don't examine anything at the end of the input
+        PExpr signs = CharClass.of(alt(terminal("+"), terminal("-")));
+        addBasicEvalTestCase("-", 0, signs, 1);
+        addBasicEvalTestCase("*", 0, signs, -1, 1);
+        addBasicEvalTestCase("", 0, signs, -1, 0);
+        addBasicEvalTestCase("😀", 0, signs, -1, 1);
+    }
+    
+    @Test
+    void testUnsupportedExpressions() {
+        assertNull(CharClass.of(terminal("ab")));
+        assertNull(CharClass.of(alt(range("a", "z"), seq(terminal("a"), terminal("b")))));
+        assertNull(CharClass.of(alt()));
+        assertNull(CharClass.of(new Apply("unbound")));
+    }
+    
+    @Test
+    void testMatchesSupplementaryRanges() {
+        CharClass charClass = CharClass.of(alt(range(0x1F600, 0x1F64F), unicodeChar(Character.DECIMAL_DIGIT_NUMBER)));
+        assertTrue(charClass.matches(0x1F600));
+        assertTrue(charClass.matches("7".codePointAt(0)));
+        assertTrue(charClass.matches("𝟕".codePointAt(0)));
+        assertFalse(charClass.matches(0x1F650));
+        assertFalse(charClass.matches("x".codePointAt(0)));
+    }
+    
+    private static String toTreeString(ParseNode node) {
+        if (node.isTerminal()) {
+            return "_terminal";
+        }
+        StringBuilder sb = new StringBuilder(node.ctorName()).append("(");
+        ParseNode[] children = node.getChildren();
+        for (int i = 0; i < children.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(toTreeString(children[i]));
+        }
+        return sb.append(")").toString();
+    }
+    
+    @Test
+    void testInlinedRulesProduceTheSameNodes() {
+        Grammar grammar = Ohm.grammar("""
+            G {
+              start = hexDigit alnum alnum ident
+              ident = letter | "_"
+            }""");
+        assertInstanceOf(CharClass.class, grammar.getRule("hexDigit").getBody());
+        assertInstanceOf(CharClass.class, grammar.getRule("ident").getBody());
+        
+        ParseNode cst = grammar.match("aB1_", "start").getCST();
+        assertEquals("start(hexDigit(_terminal), alnum(letter(upper(_terminal))), alnum(digit(_terminal)), "
+            + "ident(_terminal))", toTreeString(cst));
+    }
+    
+    @Test
+    void testInheritedRulesUseOverriddenRules() {
+        Grammar overriding = Ohm.grammar("""
+            G1 {
+              start = hexDigit
+              digit := "x"
+            }""");
+        Grammar plain = Ohm.grammar("""
+            G2 {
+              start = hexDigit
+            }""");
+        assertTrue(overriding.match("x").succeeded());
+        assertFalse(overriding.match("5").succeeded());
+        assertTrue(plain.match("5").succeeded());
+        assertFalse(plain.match("x").succeeded());
+    }
+}
@@ -0,0 +1,126 @@
+package net.stlutz.ohm.pexprs;
+
+import net.stlutz.ohm.Grammar;
+import net.stlutz.ohm.InputStream;
+import net.stlutz.ohm.MatchResult;
+import net.stlutz.ohm.MatchState;
+import net.stlutz.ohm.Matcher;
+import net.stlutz.ohm.Ohm;
+import net.stlutz.ohm.ParseNode;
+import net.stlutz.ohm.TerminalNode;
+import org.junit.jupiter.api.Test;
+
+import static net.stlutz.ohm.pexprs.PExpr.alt;
+import static net.stlutz.ohm.pexprs.PExpr.any;
+import static net.stlutz.ohm.pexprs.PExpr.not;
+import static net.stlutz.ohm.pexprs.PExpr.plus;
+import static net.stlutz.ohm.pexprs.PExpr.range;
+import static net.stlutz.ohm.pexprs.PExpr.seq;
+import static net.stlutz.ohm.pexprs.PExpr.star;
+import static net.stlutz.ohm.pexprs.PExpr.terminal;
+import static net.stlutz.ohm.pexprs.PExpr.unicodeChar;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TestScan {
+    private static MatchState newMatchState(String input, int offset) {
+        MatchState matchState = new MatchState(new Matcher(null, input), new Apply("rule"));
+        matchState.getInputStream().setPosition(offset);
+        return matchState;
+    }
+    
+    /**
+     * Evaluates {@code iter} once as a scan and once regularly and compares the results.
+     */
+    private static void assertScanAgrees(PExpr expr, String input, int offset) {
+        Iter iter = (Iter) expr;
+        Iter scanned = (Iter) iter.substituteParams(new PExpr[0]);
+        scanned.setScan(Scan.of(iter.expr));
+        assertNotNull(scanned.getScan());
+        iter.setScan(null);
+        
+        MatchState expectedState = newMatchState(input, offset);
+        MatchState actualState = newMatchState(input, offset);
+        boolean expected = iter.eval(expectedState);
+        boolean actual = scanned.eval(actualState);
+        InputStream expectedStream = expectedState.getInputStream();
+        InputStream actualStream = actualState.getInputStream();
+        
+        assertEquals(expected, actual);
+        assertEquals(expectedStream.getPosition(), actualStream.getPosition());
+        assertEquals(expectedStream.getRightmostExaminedPosition(), actualStream.getRightmostExaminedPosition());
+        assertEquals(expectedState.numBindings(), actualState.numBindings());
+        if (expected) {
+            ParseNode expectedNode = expectedState.getMatchResult().getCST();
+            ParseNode actualNode = actualState.getMatchResult().getCST();
+            assertEquals(expectedNode.getMatchLength(), actualNode.getMatchLength());
+            assertEquals(expectedNode.numChildren(), actualNode.numChildren());
+            assertArrayEquals(expectedNode.getChildOffsets(), actualNode.getChildOffsets());
+            assertArrayEquals(expectedNode.getChildren(), actualNode.getChildren());
+        }
+    }
+    
+    @Test
+    void testUntilTerminal() {
+        PExpr untilNewline = seq(not(terminal("\n")), any());
+        assertScanAgrees(star(untilNewline), "// comment\nfoo", 2);
+        assertScanAgrees(star(untilNewline), "// comment", 2);
+        assertScanAgrees(star(untilNewline), "\n", 0);
+        assertScanAgrees(plus(untilNewline), "\n", 0);
+        PExpr untilCommentEnd = seq(not(terminal("*/")), any());
+        assertScanAgrees(star(untilCommentEnd), "/* a * b */ c", 2);
+        assertScanAgrees(star(untilCommentEnd), "/* a * b *", 2);
+    }
+    
+    @Test
+    void testUntilCharClass() {
+        PExpr untilLineEnd = seq(not(alt(terminal("\n"), terminal("\r"))), any());
+        assertScanAgrees(star(untilLineEnd), "abc\r\ndef", 0);
+        assertScanAgrees(star(untilLineEnd), "a😀c", 0);
+    }
+    
+    @Test
+    void testWhileCharClass() {
+        assertScanAgrees(star(range("0", "9")), "12345abc", 0);
+        assertScanAgrees(plus(range("0", "9")), "abc", 0);
+        assertScanAgrees(star(alt(terminal(" "), terminal("\t"))), " \t \tx", 0);
+        assertScanAgrees(star(unicodeChar(Character.LOWERCASE_LETTER)), "abc𝐚x", 0);
+        assertScanAgrees(plus(unicodeChar(Character.LOWERCASE_LETTER)), "abc", 0);
+    }
+    
+    @Test
+    void testParsedGrammar() {
+        Grammar grammar = Ohm.grammar("""
+            G {
+              comment = "//" (~"\\n" any)*
+              block = "/*" (~("*/") any)* "*/"
+            }""");
+        for (String ruleName : new String[]{"comment", "block"}) {
+            Seq body = (Seq) ((Alt) grammar.getRule(ruleName).getBody()).getTerms()[0];
+            assertNotNull(((Iter) body.getTerms()[1]).getScan(), ruleName);
+        }
+        
+        MatchResult result = grammar.match("/* ab */", "block");
+        assertTrue(result.succeeded());
+        ParseNode iteration = result.getCST().getChildren()[1];
+        assertEquals(4, iteration.numChildren());
+        assertArrayEquals(new int[]{2, 3, 4, 5}, iteration.getChildOffsets());
+        for (ParseNode child : iteration.getChildren()) {
+            assertEquals("any", child.ctorName());
+            assertEquals(1, child.getMatchLength());
+            assertArrayEquals(new ParseNode[]{TerminalNode.get(1)}, child.getChildren());
+        }
+        assertEquals(8, grammar.match("// comment", "comment").getCST().getChildren()[1].getMatchLength());
+    }
+    
+    @Test
+    void testUnsupportedOperands() {
+        assertNull(Scan.of(seq(terminal("a"), any())));
+        assertNull(Scan.of(terminal("ab")));
+        assertNull(Scan.of(seq(not(seq(terminal("a"), terminal("b"))), any())));
+        assertNull(Scan.of(new Apply("foo")));
+    }
+}